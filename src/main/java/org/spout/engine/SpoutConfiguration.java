@@ -46,14 +46,18 @@ public class SpoutConfiguration extends ConfigurationHolderConfiguration {
 	public static final ConfigurationHolder CHUNK_REAP_DELAY = new ConfigurationHolder(1, "chunks", "reap-delay");
 	public static final ConfigurationHolder REAP_CHUNKS_PER_TICK = new ConfigurationHolder(50, "chunks", "reap-per-tick");
 	public static final ConfigurationHolder UNLOAD_CHUNKS_PER_TICK = new ConfigurationHolder(50, "chunks", "unload-per-tick");
+	public static final ConfigurationHolder SAVE_QUEUE_LIMIT = new ConfigurationHolder(4096, "chunks", "save-queue-limit");
+	public static final ConfigurationHolder BINARY_CHUNKS = new ConfigurationHolder(false, "chunks", "binary-format");
 	public static final ConfigurationHolder DYNAMIC_BLOCKS = new ConfigurationHolder(true, "chunks", "dynamic-blocks");
 	public static final ConfigurationHolder BLOCK_PHYSICS = new ConfigurationHolder(true, "chunks", "block-physics");
+	public static final ConfigurationHolder PREFETCH_DISTANCE = new ConfigurationHolder(4, "chunks", "prefetch-distance");
 	// Messages
 	public static final ConfigurationHolder DEFAULT_LANGUAGE = new ConfigurationHolder("EN_US", "messages", "default-language");
 	// Network
 	public static final ConfigurationHolder UPNP = new ConfigurationHolder(true, "network", "upnp");
 	public static final ConfigurationHolder BONJOUR = new ConfigurationHolder(false, "network", "bonjour");
 	public static final ConfigurationHolder SHOW_CONNECTIONS = new ConfigurationHolder(false, "network", "show-connections");
+	public static final ConfigurationHolder COALESCE_WRITES = new ConfigurationHolder(true, "network", "coalesce-writes");
 	// Debug
 	public static final ConfigurationHolder SEND_LATENCY = new ConfigurationHolder(0L, "debug", "send-latency");
 	public static final ConfigurationHolder SEND_SPIKE_LATENCY = new ConfigurationHolder(0L, "debug", "send-spike-latency");
@@ -35,6 +35,7 @@ import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 import org.spout.api.Platform;
@@ -45,6 +46,7 @@ import org.spout.api.protocol.Session;
 import org.spout.engine.entity.SpoutPlayer;
 import org.spout.engine.listener.SpoutProxyListener;
 import org.spout.engine.listener.channel.SpoutProxyConnectListener;
+import org.spout.engine.protocol.ProxyPassthroughHandler;
 import org.spout.engine.protocol.SpoutProxySession;
 import org.spout.engine.protocol.SpoutServerSession;
 import org.spout.engine.util.thread.threadfactory.NamedThreadFactory;
@@ -92,17 +94,35 @@ public class SpoutProxy extends SpoutServer {
 		ChannelFactory factory = new NioClientSocketChannelFactory(executorBoss, executorWorker);
 		clientBootstrap.setFactory(factory);
 
-		ChannelPipelineFactory pipelineFactory = new CommonPipelineFactory(this);
+		ChannelPipelineFactory pipelineFactory = createPipelineFactory();
 		clientBootstrap.setPipelineFactory(pipelineFactory);
 
 		clientBootstrap.setOption("tcpNoDelay", true);
 		clientBootstrap.setOption("keepAlive", true);
 	}
 
+	@Override
+	protected ChannelPipelineFactory createPipelineFactory() {
+		final ChannelPipelineFactory common = new CommonPipelineFactory(this);
+		return new ChannelPipelineFactory() {
+			@Override
+			public ChannelPipeline getPipeline() throws Exception {
+				ChannelPipeline pipeline = common.getPipeline();
+				pipeline.addFirst("passthrough", new ProxyPassthroughHandler());
+				return pipeline;
+			}
+		};
+	}
+
 	@Override
 	public Session newSession(Channel channel) {
 		Protocol protocol = getProtocol(channel.getLocalAddress());
-		return new SpoutProxySession(this, channel, protocol);
+		SpoutProxySession session = new SpoutProxySession(this, channel, protocol);
+		ProxyPassthroughHandler passthrough = channel.getPipeline().get(ProxyPassthroughHandler.class);
+		if (passthrough != null) {
+			passthrough.setSession(session, false);
+		}
+		return session;
 	}
 
 	@Override
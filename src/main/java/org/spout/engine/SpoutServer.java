@@ -225,13 +225,21 @@ public class SpoutServer extends SpoutEngine implements Server {
 		bootstrap.setOption("tcpNoDelay", true);
 		bootstrap.setOption("keepAlive", true);
 
-		ChannelPipelineFactory pipelineFactory = new CommonPipelineFactory(this);
+		ChannelPipelineFactory pipelineFactory = createPipelineFactory();
 		bootstrap.setPipelineFactory(pipelineFactory);
 
 		accessManager.load();
 		accessManager.setWhitelistEnabled(SpoutConfiguration.WHITELIST_ENABLED.getBoolean());
 	}
 
+	/**
+	 * Creates the pipeline factory for connections to this server
+	 * @return the pipeline factory
+	 */
+	protected ChannelPipelineFactory createPipelineFactory() {
+		return new CommonPipelineFactory(this);
+	}
+
 	@Override
 	public boolean stop(final String message) {
 		return stop(message, true);
@@ -49,7 +49,11 @@ import org.spout.api.meta.SpoutMetaPlugin;
 import org.spout.api.plugin.Plugin;
 import org.spout.engine.SpoutEngine;
 import org.spout.engine.component.entity.MovementValidator;
+import org.spout.engine.filesystem.CommonFileSystem;
+import org.spout.engine.scheduler.TickProfiler;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
@@ -118,6 +122,39 @@ public class CommonCommands {
 		engine.getLogger().info("[---------------End Stack Dump---------------]");
 	}
 
+	@CommandDescription(aliases = "tickprofile", usage = "<start|stop|reset|show|dump>", desc = "Profiles the time taken by each tick stage, region and plugin task")
+	@Permissible("spout.command.tickprofile")
+	public void tickprofile(CommandSource source, CommandArguments args) throws CommandException {
+		String action = args.popString("action");
+		args.assertCompletelyParsed();
+
+		TickProfiler profiler = engine.getScheduler().getProfiler();
+		if (action.equalsIgnoreCase("start")) {
+			profiler.setEnabled(true);
+			source.sendMessage("Tick profiler started.");
+		} else if (action.equalsIgnoreCase("stop")) {
+			profiler.setEnabled(false);
+			source.sendMessage("Tick profiler stopped.");
+		} else if (action.equalsIgnoreCase("reset")) {
+			profiler.reset();
+			source.sendMessage("Tick profiler reset.");
+		} else if (action.equalsIgnoreCase("show")) {
+			for (String line : profiler.getSummary(5)) {
+				source.sendMessage(line);
+			}
+		} else if (action.equalsIgnoreCase("dump")) {
+			File file = new File(CommonFileSystem.DATA_DIRECTORY, "tickprofile-" + System.currentTimeMillis() + ".csv");
+			try {
+				profiler.dump(file);
+			} catch (IOException e) {
+				throw new CommandException("Unable to write the tick profile: " + e.getMessage());
+			}
+			source.sendMessage("Tick profile written to " + file.getPath());
+		} else {
+			throw new CommandException("Unknown action '" + action + "', expected start, stop, reset, show or dump");
+		}
+	}
+
 	@CommandDescription(aliases = "reload", usage = "[plugin]", desc = "Reload engine and/or plugins")
 	@Permissible("spout.command.reload")
 	public void reload(CommandSource source, CommandArguments args) throws CommandException {
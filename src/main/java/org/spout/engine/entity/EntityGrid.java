@@ -0,0 +1,155 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.entity;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.spout.api.geo.cuboid.Region;
+import org.spout.api.geo.discrete.Point;
+import org.spout.engine.world.SpoutRegion;
+
+/**
+ * A spatial index of the entities in a region, bucketed by the chunk that contains their snapshot position.<br>
+ * <br>
+ * The grid is only updated during the SNAPSHOT stage, by the region's thread, so it is stable for reads during all other stages.
+ */
+public class EntityGrid {
+	private static final int OUTSIDE = Region.CHUNKS.VOLUME;
+	private static final int NOT_INDEXED = -1;
+	/**
+	 * The entities in each cell, indexed by region chunk key.  The last cell holds entities outside the region.
+	 */
+	@SuppressWarnings("unchecked")
+	private final ArrayList<SpoutEntity>[] cells = new ArrayList[Region.CHUNKS.VOLUME + 1];
+	/**
+	 * The cell that each entity is currently stored in
+	 */
+	private final TObjectIntHashMap<SpoutEntity> entityCells = new TObjectIntHashMap<SpoutEntity>(16, 0.5F, NOT_INDEXED);
+	private final SpoutRegion region;
+
+	public EntityGrid(SpoutRegion region) {
+		this.region = region;
+	}
+
+	/**
+	 * Updates the cell for an entity, based on its snapshot position
+	 * @param entity the entity
+	 */
+	public void update(SpoutEntity entity) {
+		int cell = getCell(entity.getScene().getPosition());
+		int oldCell = entityCells.get(entity);
+		if (cell == oldCell) {
+			return;
+		}
+		if (oldCell != NOT_INDEXED) {
+			removeFromCell(entity, oldCell);
+		}
+		ArrayList<SpoutEntity> list = cells[cell];
+		if (list == null) {
+			list = new ArrayList<SpoutEntity>(4);
+			cells[cell] = list;
+		}
+		list.add(entity);
+		entityCells.put(entity, cell);
+	}
+
+	/**
+	 * Removes an entity from the grid
+	 * @param entity the entity
+	 */
+	public void remove(SpoutEntity entity) {
+		int oldCell = entityCells.remove(entity);
+		if (oldCell != NOT_INDEXED) {
+			removeFromCell(entity, oldCell);
+		}
+	}
+
+	/**
+	 * Adds all entities in the given range of chunks to a collection.  Entities whose position is outside the region are always included.
+	 * @param minX the minimum chunk x coordinate
+	 * @param minY the minimum chunk y coordinate
+	 * @param minZ the minimum chunk z coordinate
+	 * @param maxX the maximum chunk x coordinate, inclusive
+	 * @param maxY the maximum chunk y coordinate, inclusive
+	 * @param maxZ the maximum chunk z coordinate, inclusive
+	 * @param entities the collection to add the entities to
+	 */
+	public void getEntities(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Collection<? super SpoutEntity> entities) {
+		final int baseX = region.getChunkX();
+		final int baseY = region.getChunkY();
+		final int baseZ = region.getChunkZ();
+		final int startX = Math.max(minX - baseX, 0);
+		final int startY = Math.max(minY - baseY, 0);
+		final int startZ = Math.max(minZ - baseZ, 0);
+		final int endX = Math.min(maxX - baseX, Region.CHUNKS.SIZE - 1);
+		final int endY = Math.min(maxY - baseY, Region.CHUNKS.SIZE - 1);
+		final int endZ = Math.min(maxZ - baseZ, Region.CHUNKS.SIZE - 1);
+		for (int x = startX; x <= endX; x++) {
+			for (int y = startY; y <= endY; y++) {
+				for (int z = startZ; z <= endZ; z++) {
+					ArrayList<SpoutEntity> list = cells[SpoutRegion.getChunkKey(x, y, z)];
+					if (list != null) {
+						entities.addAll(list);
+					}
+				}
+			}
+		}
+		ArrayList<SpoutEntity> outside = cells[OUTSIDE];
+		if (outside != null) {
+			entities.addAll(outside);
+		}
+	}
+
+	private void removeFromCell(SpoutEntity entity, int cell) {
+		ArrayList<SpoutEntity> list = cells[cell];
+		int index = list.indexOf(entity);
+		if (index < 0) {
+			return;
+		}
+		int last = list.size() - 1;
+		if (index != last) {
+			list.set(index, list.get(last));
+		}
+		list.remove(last);
+	}
+
+	private int getCell(Point position) {
+		if (position == null) {
+			return OUTSIDE;
+		}
+		int x = position.getChunkX() - region.getChunkX();
+		int y = position.getChunkY() - region.getChunkY();
+		int z = position.getChunkZ() - region.getChunkZ();
+		if (x < 0 || x >= Region.CHUNKS.SIZE || y < 0 || y >= Region.CHUNKS.SIZE || z < 0 || z >= Region.CHUNKS.SIZE) {
+			return OUTSIDE;
+		}
+		return SpoutRegion.getChunkKey(x, y, z);
+	}
+}
@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.spout.api.Platform;
 
@@ -41,8 +42,10 @@ import org.spout.api.protocol.ServerNetworkSynchronizer;
 import org.spout.engine.component.entity.SpoutSceneComponent;
 import org.spout.engine.util.thread.snapshotable.SnapshotManager;
 import org.spout.engine.util.thread.snapshotable.SnapshotableHashMap;
+import org.spout.engine.util.thread.snapshotable.SnapshotableIntHashMap;
 import org.spout.engine.world.SpoutChunk;
 import org.spout.engine.world.SpoutRegion;
+import org.spout.engine.world.SpoutWorld;
 
 /**
  * A class which manages all of the entities within a world.
@@ -55,7 +58,7 @@ public class EntityManager {
 	/**
 	 * A map of all the entity ids to the corresponding entities.
 	 */
-	private final SnapshotableHashMap<Integer, SpoutEntity> entities = new SnapshotableHashMap<Integer, SpoutEntity>(snapshotManager);
+	private final SnapshotableIntHashMap<SpoutEntity> entities = new SnapshotableIntHashMap<SpoutEntity>(snapshotManager);
 	/**
 	 * The next id to check.
 	 */
@@ -68,12 +71,21 @@ public class EntityManager {
 	 * Player listings plus listings of sync'd entities per player
 	 */
 	private final SnapshotableHashMap<Player, ArrayList<SpoutEntity>> players = new SnapshotableHashMap<Player, ArrayList<SpoutEntity>>(snapshotManager);
+	/**
+	 * Spatial index of the snapshot positions of the entities
+	 */
+	private final EntityGrid grid;
+	/**
+	 * Entities added or removed since the last snapshot, entities may be added by other region threads
+	 */
+	private final ConcurrentLinkedQueue<SpoutEntity> gridDirty = new ConcurrentLinkedQueue<SpoutEntity>();
 
 	public EntityManager(SpoutRegion region) {
 		if (region == null) {
 			throw new NullPointerException("Region can not be null!");
 		}
 		this.region = region;
+		this.grid = new EntityGrid(region);
 	}
 
 	/**
@@ -81,7 +93,7 @@ public class EntityManager {
 	 * @return A collection of entities.
 	 */
 	public Collection<SpoutEntity> getAll() {
-		return entities.get().values();
+		return entities.getValues();
 	}
 
 	/**
@@ -89,7 +101,7 @@ public class EntityManager {
 	 * @return A collection of entities
 	 */
 	public Collection<SpoutEntity> getAllLive() {
-		return entities.getLive().values();
+		return entities.getLiveValues();
 	}
 
 	/**
@@ -106,7 +118,7 @@ public class EntityManager {
 	 * @return The entity, or {@code null} if it could not be found.
 	 */
 	public SpoutEntity getEntity(int id) {
-		return entities.get().get(id);
+		return entities.get(id);
 	}
 
 	/**
@@ -120,6 +132,8 @@ public class EntityManager {
 			entity.setId(currentId);
 		}
 		entities.put(currentId, entity);
+		region.getWorld().indexEntity(entity);
+		gridDirty.add(entity);
 		if (entity instanceof Player) {
 			players.put((Player) entity, new ArrayList<SpoutEntity>());
 		}
@@ -146,16 +160,30 @@ public class EntityManager {
 	 */
 	public void removeEntity(SpoutEntity entity) {
 		entities.remove(entity.getId());
+		region.getWorld().unindexEntity(entity);
+		gridDirty.add(entity);
 		if (entity instanceof Player) {
 			players.remove((Player) entity);
 		}
 	}
 
+	/**
+	 * Removes all the entities of this manager from the world index.  This is called when the region is
+	 * unloaded, as the manager is not finalized again and would never remove its entities.
+	 */
+	public void unindexAll() {
+		SpoutWorld world = region.getWorld();
+		for (SpoutEntity entity : entities.getLiveValues()) {
+			world.unindexEntity(entity);
+		}
+	}
+
 	/**
 	 * Finalizes the manager at the FINALIZERUN tick stage
 	 */
 	public void finalizeRun() {
-		for (SpoutEntity e : entities.get().values()) {
+		for (int i = 0; i < entities.size(); i++) {
+			SpoutEntity e = entities.getValue(i);
 			e.finalizeRun();
 			if (e.isRemoved()) {
 				removeEntity(e);
@@ -167,8 +195,8 @@ public class EntityManager {
 	 * Prepares the manager for a snapshot in the PRESNAPSHOT tickstage
 	 */
 	public void preSnapshotRun() {
-		for (SpoutEntity e : entities.get().values()) {
-			e.preSnapshotRun();
+		for (int i = 0; i < entities.size(); i++) {
+			entities.getValue(i).preSnapshotRun();
 		}
 	}
 
@@ -176,10 +204,28 @@ public class EntityManager {
 	 * Snapshots the manager and all the entities managed in the SNAPSHOT tickstage.
 	 */
 	public void copyAllSnapshots() {
-		for (SpoutEntity e : entities.get().values()) {
-			e.copySnapshot();
+		for (int i = 0; i < entities.size(); i++) {
+			entities.getValue(i).copySnapshot();
 		}
 		snapshotManager.copyAllSnapshots();
+
+		SpoutEntity e;
+		while ((e = gridDirty.poll()) != null) {
+			if (entities.get(e.getId()) != e) {
+				grid.remove(e);
+			}
+		}
+		for (int i = 0; i < entities.size(); i++) {
+			grid.update(entities.getValue(i));
+		}
+	}
+
+	/**
+	 * Gets the spatial index of the entities in this manager.  The index matches the snapshot positions of the entities.
+	 * @return the entity grid
+	 */
+	public EntityGrid getGrid() {
+		return grid;
 	}
 
 	/**
@@ -197,7 +243,8 @@ public class EntityManager {
 		if (!(Spout.getPlatform() == Platform.SERVER)) {
 			throw new UnsupportedOperationException("Must be in server mode to sync entities");
 		}
-		for (Entity ent : getAll()) {
+		for (int i = 0; i < entities.size(); i++) {
+			SpoutEntity ent = entities.getValue(i);
 			//Do not sync entities with null chunks
 			if (ent.getChunk() == null) {
 				continue;
@@ -26,6 +26,9 @@
  */
 package org.spout.engine.entity;
 
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -33,6 +36,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import org.spout.api.Client;
@@ -74,6 +79,7 @@ import org.spout.engine.util.thread.snapshotable.SnapshotableInt;
 import org.spout.engine.util.thread.snapshotable.SnapshotableReference;
 import org.spout.engine.world.SpoutChunk;
 import org.spout.engine.world.SpoutRegion;
+import org.spout.engine.world.SpoutWorld;
 
 public class SpoutEntity extends BaseComponentOwner implements Entity, Snapshotable {
 	public static final int NOTSPAWNEDID = Integer.MIN_VALUE;
@@ -92,6 +98,8 @@ public class SpoutEntity extends BaseComponentOwner implements Entity, Snapshota
 	//Other
 	private final Engine engine;
 	private final Set<SpoutChunk> observingChunks = new HashSet<SpoutChunk>();
+	private final TLongObjectHashMap<PendingChunk> pendingObserverChunks = new TLongObjectHashMap<PendingChunk>();
+	private ViewVolume observedView = null;
 	private final UUID uid;
 	protected boolean justSpawned = true;
 	//For faster access
@@ -284,8 +292,10 @@ public class SpoutEntity extends BaseComponentOwner implements Entity, Snapshota
 		}
 
 		//Entity changed chunks as observer OR observer status changed so update
-		if ((chunk != chunkLive && (observer.getLive() == OBSERVING)) || observer.isDirty() || observer.get() == INITIAL_TICK || observeChunksFailed) {
+		if ((chunk != chunkLive && (observer.getLive() == OBSERVING)) || observer.isDirty() || observer.get() == INITIAL_TICK) {
 			updateObserver();
+		} else if (observeChunksFailed) {
+			updatePendingObserverChunks((SpoutWorld) getWorld());
 		}
 	}
 
@@ -296,48 +306,242 @@ public class SpoutEntity extends BaseComponentOwner implements Entity, Snapshota
 			}
 		}
 		observingChunks.clear();
+		pendingObserverChunks.clear();
+		observedView = null;
 	}
 
+	/**
+	 * Updates the chunks observed by this entity.<br>
+	 * <br>
+	 * When the entity moves within a world, only the chunks entering and leaving the view volume are updated.  
+	 * Chunks which are not loaded are requested without blocking, and are observed once they have been loaded or generated.
+	 */
 	protected void updateObserver() {
-		List<Vector3> ungenerated = new ArrayList<Vector3>();
 		final int viewDistance = getViewDistance() >> Chunk.BLOCKS.BITS;
-		World w = getWorld();
+		SpoutWorld w = (SpoutWorld) getWorld();
 		Transform t = scene.getTransform();
 		Point p = t.getPosition();
-		int cx = p.getChunkX();
-		int cy = p.getChunkY();
-		int cz = p.getChunkZ();
-		
-		HashSet<SpoutChunk> observing = new HashSet<SpoutChunk>((viewDistance * viewDistance * viewDistance * 3) / 2);
+
 		Iterator<IntVector3> itr = observer.getLive();
 		if (itr == OBSERVING) {
-			itr = new OutwardIterator(cx, cy, cz, viewDistance);
+			ViewVolume view = new ViewVolume(w, p.getChunkX(), p.getChunkY(), p.getChunkZ(), viewDistance);
+			if (observedView == null || observedView.world != w || observedView.radius != viewDistance) {
+				pendingObserverChunks.clear();
+				Iterator<SpoutChunk> i = observingChunks.iterator();
+				while (i.hasNext()) {
+					SpoutChunk chunk = i.next();
+					if (chunk.getWorld() != w || !view.contains(chunk.getX(), chunk.getY(), chunk.getZ())) {
+						i.remove();
+						if (chunk.isLoaded()) {
+							chunk.removeObserver(this);
+						}
+					}
+				}
+				itr = new OutwardIterator(view.x, view.y, view.z, viewDistance);
+				while (itr.hasNext()) {
+					IntVector3 v = itr.next();
+					startObserving(w, v.getX(), v.getY(), v.getZ());
+				}
+			} else if (!observedView.equals(view)) {
+				updateDifference(w, observedView, view, false);
+				updateDifference(w, view, observedView, true);
+			}
+			observedView = view;
+		} else {
+			observedView = null;
+			pendingObserverChunks.clear();
+			Set<SpoutChunk> observing = new HashSet<SpoutChunk>();
+			while (itr.hasNext()) {
+				IntVector3 v = itr.next();
+				SpoutChunk chunk = w.getChunk(v.getX(), v.getY(), v.getZ(), LoadOption.NO_LOAD);
+				if (chunk != null) {
+					observing.add(chunk);
+				} else {
+					requestObservedChunk(w, v.getX(), v.getY(), v.getZ());
+				}
+			}
+			observingChunks.removeAll(observing);
+			for (SpoutChunk chunk : observingChunks) {
+				if (chunk.isLoaded()) {
+					chunk.removeObserver(this);
+				}
+			}
+			observingChunks.clear();
+			for (SpoutChunk chunk : observing) {
+				observe(chunk);
+			}
 		}
-		observeChunksFailed = false;
-		while (itr.hasNext()) {
-			IntVector3 v = itr.next();
-			Chunk chunk = w.getChunk(v.getX(), v.getY(), v.getZ(), LoadOption.LOAD_ONLY);
-			if (chunk != null) {
-				chunk.refreshObserver(this);
-				observing.add((SpoutChunk) chunk);
-			} else {
-				ungenerated.add(new Vector3(v));
-				observeChunksFailed = true;
+		updatePendingObserverChunks(w);
+	}
+
+	/**
+	 * Starts or stops observing the chunks which are inside one view volume, but not inside another
+	 * @param w the world
+	 * @param volume the view volume
+	 * @param exclude the view volume to exclude
+	 * @param enter true to start observing the chunks, false to stop observing them
+	 */
+	private void updateDifference(SpoutWorld w, ViewVolume volume, ViewVolume exclude, boolean enter) {
+		final int r = volume.radius;
+		for (int y = volume.y - r; y <= volume.y + r; y++) {
+			int dy = Math.abs(y - volume.y);
+			for (int z = volume.z - r + dy; z <= volume.z + r - dy; z++) {
+				int rx = r - dy - Math.abs(z - volume.z);
+				int ex = exclude.radius - Math.abs(y - exclude.y) - Math.abs(z - exclude.z);
+				for (int x = volume.x - rx; x <= volume.x + rx; x++) {
+					if (ex >= 0 && x >= exclude.x - ex && x <= exclude.x + ex) {
+						x = exclude.x + ex;
+						continue;
+					}
+					if (enter) {
+						startObserving(w, x, y, z);
+					} else {
+						stopObserving(w, x, y, z);
+					}
+				}
 			}
 		}
-		observingChunks.removeAll(observing);
-		for (SpoutChunk chunk : observingChunks) {
-			if (chunk.isLoaded()) {
-				chunk.removeObserver(this);
+	}
+
+	private void startObserving(SpoutWorld w, int x, int y, int z) {
+		SpoutChunk chunk = w.getChunk(x, y, z, LoadOption.NO_LOAD);
+		if (chunk != null) {
+			observe(chunk);
+		} else {
+			requestObservedChunk(w, x, y, z);
+		}
+	}
+
+	private void stopObserving(SpoutWorld w, int x, int y, int z) {
+		pendingObserverChunks.remove(getChunkKey(x, y, z));
+		SpoutChunk chunk = w.getChunk(x, y, z, LoadOption.NO_LOAD);
+		if (chunk != null && observingChunks.remove(chunk)) {
+			chunk.removeObserver(this);
+		}
+	}
+
+	private void observe(SpoutChunk chunk) {
+		chunk.refreshObserver(this);
+		observingChunks.add(chunk);
+	}
+
+	private void requestObservedChunk(SpoutWorld w, int x, int y, int z) {
+		long key = getChunkKey(x, y, z);
+		if (!pendingObserverChunks.containsKey(key)) {
+			pendingObserverChunks.put(key, new PendingChunk(x, y, z, w.getChunkAsync(x, y, z, LoadOption.LOAD_ONLY)));
+		}
+	}
+
+	/**
+	 * Observes the requested chunks which have been loaded, and queues the chunks which could not be loaded for generation
+	 * @param w the world
+	 */
+	private void updatePendingObserverChunks(SpoutWorld w) {
+		List<Vector3> ungenerated = null;
+		TLongObjectIterator<PendingChunk> i = pendingObserverChunks.iterator();
+		while (i.hasNext()) {
+			i.advance();
+			PendingChunk pending = i.value();
+			SpoutChunk chunk;
+			if (pending.future == null) {
+				chunk = w.getChunk(pending.x, pending.y, pending.z, LoadOption.NO_LOAD);
+				if (chunk == null) {
+					continue;
+				}
+			} else if (pending.future.isDone()) {
+				try {
+					chunk = pending.future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				} catch (ExecutionException e) {
+					Spout.getLogger().log(Level.SEVERE, "Unable to load chunk " + pending.x + ", " + pending.y + ", " + pending.z + " for observer " + this, e.getCause());
+					chunk = null;
+				}
+				if (chunk == null) {
+					if (ungenerated == null) {
+						ungenerated = new ArrayList<Vector3>();
+					}
+					ungenerated.add(new Vector3(pending.x, pending.y, pending.z));
+					pending.future = null;
+					continue;
+				}
+			} else {
+				continue;
 			}
+			i.remove();
+			observe(chunk);
 		}
-		observingChunks.clear();
-		observingChunks.addAll(observing);
-		if (!ungenerated.isEmpty()) {
+		observeChunksFailed = !pendingObserverChunks.isEmpty();
+		if (ungenerated != null) {
 			w.queueChunksForGeneration(ungenerated);
 		}
 	}
 
+	/**
+	 * Packs chunk coordinates into a key, using 21 bits for each coordinate
+	 */
+	private static long getChunkKey(int x, int y, int z) {
+		return ((x & 0x1FFFFFL) << 42) | ((y & 0x1FFFFFL) << 21) | (z & 0x1FFFFFL);
+	}
+
+	/**
+	 * The view volume of an observer, the chunks within a Manhattan distance of the center chunk, as iterated by an {@link OutwardIterator}
+	 */
+	private static class ViewVolume {
+		private final SpoutWorld world;
+		private final int x;
+		private final int y;
+		private final int z;
+		private final int radius;
+
+		public ViewVolume(SpoutWorld world, int x, int y, int z, int radius) {
+			this.world = world;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.radius = radius;
+		}
+
+		public boolean contains(int x, int y, int z) {
+			return Math.abs(x - this.x) + Math.abs(y - this.y) + Math.abs(z - this.z) <= radius;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof ViewVolume)) {
+				return false;
+			}
+			ViewVolume other = (ViewVolume) o;
+			return other.world == world && other.x == x && other.y == y && other.z == z && other.radius == radius;
+		}
+
+		@Override
+		public int hashCode() {
+			return ((x * 31 + y) * 31 + z) * 31 + radius;
+		}
+	}
+
+	/**
+	 * A chunk which is in the view volume of an observer, but is not yet loaded
+	 */
+	private static class PendingChunk {
+		private final int x;
+		private final int y;
+		private final int z;
+		/**
+		 * The load request, or null if the chunk is waiting to be generated
+		 */
+		private Future<SpoutChunk> future;
+
+		public PendingChunk(int x, int y, int z, Future<SpoutChunk> future) {
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.future = future;
+		}
+	}
+
 	public Set<SpoutChunk> getObservingChunks() {
 		return observingChunks;
 	}
@@ -75,7 +75,9 @@ import org.spout.engine.component.entity.MovementValidator;
 import org.spout.engine.component.entity.SpoutSceneComponent;
 import org.spout.engine.filesystem.versioned.PlayerFiles;
 import org.spout.engine.protocol.SpoutSession;
+import org.spout.engine.world.ColumnPrefetcher;
 import org.spout.engine.world.SpoutServerWorld;
+import org.spout.engine.world.SpoutWorld;
 
 public class SpoutPlayer extends SpoutEntity implements Player {
 	private final AtomicReference<SpoutSession<?>> sessionLive = new AtomicReference<SpoutSession<?>>();
@@ -88,6 +90,7 @@ public class SpoutPlayer extends SpoutEntity implements Player {
 	private PlayerInputState inputState = PlayerInputState.DEFAULT_STATE;
 	private Locale preferredLocale = Locale.getByCode(SpoutConfiguration.DEFAULT_LANGUAGE.getString());
 	private List<Entity> hiddenEntities = new ConcurrentList<Entity>();
+	private final ColumnPrefetcher prefetcher = new ColumnPrefetcher();
 
 	public SpoutPlayer(Engine engine, String name) {
 		this(engine, name, null, SpoutConfiguration.VIEW_DISTANCE.getInt() * Chunk.BLOCKS.SIZE);
@@ -187,6 +190,20 @@ public class SpoutPlayer extends SpoutEntity implements Player {
 		return true;
 	}
 
+	@Override
+	public void finalizeRun() {
+		super.finalizeRun();
+		if (Spout.getPlatform() != Platform.SERVER) {
+			return;
+		}
+		if (isRemoved() || getWorld() == null) {
+			prefetcher.cancel();
+		} else {
+			int viewDistance = getViewDistance() >> Chunk.BLOCKS.BITS;
+			prefetcher.update((SpoutWorld) getWorld(), getScene().getTransform().getPosition(), viewDistance, SpoutConfiguration.PREFETCH_DISTANCE.getInt());
+		}
+	}
+
 	@Override
 	public void sendMessage(String message) {
 		sendCommand("say", message.split(" "));
@@ -0,0 +1,137 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.filesystem.versioned;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.spout.api.geo.cuboid.Region;
+import org.spout.api.io.bytearrayarray.BAAWrapper;
+
+import org.spout.engine.world.RegionFileManager;
+
+/**
+ * Converts the chunks of existing worlds from the NBT chunk format to the binary chunk format, in place.<br>
+ * <br>
+ * This is a standalone tool and must not be run on a world which is loaded by a running engine.  Chunks which are
+ * already stored in the binary format are skipped, so a conversion can be safely repeated.
+ */
+public class ChunkFileConverter {
+	private static final Pattern REGION_FILE = Pattern.compile("reg(-?\\d+)_(-?\\d+)_(-?\\d+)\\.spr");
+
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.out.println("Usage: ChunkFileConverter <world directory> [world directory...]");
+			System.exit(1);
+		}
+		boolean failed = false;
+		for (String arg : args) {
+			File worldDirectory = new File(arg);
+			File regionDirectory = new File(worldDirectory, "region");
+			if (!regionDirectory.isDirectory()) {
+				System.out.println("No region directory found in " + worldDirectory);
+				failed = true;
+				continue;
+			}
+			failed |= !convertWorld(worldDirectory, regionDirectory);
+		}
+		System.exit(failed ? 1 : 0);
+	}
+
+	private static boolean convertWorld(File worldDirectory, File regionDirectory) {
+		File[] files = regionDirectory.listFiles();
+		if (files == null) {
+			System.out.println("Unable to list " + regionDirectory);
+			return false;
+		}
+		RegionFileManager manager = new RegionFileManager(worldDirectory);
+		int converted = 0;
+		int failed = 0;
+		try {
+			for (File file : files) {
+				Matcher matcher = REGION_FILE.matcher(file.getName());
+				if (!matcher.matches()) {
+					continue;
+				}
+				int rx = Integer.parseInt(matcher.group(1));
+				int ry = Integer.parseInt(matcher.group(2));
+				int rz = Integer.parseInt(matcher.group(3));
+				BAAWrapper regionFile = manager.getBAAWrapper(rx, ry, rz);
+				for (int key = 0; key < Region.CHUNKS.VOLUME; key++) {
+					try {
+						if (convertChunk(regionFile, key)) {
+							converted++;
+						}
+					} catch (IOException e) {
+						System.out.println("Unable to convert chunk " + key + " of " + file + ": " + e.getMessage());
+						failed++;
+					}
+				}
+			}
+		} finally {
+			manager.closeAll();
+		}
+		System.out.println("Converted " + converted + " chunks in " + worldDirectory + (failed > 0 ? ", " + failed + " chunks failed" : ""));
+		return failed == 0;
+	}
+
+	private static boolean convertChunk(BAAWrapper regionFile, int key) throws IOException {
+		if (!regionFile.inputStreamExists(key)) {
+			return false;
+		}
+		InputStream in = regionFile.getBlockInputStream(key);
+		if (in == null) {
+			return false;
+		}
+		byte[] data;
+		try {
+			data = ChunkFiles.convertToBinary(in);
+		} finally {
+			in.close();
+		}
+		if (data == null) {
+			return false;
+		}
+		// The chunk is overwritten in place, so make sure the converted chunk can be read back first
+		ChunkFiles.readChunk(new ByteArrayInputStream(data));
+		OutputStream out = regionFile.getBlockOutputStream(key);
+		if (out == null) {
+			throw new IOException("Unable to open the chunk for writing");
+		}
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+		return true;
+	}
+}
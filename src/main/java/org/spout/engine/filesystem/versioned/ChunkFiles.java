@@ -26,9 +26,15 @@
  */
 package org.spout.engine.filesystem.versioned;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -40,6 +46,7 @@ import org.spout.api.Spout;
 import org.spout.api.component.BlockComponentOwner;
 import org.spout.api.component.Component;
 import org.spout.api.datatable.ManagedHashMap;
+import org.spout.api.geo.cuboid.Chunk;
 import org.spout.api.geo.cuboid.ChunkSnapshot.BlockComponentSnapshot;
 import org.spout.api.lighting.FakeLightingManager;
 import org.spout.api.lighting.LightingManager;
@@ -53,6 +60,7 @@ import org.spout.api.util.hashing.SignedTenBitTripleHashed;
 import org.spout.api.util.sanitation.SafeCast;
 import org.spout.api.util.typechecker.TypeChecker;
 
+import org.spout.engine.SpoutConfiguration;
 import org.spout.engine.SpoutEngine;
 import org.spout.engine.SpoutServer;
 import org.spout.engine.filesystem.ChunkDataForRegion;
@@ -79,71 +87,158 @@ import org.spout.nbt.util.NBTMapper;
 
 public class ChunkFiles {
 	public static final byte CHUNK_VERSION = 5;
+	/**
+	 * The first int of a chunk stored in the binary format, "SPCB"
+	 */
+	public static final int BINARY_MAGIC = 0x53504342;
+	public static final byte BINARY_VERSION = 1;
+	/**
+	 * The bounds of a binary chunk, which are checked when the chunk is written as well as when it is read, so any chunk which is saved can be loaded
+	 */
+	private static final int MAX_BINARY_FIELD = 1 << 24;
+	private static final int MAX_BINARY_BLOCKS = Chunk.BLOCKS.VOLUME;
+	private static final int MAX_BINARY_UPDATES = MAX_BINARY_FIELD / 16;
+	private static final int MAX_BINARY_COMPONENTS = Chunk.BLOCKS.VOLUME;
+	private static final int MAX_BINARY_LIGHT_BUFFERS = Short.MAX_VALUE;
+	private static final int CHUNK_BUFFER_SIZE = 8192;
 	private static final TypeChecker<List<? extends CompoundTag>> checkerListCompoundTag = TypeChecker.tList(CompoundTag.class);
 	
 	public static SpoutChunk loadChunk(SpoutRegion r, int x, int y, int z, InputStream dis, ChunkDataForRegion dataForRegion) {
 		if (Spout.getPlatform() != Platform.SERVER) {
 			throw new UnsupportedOperationException("Unable to load chunk in client mode");
 		}
-		SpoutChunk chunk = null;
-		NBTInputStream is = null;
-
 		try {
-			if (dis == null) {
+			ChunkRecord record = readChunk(dis);
+			if (record == null) {
 				//The inputstream is null because no chunk data exists
-				return chunk;
+				return null;
 			}
+			return createChunk(r, x, y, z, dataForRegion, record);
+		} catch (IOException e) {
+			Spout.getLogger().log(Level.SEVERE, "Unable to load chunk at (" + x + ", " + y + ", " + z + ") in " + r, e);
+			return null;
+		}
+	}
 
-			is = new NBTInputStream(dis, false);
-			CompoundTag chunkTag = (CompoundTag) is.readTag();
+	/**
+	 * Reads and decodes a stored chunk, without creating the chunk.<br>
+	 * <br>
+	 * This only touches the stream, so it can be called without holding the snapshot lock.  The chunk is created from the record by
+	 * {@link #createChunk(SpoutRegion, int, int, int, ChunkDataForRegion, ChunkRecord)}.
+	 * 
+	 * @param dis the stored chunk, or null if no chunk data exists
+	 * @return the decoded chunk, or null if the stream was null
+	 * @throws IOException if the chunk could not be read
+	 */
+	public static ChunkRecord readChunk(InputStream dis) throws IOException {
+		if (dis == null) {
+			return null;
+		}
+		// The stream is buffered so the format can be detected with mark and reset
+		InputStream is = new BufferedInputStream(dis, CHUNK_BUFFER_SIZE);
+		try {
+			if (isBinary(is)) {
+				return readBinary(new DataInputStream(is));
+			}
+			CompoundTag chunkTag = (CompoundTag) new NBTInputStream(is, false).readTag();
 			CompoundMap map = chunkTag.getValue();
-
 			byte version = SafeCast.toByte(NBTMapper.toTagValue(map.get("version")), (byte) -1);
-
-			boolean converted = false;
-			
-			if (version > CHUNK_VERSION) {
-				Spout.getLogger().log(Level.SEVERE, "Chunk version " + version + " exceeds maximum allowed value of " + CHUNK_VERSION);
-				return null;
-			} else if (version < CHUNK_VERSION) {
-				if (version <= 0) {
-					Spout.getLogger().log(Level.SEVERE, "Unable to parse chunk version " + version);
-					return null;
-				}
-				converted = true;
-				if (version <= 1) {
-					map = convertV1V2(map);
-				}
-				if (version <= 2) {
-					map = convertV2V3(map);
-				}
-				if (version <= 3) {
-					map = convertV3V4(map);
-				}
-				if (version <= 4) {
-					map = convertV4V5(map);
-				}
-			}
-			
-			chunk = loadChunk(r, x, y, z, dataForRegion, map, version);
-			if (converted) {
-				chunk.setModified();
-			}
-
-		} catch (IOException e) {
-			e.printStackTrace();
+			ChunkRecord record = readRecord(map);
+			record.outdated = version < CHUNK_VERSION;
+			return record;
 		} finally {
-			if (is != null) {
-				try {
-					is.close();
-				} catch (IOException ignore) {
-				}
+			try {
+				is.close();
+			} catch (IOException ignore) {
 			}
 		}
-		return chunk;
 	}
 	
 	public static SpoutChunk loadChunk(SpoutRegion r, int x, int y, int z, ChunkDataForRegion dataForRegion, CompoundMap map, int version) throws IOException {
+		return createChunk(r, x, y, z, dataForRegion, readRecord(map));
+	}
+
+	/**
+	 * Converts a chunk stored in the NBT format to the binary format
+	 * @param in the stored chunk
+	 * @return the chunk in the binary format, or null if the chunk is already in the binary format or exceeds its bounds
+	 * @throws IOException if the chunk could not be read
+	 */
+	public static byte[] convertToBinary(InputStream in) throws IOException {
+		InputStream is = new BufferedInputStream(in, CHUNK_BUFFER_SIZE);
+		if (isBinary(is)) {
+			return null;
+		}
+		CompoundTag chunkTag = (CompoundTag) new NBTInputStream(is, false).readTag();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (!writeBinary(readRecord(chunkTag.getValue()), new DataOutputStream(out))) {
+			return null;
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Reads the fields of a chunk stored as NBT, converting older versions
+	 */
+	private static ChunkRecord readRecord(CompoundMap map) throws IOException {
+		byte version = SafeCast.toByte(NBTMapper.toTagValue(map.get("version")), (byte) -1);
+
+		if (version > CHUNK_VERSION) {
+			throw new IOException("Chunk version " + version + " exceeds maximum allowed value of " + CHUNK_VERSION);
+		} else if (version < CHUNK_VERSION) {
+			if (version <= 0) {
+				throw new IOException("Unable to parse chunk version " + version);
+			}
+			if (version <= 1) {
+				map = convertV1V2(map);
+			}
+			if (version <= 2) {
+				map = convertV2V3(map);
+			}
+			if (version <= 3) {
+				map = convertV3V4(map);
+			}
+			if (version <= 4) {
+				map = convertV4V5(map);
+			}
+		}
+
+		ChunkRecord record = new ChunkRecord();
+		record.x = SafeCast.toInt(NBTMapper.toTagValue(map.get("x")), 0);
+		record.y = SafeCast.toInt(NBTMapper.toTagValue(map.get("y")), 0);
+		record.z = SafeCast.toInt(NBTMapper.toTagValue(map.get("z")), 0);
+		record.populationState = SafeCast.toGeneric(map.get("populationState"), new ByteTag("", PopulationState.POPULATED.getId()), ByteTag.class).getValue();
+		record.lightStable = SafeCast.toByte(NBTMapper.toTagValue(map.get("lightStable")), (byte) 0) != 0;
+		record.palette = SafeCast.toIntArray(NBTMapper.toTagValue(map.get("palette")), null);
+		record.packedWidth = SafeCast.toInt(NBTMapper.toTagValue(map.get("packedWidth")), -1);
+		record.packedBlockArray = SafeCast.toIntArray(NBTMapper.toTagValue(map.get("packedBlockArray")), null);
+		record.extraData = SafeCast.toByteArray(NBTMapper.toTagValue(map.get("extraData")), null);
+		record.entities = SafeCast.toGeneric(NBTMapper.toTagValue(map.get("entities")), null, CompoundMap.class);
+
+		List<? extends CompoundTag> updateList = checkerListCompoundTag.checkTag(map.get("dynamic_updates"));
+		readDynamicUpdates(updateList, record);
+
+		List<? extends CompoundTag> componentsList = checkerListCompoundTag.checkTag(map.get("block_components"), null);
+		readBlockComponents(componentsList, record);
+
+		CompoundMap lightingMap = SafeCast.toGeneric(NBTMapper.toTagValue(map.get("light_buffers")), null, CompoundMap.class);
+		readLightingBuffers(lightingMap, record);
+
+		return record;
+	}
+
+	/**
+	 * Creates a chunk from a decoded record
+	 * @param r the region
+	 * @param x the chunk x coordinate, relative to the region
+	 * @param y the chunk y coordinate, relative to the region
+	 * @param z the chunk z coordinate, relative to the region
+	 * @param dataForRegion the entities and dynamic updates loaded with the chunk
+	 * @param record the decoded record
+	 * @return the chunk
+	 * @throws IOException if the record could not be applied
+	 */
+	public static SpoutChunk createChunk(SpoutRegion r, int x, int y, int z, ChunkDataForRegion dataForRegion, ChunkRecord record) throws IOException {
 		if (Spout.getPlatform() != Platform.SERVER) {
 			throw new UnsupportedOperationException("Unable to load chunk in client mode");
 		}
@@ -158,19 +253,13 @@ public class ChunkFiles {
 		StringToUniqueIntegerMap global = ((SpoutServer) Spout.getEngine()).getEngineItemMap();
 		StringToUniqueIntegerMap itemMap = world.getItemMap();
 
-		byte[] extraData = SafeCast.toByteArray(NBTMapper.toTagValue(map.get("extraData")), null);
-
 		ManagedHashMap extraDataMap = new ManagedHashMap();
-		extraDataMap.deserialize(extraData);
+		extraDataMap.deserialize(record.extraData);
 
 		boolean skipScan = false;
 
-		byte populationState = SafeCast.toGeneric(map.get("populationState"), new ByteTag("", PopulationState.POPULATED.getId()), ByteTag.class).getValue();
-		boolean lightStable = SafeCast.toByte(NBTMapper.toTagValue(map.get("lightStable")), (byte) 0) != 0;
-		
-		int[] palette = SafeCast.toIntArray(NBTMapper.toTagValue(map.get("palette")), null);
-		int blockArrayWidth = SafeCast.toInt(NBTMapper.toTagValue(map.get("packedWidth")), -1);
-		int[] variableWidthBlockArray = SafeCast.toIntArray(NBTMapper.toTagValue(map.get("packedBlockArray")), null);
+		int[] palette = record.palette;
+		int[] variableWidthBlockArray = record.packedBlockArray;
 
 		if (palette.length > 0) {
 			convertArray(palette, itemMap, global);
@@ -179,21 +268,18 @@ public class ChunkFiles {
 			convertArray(variableWidthBlockArray, itemMap, global);
 			skipScan = componentSkipCheck(variableWidthBlockArray);
 		}
-		chunk = new SpoutChunk(r.getWorld(), r, cx, cy, cz, PopulationState.byID(populationState), palette, blockArrayWidth, variableWidthBlockArray, extraDataMap, lightStable);
+		chunk = new SpoutChunk(r.getWorld(), r, cx, cy, cz, PopulationState.byID(record.populationState), palette, record.packedWidth, variableWidthBlockArray, extraDataMap, record.lightStable);
 
-		CompoundMap entityMap = SafeCast.toGeneric(NBTMapper.toTagValue(map.get("entities")), null, CompoundMap.class);
-		EntityFiles.loadEntities(r, entityMap, dataForRegion.loadedEntities);
+		EntityFiles.loadEntities(r, record.entities, dataForRegion.loadedEntities);
 
-		List<? extends CompoundTag> updateList = checkerListCompoundTag.checkTag(map.get("dynamic_updates"));
-		loadDynamicUpdates(updateList, dataForRegion.loadedUpdates);
+		for (int i = 0; i < record.updateCount; i++) {
+			dataForRegion.loadedUpdates.add(new DynamicBlockUpdate(record.updatePacked[i], record.updateNext[i], record.updateData[i]));
+		}
 
-		List<? extends CompoundTag> componentsList = checkerListCompoundTag.checkTag(map.get("block_components"), null);
-		
-		CompoundMap lightingMap = SafeCast.toGeneric(NBTMapper.toTagValue(map.get("light_buffers")), null, CompoundMap.class);
 		StringToUniqueIntegerMap worldMap = ((SpoutServerWorld) r.getWorld()).getLightingMap();
 		List<LightingManager<?>> lightingManagers = new ArrayList<LightingManager<?>>();
 		List<byte[]> lightingData = new ArrayList<byte[]>();
-		loadLightingBuffers(lightingManagers, lightingData, lightingMap, worldMap);
+		loadLightingBuffers(lightingManagers, lightingData, record, worldMap);
 		
 		chunk.addLightingBufferData(lightingManagers, lightingData);
 
@@ -206,9 +292,12 @@ public class ChunkFiles {
 			chunk.blockComponentScan();
 		}
 		//Load data associated with block components
-		loadBlockComponents(chunk, componentsList);
+		loadBlockComponents(chunk, record);
 		//Attach block components
 		chunk.getBlockComponentOwners().forEachEntry(new AttachComponentProcedure());
+		if (record.outdated) {
+			chunk.setModified();
+		}
 		return chunk;
 	}
 	
@@ -216,7 +305,6 @@ public class ChunkFiles {
 		if (Spout.getPlatform() != Platform.SERVER) {
 			throw new UnsupportedOperationException("Unable to save chunk in client mode");
 		}
-		CompoundMap chunkTags = new CompoundMap();
 
 		//Switch block ids from engine material ids to world specific ids
 		StringToUniqueIntegerMap global = ((SpoutServer) Spout.getEngine()).getEngineItemMap();
@@ -234,34 +322,293 @@ public class ChunkFiles {
 			convertArray(packetBlockArray, global, itemMap);
 		}
 
-		chunkTags.put(new ByteTag("version", CHUNK_VERSION));
-		chunkTags.put(new ByteTag("format", (byte) 0));
-		chunkTags.put(new IntTag("x", snapshot.getX()));
-		chunkTags.put(new IntTag("y", snapshot.getY()));
-		chunkTags.put(new IntTag("z", snapshot.getZ()));
-		chunkTags.put(new ByteTag("populationState", snapshot.getPopulationState().getId()));
-		chunkTags.put(new IntArrayTag("palette", palette));
-		chunkTags.put(new IntTag("packedWidth", packedWidth));
-		chunkTags.put(new IntArrayTag("packedBlockArray", packetBlockArray));
-		chunkTags.put(new CompoundTag("entities", EntityFiles.saveEntities(snapshot.getEntities())));
-		chunkTags.put(saveDynamicUpdates(blockUpdates));
-		chunkTags.put(saveBlockComponents(snapshot.getBlockComponents()));
-		chunkTags.put(new ByteArrayTag("extraData", snapshot.getDataMap().serialize()));
-		chunkTags.put(saveLightingBuffers(lightingMap, snapshot.getLightBuffers()));
-
-		CompoundTag chunkCompound = new CompoundTag("chunk", chunkTags);
-
-		NBTOutputStream os = null;
 		try {
-			os = new NBTOutputStream(dos, false);
-			os.writeTag(chunkCompound);
-			os.flush();
+			boolean saved = false;
+			if (SpoutConfiguration.BINARY_CHUNKS.getBoolean()) {
+				ChunkRecord record = new ChunkRecord();
+				record.x = snapshot.getX();
+				record.y = snapshot.getY();
+				record.z = snapshot.getZ();
+				record.populationState = snapshot.getPopulationState().getId();
+				record.palette = palette;
+				record.packedWidth = packedWidth;
+				record.packedBlockArray = packetBlockArray;
+				record.extraData = snapshot.getDataMap().serialize();
+				record.entities = EntityFiles.saveEntities(snapshot.getEntities());
+				saveDynamicUpdates(blockUpdates, record);
+				saveBlockComponents(snapshot.getBlockComponents(), record);
+				saveLightingBuffers(lightingMap, snapshot.getLightBuffers(), record);
+				DataOutputStream out = new DataOutputStream(dos);
+				saved = writeBinary(record, out);
+				if (saved) {
+					out.flush();
+				} else {
+					Spout.getLogger().warning("Chunk {" + snapshot.getX() + ", " + snapshot.getY() + ", " + snapshot.getZ() + "} exceeds the bounds of the binary format, saving it as NBT");
+				}
+			}
+			if (!saved) {
+				CompoundMap chunkTags = new CompoundMap();
+				chunkTags.put(new ByteTag("version", CHUNK_VERSION));
+				chunkTags.put(new ByteTag("format", (byte) 0));
+				chunkTags.put(new IntTag("x", snapshot.getX()));
+				chunkTags.put(new IntTag("y", snapshot.getY()));
+				chunkTags.put(new IntTag("z", snapshot.getZ()));
+				chunkTags.put(new ByteTag("populationState", snapshot.getPopulationState().getId()));
+				chunkTags.put(new IntArrayTag("palette", palette));
+				chunkTags.put(new IntTag("packedWidth", packedWidth));
+				chunkTags.put(new IntArrayTag("packedBlockArray", packetBlockArray));
+				chunkTags.put(new CompoundTag("entities", EntityFiles.saveEntities(snapshot.getEntities())));
+				chunkTags.put(saveDynamicUpdates(blockUpdates));
+				chunkTags.put(saveBlockComponents(snapshot.getBlockComponents()));
+				chunkTags.put(new ByteArrayTag("extraData", snapshot.getDataMap().serialize()));
+				chunkTags.put(saveLightingBuffers(lightingMap, snapshot.getLightBuffers()));
+
+				CompoundTag chunkCompound = new CompoundTag("chunk", chunkTags);
+
+				NBTOutputStream os = new NBTOutputStream(dos, false);
+				os.writeTag(chunkCompound);
+				os.flush();
+			}
 		} catch (IOException e) {
 			Spout.getLogger().log(Level.SEVERE, "Error saving chunk {" + snapshot.getX() + ", " + snapshot.getY() + ", " + snapshot + "}", e);
 		}
 
-		world.getItemMap().save();
-		world.getLightingMap().save();
+		// The maps are flushed once per write batch, see SpoutServerWorld.flushMaps()
+		world.markMapsDirty();
+	}
+
+	/**
+	 * The fields of a stored chunk, with block ids and lighting manager ids in the world's id space
+	 */
+	public static class ChunkRecord {
+		boolean outdated;
+		int x;
+		int y;
+		int z;
+		byte populationState;
+		boolean lightStable;
+		int[] palette;
+		int packedWidth;
+		int[] packedBlockArray;
+		byte[] extraData;
+		CompoundMap entities;
+		int updateCount;
+		int[] updatePacked;
+		long[] updateNext;
+		int[] updateData;
+		int componentCount;
+		short[] componentPacked;
+		byte[][] componentData;
+		int lightCount;
+		int[] lightManagerIds;
+		byte[][] lightData;
+	}
+
+	/**
+	 * Binary chunk format<br>
+	 * <br>
+	 * int magic, byte version, int x, int y, int z, byte population state, byte light stable<br>
+	 * int palette length, int[] palette, int packed width, int packed length, int[] packed blocks<br>
+	 * int extra data length, byte[] extra data, int entity NBT length, byte[] entity NBT (a compound tag, or empty)<br>
+	 * int update count, (int packed position, long next update, int data)[]<br>
+	 * int component count, (short packed position, int data length, byte[] data)[]<br>
+	 * int light buffer count, (int world manager id, int data length, byte[] data)[]<br>
+	 * <br>
+	 * The magic is chosen so it can't be confused with the compound tag which starts an NBT chunk.
+	 */
+	private static boolean isBinary(InputStream in) throws IOException {
+		in.mark(4);
+		int magic = 0;
+		for (int i = 0; i < 4; i++) {
+			int b = in.read();
+			if (b < 0) {
+				in.reset();
+				return false;
+			}
+			magic = (magic << 8) | b;
+		}
+		in.reset();
+		return magic == BINARY_MAGIC;
+	}
+
+	/**
+	 * Writes a chunk in the binary format.  Nothing is written if the chunk exceeds the bounds which {@link #readBinary(DataInputStream)} accepts.
+	 * @param record the chunk
+	 * @param out the stream to write to
+	 * @return true if the chunk was written, false if it exceeds the bounds of the binary format
+	 * @throws IOException if the chunk could not be written
+	 */
+	static boolean writeBinary(ChunkRecord record, DataOutputStream out) throws IOException {
+		byte[] entities = null;
+		if (record.entities != null && !record.entities.isEmpty()) {
+			ByteArrayOutputStream entityData = new ByteArrayOutputStream();
+			NBTOutputStream nbt = new NBTOutputStream(entityData, false);
+			nbt.writeTag(new CompoundTag("entities", record.entities));
+			nbt.flush();
+			entities = entityData.toByteArray();
+		}
+		if (!isWithinBinaryBounds(record, entities)) {
+			return false;
+		}
+		out.writeInt(BINARY_MAGIC);
+		out.writeByte(BINARY_VERSION);
+		out.writeInt(record.x);
+		out.writeInt(record.y);
+		out.writeInt(record.z);
+		out.writeByte(record.populationState);
+		out.writeBoolean(record.lightStable);
+		writeIntArray(out, record.palette);
+		out.writeInt(record.packedWidth);
+		writeIntArray(out, record.packedBlockArray);
+		writeByteArray(out, record.extraData);
+		writeByteArray(out, entities);
+		out.writeInt(record.updateCount);
+		for (int i = 0; i < record.updateCount; i++) {
+			out.writeInt(record.updatePacked[i]);
+			out.writeLong(record.updateNext[i]);
+			out.writeInt(record.updateData[i]);
+		}
+		out.writeInt(record.componentCount);
+		for (int i = 0; i < record.componentCount; i++) {
+			out.writeShort(record.componentPacked[i]);
+			writeByteArray(out, record.componentData[i]);
+		}
+		out.writeInt(record.lightCount);
+		for (int i = 0; i < record.lightCount; i++) {
+			out.writeInt(record.lightManagerIds[i]);
+			writeByteArray(out, record.lightData[i]);
+		}
+		return true;
+	}
+
+	private static boolean isWithinBinaryBounds(ChunkRecord record, byte[] entities) {
+		if (record.palette.length > MAX_BINARY_BLOCKS || record.packedBlockArray.length > MAX_BINARY_BLOCKS) {
+			return false;
+		}
+		if (!isWithinBinaryBounds(record.extraData) || !isWithinBinaryBounds(entities)) {
+			return false;
+		}
+		if (record.updateCount > MAX_BINARY_UPDATES || record.componentCount > MAX_BINARY_COMPONENTS || record.lightCount > MAX_BINARY_LIGHT_BUFFERS) {
+			return false;
+		}
+		for (int i = 0; i < record.componentCount; i++) {
+			if (!isWithinBinaryBounds(record.componentData[i])) {
+				return false;
+			}
+		}
+		for (int i = 0; i < record.lightCount; i++) {
+			if (!isWithinBinaryBounds(record.lightData[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isWithinBinaryBounds(byte[] array) {
+		return array == null || array.length <= MAX_BINARY_FIELD;
+	}
+
+	private static ChunkRecord readBinary(DataInputStream in) throws IOException {
+		if (in.readInt() != BINARY_MAGIC) {
+			throw new IOException("Binary chunk magic mismatch");
+		}
+		byte version = in.readByte();
+		if (version != BINARY_VERSION) {
+			throw new IOException("Binary chunk version " + version + " is not supported, expected " + BINARY_VERSION);
+		}
+		ChunkRecord record = new ChunkRecord();
+		record.x = in.readInt();
+		record.y = in.readInt();
+		record.z = in.readInt();
+		record.populationState = in.readByte();
+		record.lightStable = in.readBoolean();
+		record.palette = readIntArray(in, MAX_BINARY_BLOCKS);
+		record.packedWidth = in.readInt();
+		record.packedBlockArray = readIntArray(in, MAX_BINARY_BLOCKS);
+		record.extraData = readByteArray(in);
+		byte[] entities = readByteArray(in);
+		if (entities.length > 0) {
+			CompoundTag tag = (CompoundTag) new NBTInputStream(new ByteArrayInputStream(entities), false).readTag();
+			record.entities = tag.getValue();
+		}
+		int updates = readCount(in, MAX_BINARY_UPDATES);
+		allocateUpdates(record, updates);
+		for (int i = 0; i < updates; i++) {
+			record.updatePacked[i] = in.readInt();
+			record.updateNext[i] = in.readLong();
+			record.updateData[i] = in.readInt();
+		}
+		int components = readCount(in, MAX_BINARY_COMPONENTS);
+		allocateComponents(record, components);
+		for (int i = 0; i < components; i++) {
+			record.componentPacked[i] = in.readShort();
+			record.componentData[i] = readByteArray(in);
+		}
+		int lights = readCount(in, MAX_BINARY_LIGHT_BUFFERS);
+		allocateLightBuffers(record, lights);
+		for (int i = 0; i < lights; i++) {
+			record.lightManagerIds[i] = in.readInt();
+			record.lightData[i] = readByteArray(in);
+		}
+		return record;
+	}
+
+	private static int readCount(DataInputStream in, int max) throws IOException {
+		int count = in.readInt();
+		if (count < 0 || count > max) {
+			throw new IOException("Invalid length " + count + " in binary chunk");
+		}
+		return count;
+	}
+
+	private static void writeIntArray(DataOutputStream out, int[] array) throws IOException {
+		out.writeInt(array.length);
+		ByteBuffer buffer = ByteBuffer.allocate(array.length << 2);
+		buffer.asIntBuffer().put(array);
+		out.write(buffer.array());
+	}
+
+	private static int[] readIntArray(DataInputStream in, int max) throws IOException {
+		int length = readCount(in, max);
+		byte[] bytes = new byte[length << 2];
+		in.readFully(bytes);
+		int[] array = new int[length];
+		ByteBuffer.wrap(bytes).asIntBuffer().get(array);
+		return array;
+	}
+
+	private static void writeByteArray(DataOutputStream out, byte[] array) throws IOException {
+		if (array == null) {
+			out.writeInt(0);
+		} else {
+			out.writeInt(array.length);
+			out.write(array);
+		}
+	}
+
+	private static byte[] readByteArray(DataInputStream in) throws IOException {
+		byte[] array = new byte[readCount(in, MAX_BINARY_FIELD)];
+		in.readFully(array);
+		return array;
+	}
+
+	private static void allocateUpdates(ChunkRecord record, int count) {
+		record.updateCount = count;
+		record.updatePacked = new int[count];
+		record.updateNext = new long[count];
+		record.updateData = new int[count];
+	}
+
+	private static void allocateComponents(ChunkRecord record, int count) {
+		record.componentCount = count;
+		record.componentPacked = new short[count];
+		record.componentData = new byte[count][];
+	}
+
+	private static void allocateLightBuffers(ChunkRecord record, int count) {
+		record.lightCount = count;
+		record.lightManagerIds = new int[count];
+		record.lightData = new byte[count][];
 	}
 	
 	private static void convertArray(int[] fullState, StringToUniqueIntegerMap from, StringToUniqueIntegerMap to) {
@@ -298,20 +645,27 @@ public class ChunkFiles {
 		return null;
 	}
 	
-	private static void loadBlockComponents(SpoutChunk chunk, List<? extends CompoundTag> list) {
+	private static void readBlockComponents(List<? extends CompoundTag> list, ChunkRecord record) {
+		allocateComponents(record, list == null ? 0 : list.size());
 		if (list == null) {
 			return;
 		}
 
+		int i = 0;
 		for (CompoundTag compoundTag : list) {
 			CompoundMap map = compoundTag.getValue();
-			short packed = (Short) map.get("packed").getValue();
-			ByteArrayTag data = (ByteArrayTag) map.get("data");
-
-			BlockComponentOwner component = chunk.getBlockComponentOwners().get(packed);
+			record.componentPacked[i] = (Short) map.get("packed").getValue();
+			record.componentData[i] = ((ByteArrayTag) map.get("data")).getValue();
+			i++;
+		}
+	}
+	
+	private static void loadBlockComponents(SpoutChunk chunk, ChunkRecord record) {
+		for (int i = 0; i < record.componentCount; i++) {
+			BlockComponentOwner component = chunk.getBlockComponentOwners().get(record.componentPacked[i]);
 			if (component != null) {
 				try {
-					component.getData().deserialize(data.getValue());
+					component.getData().deserialize(record.componentData[i]);
 				} catch (IOException e) {
 					Spout.getLogger().log(Level.SEVERE, "Unhandled exception deserializing block component data", e);
 				}
@@ -319,6 +673,22 @@ public class ChunkFiles {
 		}
 	}
 	
+	private static void saveBlockComponents(List<BlockComponentSnapshot> components, ChunkRecord record) {
+		allocateComponents(record, components.size());
+		int count = 0;
+		for (BlockComponentSnapshot snapshot : components) {
+			if (!snapshot.getData().isEmpty()) {
+				byte[] data = snapshot.getData().serialize();
+				if (data != null && data.length > 0) {
+					record.componentPacked[count] = NibbleQuadHashed.key(snapshot.getX(), snapshot.getY(), snapshot.getZ(), 0);
+					record.componentData[count] = data;
+					count++;
+				}
+			}
+		}
+		record.componentCount = count;
+	}
+	
 	private static ListTag<CompoundTag> saveBlockComponents(List<BlockComponentSnapshot> components) {
 		List<CompoundTag> list = new ArrayList<CompoundTag>(components.size());
 
@@ -354,34 +724,40 @@ public class ChunkFiles {
 		return new CompoundTag("update", map);
 	}
 
-	private static void loadDynamicUpdates(List<? extends CompoundTag> list, List<DynamicBlockUpdate> loadedUpdates) {
+	private static void saveDynamicUpdates(List<DynamicBlockUpdate> updates, ChunkRecord record) {
+		allocateUpdates(record, updates.size());
+		int i = 0;
+		for (DynamicBlockUpdate update : updates) {
+			record.updatePacked[i] = update.getPacked();
+			record.updateNext[i] = update.getNextUpdate();
+			record.updateData[i] = update.getData();
+			i++;
+		}
+	}
+
+	private static void readDynamicUpdates(List<? extends CompoundTag> list, ChunkRecord record) {
+		allocateUpdates(record, list == null ? 0 : list.size());
 		if (list == null) {
 			return;
 		}
 
+		int count = 0;
 		for (CompoundTag compoundTag : list) {
-			DynamicBlockUpdate update = loadDynamicUpdate(compoundTag);
-			if (update == null) {
+			final CompoundMap map = compoundTag.getValue();
+			int packed = SafeCast.toInt(NBTMapper.toTagValue(map.get("packedPosition")), -1);
+			if (packed == -1) {
 				continue;
 			}
-
-			loadedUpdates.add(update);
-		}
-	}
-
-	private static DynamicBlockUpdate loadDynamicUpdate(CompoundTag compoundTag) {
-		final CompoundMap map = compoundTag.getValue();
-		int packed = SafeCast.toInt(NBTMapper.toTagValue(map.get("packedPosition")), -1);
-		if (packed == -1) {
-			return null;
-		}
-		final long nextUpdate = SafeCast.toLong(NBTMapper.toTagValue(map.get("nextUpdate")), -1L);
-		if (nextUpdate < 0) {
-			return null;
+			final long nextUpdate = SafeCast.toLong(NBTMapper.toTagValue(map.get("nextUpdate")), -1L);
+			if (nextUpdate < 0) {
+				continue;
+			}
+			record.updatePacked[count] = packed;
+			record.updateNext[count] = nextUpdate;
+			record.updateData[count] = SafeCast.toInt(NBTMapper.toTagValue(map.get("data")), 0);
+			count++;
 		}
-
-		final int data = SafeCast.toInt(NBTMapper.toTagValue(map.get("data")), 0);
-		return new DynamicBlockUpdate(packed, nextUpdate, data);
+		record.updateCount = count;
 	}
 	
 	private static class AttachComponentProcedure implements TShortObjectProcedure<BlockComponentOwner> {
@@ -419,42 +795,60 @@ public class ChunkFiles {
 		return new CompoundTag("lighting_" + worldId, map);
 	}
 	
-	private static void loadLightingBuffers(List<LightingManager<?>> managers, List<byte[]> lightData, CompoundMap map, StringToUniqueIntegerMap worldLighting) {
+	private static void saveLightingBuffers(StringToUniqueIntegerMap worldLighting, CuboidLightBuffer[] buffers, ChunkRecord record) {
+		StringToUniqueIntegerMap globalLighting = ((SpoutServer) Spout.getEngine()).getEngineLightingMap();
+
+		allocateLightBuffers(record, buffers.length);
+		for (int i = 0; i < buffers.length; i++) {
+			CuboidLightBuffer buffer = buffers[i];
+			record.lightManagerIds[i] = globalLighting.convertTo(worldLighting, buffer.getManagerId());
+			record.lightData[i] = buffer.serialize();
+		}
+	}
+	
+	private static void readLightingBuffers(CompoundMap map, ChunkRecord record) {
+		allocateLightBuffers(record, map == null ? 0 : map.size());
 		if (map == null) {
 			return;
 		}
 		
-		StringToUniqueIntegerMap globalLighting = ((SpoutServer) Spout.getEngine()).getEngineLightingMap();
-		
+		int count = 0;
 		for (Tag<?> t : map) {
 			if (t instanceof CompoundTag) {
-				CompoundTag compoundTag = (CompoundTag) t;
-				loadLightingBuffer(managers, lightData, compoundTag, globalLighting, worldLighting);
+				final CompoundMap bufferMap = ((CompoundTag) t).getValue();
+				int worldId = SafeCast.toInt(NBTMapper.toTagValue(bufferMap.get("manager_id")), -1);
+				if (worldId == -1) {
+					continue;
+				}
+				byte[] data = SafeCast.toByteArray(NBTMapper.toTagValue(bufferMap.get("light_data")), null);
+				if (data == null) {
+					continue;
+				}
+				record.lightManagerIds[count] = worldId;
+				record.lightData[count] = data;
+				count++;
 			}
 		}
+		record.lightCount = count;
 	}
 	
-	private static void loadLightingBuffer(List<LightingManager<?>> managers, List<byte[]> lightData, CompoundTag tag, StringToUniqueIntegerMap globalLighting, StringToUniqueIntegerMap worldLighting) {
-		final CompoundMap map = tag.getValue();
-		int worldId = SafeCast.toInt(NBTMapper.toTagValue(map.get("manager_id")), -1);
-		if (worldId == -1) {
-			return;
-		}
-		byte[] data = SafeCast.toByteArray(NBTMapper.toTagValue(map.get("light_data")), null);
-		if (data == null) {
-			return;
-		}
-		int globalId = globalLighting.convertFrom(worldLighting, worldId);
-		if (globalId == 0) {
-			Spout.getLogger().info("Unknown manager world id " + worldId);
-			return;
-		}
-		LightingManager<?> manager = LightingRegistry.get((short) globalId);
-		if (manager == null) {
-			manager = new FakeLightingManager(globalId);
+	private static void loadLightingBuffers(List<LightingManager<?>> managers, List<byte[]> lightData, ChunkRecord record, StringToUniqueIntegerMap worldLighting) {
+		StringToUniqueIntegerMap globalLighting = ((SpoutServer) Spout.getEngine()).getEngineLightingMap();
+		
+		for (int i = 0; i < record.lightCount; i++) {
+			int worldId = record.lightManagerIds[i];
+			int globalId = globalLighting.convertFrom(worldLighting, worldId);
+			if (globalId == 0) {
+				Spout.getLogger().info("Unknown manager world id " + worldId);
+				continue;
+			}
+			LightingManager<?> manager = LightingRegistry.get((short) globalId);
+			if (manager == null) {
+				manager = new FakeLightingManager(globalId);
+			}
+			managers.add(manager);
+			lightData.add(record.lightData[i]);
 		}
-		managers.add(manager);
-		lightData.add(data);
 	}
 
 	/**
@@ -37,7 +37,6 @@ import org.spout.api.Platform;
 import org.spout.api.Spout;
 import org.spout.api.generator.biome.BiomeManager;
 import org.spout.api.material.BlockMaterial;
-import org.spout.api.material.Material;
 import org.spout.api.material.MaterialRegistry;
 import org.spout.api.material.block.BlockFullState;
 import org.spout.api.util.StringToUniqueIntegerMap;
@@ -63,7 +62,7 @@ public class ColumnFiles {
 	
 	public static final int COLUMN_VERSION = 2;
 	
-	public static void readColumn(InputStream in, SpoutColumn column, AtomicInteger lowestY, AtomicInteger highestY, BlockMaterial[][] topmostBlocks) {
+	public static void readColumn(InputStream in, SpoutColumn column, AtomicInteger lowestY, AtomicInteger highestY, int[] topmostBlocks) {
 		if (Spout.getPlatform() != Platform.SERVER) {
 			throw new UnsupportedOperationException("Unable to read column in client mode");
 		}
@@ -110,7 +109,7 @@ public class ColumnFiles {
 		}
 	}
 	
-	private static void loadColumn(SpoutColumn column, AtomicInteger lowestY, AtomicInteger highestY, BlockMaterial[][] topmostBlocks, CompoundMap map) {
+	private static void loadColumn(SpoutColumn column, AtomicInteger lowestY, AtomicInteger highestY, int[] topmostBlocks, CompoundMap map) {
 		if (Spout.getPlatform() != Platform.SERVER) {
 			throw new UnsupportedOperationException("Unable to load column in client mode");
 		}	
@@ -118,7 +117,7 @@ public class ColumnFiles {
 				
 		for (int x = 0; x < SpoutColumn.BLOCKS.SIZE; x++) {
 			for (int z = 0; z < SpoutColumn.BLOCKS.SIZE; z++) {
-				column.getAtomicInteger(x, z).set(heights[NibblePairHashed.intKey(x, z)]);
+				column.getHeightMap().set(SpoutColumn.getIndex(x, z), heights[NibblePairHashed.intKey(x, z)]);
 			}
 		}
 
@@ -160,8 +159,9 @@ public class ColumnFiles {
 				}
 				if (m == null) {
 					column.setDirty(x, z);
+					continue;
 				}
-				topmostBlocks[x][z] = m;
+				topmostBlocks[SpoutColumn.getIndex(x, z)] = blockState;
 			}
 		}
 
@@ -185,12 +185,13 @@ public class ColumnFiles {
 		}
 	}
 
-	private static void initColumn(SpoutColumn column, AtomicInteger lowestY, AtomicInteger highestY, BlockMaterial[][] topmostBlocks) {
+	private static void initColumn(SpoutColumn column, AtomicInteger lowestY, AtomicInteger highestY, int[] topmostBlocks) {
 		//The inputstream is null because no height map data exists
 		for (int x = 0; x < SpoutColumn.BLOCKS.SIZE; x++) {
 			for (int z = 0; z < SpoutColumn.BLOCKS.SIZE; z++) {
-				column.getAtomicInteger(x, z).set(Integer.MIN_VALUE);
-				topmostBlocks[x][z] = null;
+				int index = SpoutColumn.getIndex(x, z);
+				column.getHeightMap().set(index, Integer.MIN_VALUE);
+				topmostBlocks[index] = SpoutColumn.NO_MATERIAL;
 				column.setDirty(x, z);
 			}
 		}
@@ -198,7 +199,7 @@ public class ColumnFiles {
 		highestY.set(Integer.MIN_VALUE);
 	}
 
-	public static void writeColumn(OutputStream out, SpoutColumn column, AtomicInteger lowestY, AtomicInteger highestY, BlockMaterial[][] topmostBlocks) {
+	public static void writeColumn(OutputStream out, SpoutColumn column, AtomicInteger lowestY, AtomicInteger highestY, int[] topmostBlocks) {
 		NBTOutputStream NBTStream = null;
 		try {
 			NBTStream = new NBTOutputStream(out, false);
@@ -216,7 +217,7 @@ public class ColumnFiles {
 		}
 	}
 	
-	private static CompoundMap saveColumn(SpoutColumn column, AtomicInteger lowestY, AtomicInteger highestY, BlockMaterial[][] topmostBlocks) {
+	private static CompoundMap saveColumn(SpoutColumn column, AtomicInteger lowestY, AtomicInteger highestY, int[] topmostBlocks) {
 		if (Spout.getPlatform() != Platform.SERVER) {
 			throw new UnsupportedOperationException("Unable to save column in client mode");
 		}
@@ -229,7 +230,7 @@ public class ColumnFiles {
 		for (int x = 0; x < SpoutColumn.BLOCKS.SIZE; x++) {
 			for (int z = 0; z < SpoutColumn.BLOCKS.SIZE; z++) {
 				int key = NibblePairHashed.intKey(x, z);
-				heights[key] = column.getAtomicInteger(x, z).get();
+				heights[key] = column.getHeightMap().get(SpoutColumn.getIndex(x, z));
 			}
 		}
 		
@@ -247,13 +248,13 @@ public class ColumnFiles {
 		for (int x = 0; x < SpoutColumn.BLOCKS.SIZE; x++) {
 			for (int z = 0; z < SpoutColumn.BLOCKS.SIZE; z++) {
 				int key = NibblePairHashed.intKey(x, z);
-				Material m = topmostBlocks[x][z];
-				if (m == null) {
+				int blockState = topmostBlocks[SpoutColumn.getIndex(x, z)];
+				if (blockState == SpoutColumn.NO_MATERIAL) {
 					continue;
 				}
 				validMaterial[key] = 1;
-				short blockId = m.getId();
-				short blockData = m.getData();
+				short blockId = BlockFullState.getId(blockState);
+				short blockData = BlockFullState.getData(blockState);
 				blockId = (short) global.convertTo(itemMap, blockId);
 				topmostMaterial[key] = BlockFullState.getPacked(blockId, blockData);
 			}
@@ -38,6 +38,8 @@ import org.spout.api.protocol.CommonHandler;
 import org.spout.api.protocol.Message;
 import org.spout.api.protocol.Protocol;
 import org.spout.api.protocol.Session;
+import org.spout.engine.protocol.ProxyPassthroughHandler;
+import org.spout.engine.protocol.SpoutProxySession;
 import org.spout.engine.protocol.SpoutSession;
 
 public class SpoutProxyConnectListener implements ChannelFutureListener {
@@ -74,6 +76,10 @@ public class SpoutProxyConnectListener implements ChannelFutureListener {
 					if (d != null) {
 						d.setSession(session);
 					}
+					ProxyPassthroughHandler passthrough = pipeline.get(ProxyPassthroughHandler.class);
+					if (passthrough != null && session instanceof SpoutProxySession) {
+						passthrough.setSession((SpoutProxySession) session, true);
+					}
 					Protocol protocol = session.getProtocol();
 					if (protocol != null) {
 						Message intro = protocol.getIntroductionMessage(playerName, (InetSocketAddress) c.getRemoteAddress());
@@ -0,0 +1,59 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.protocol;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+
+/**
+ * A protocol where every message is prefixed by a header containing its opcode and length, so
+ * that message boundaries can be found without decoding the message.
+ */
+public interface FramedProtocol {
+	/**
+	 * Gets the length of the header at the start of every message
+	 * @return the header length
+	 */
+	public int getHeaderLength();
+
+	/**
+	 * Gets the length of the message starting at the given index, including its header
+	 * @param buf the buffer
+	 * @param index the index of the start of the header
+	 * @return the length of the message, or -1 if the header is not fully readable
+	 * @throws CorruptedFrameException if the header contains an invalid length
+	 */
+	public int getFrameLength(ChannelBuffer buf, int index) throws CorruptedFrameException;
+
+	/**
+	 * Gets the opcode of the message starting at the given index.  The header must be readable.
+	 * @param buf the buffer
+	 * @param index the index of the start of the header
+	 * @return the opcode
+	 */
+	public int getOpcode(ChannelBuffer buf, int index);
+}
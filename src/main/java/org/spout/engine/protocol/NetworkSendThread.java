@@ -26,199 +26,310 @@
  */
 package org.spout.engine.protocol;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
 import java.util.Random;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.spout.api.Platform;
 import org.spout.api.Spout;
 import org.spout.api.protocol.Message;
+import org.spout.api.protocol.MessageCodec;
+import org.spout.api.protocol.Protocol;
 import org.spout.engine.SpoutConfiguration;
 
-public class NetworkSendThread {
+/**
+ * Sends the messages for a set of sessions.<br>
+ * <br>
+ * Messages are queued per session and written once per tick, when the pool is flushed, or earlier if
+ * a session's queue reaches the flush threshold.  When write coalescing is enabled, the queued messages
+ * for a session are encoded and written to the channel as a single composite buffer.
+ */
+public class NetworkSendThread extends Thread {
+
+	/**
+	 * The number of queued messages for a session which triggers an early flush
+	 */
+	private final static int FLUSH_THRESHOLD = 256;
+	/**
+	 * The maximum time between flushes, if the pool isn't flushed by the scheduler
+	 */
+	private final static long FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50);
 
-	private final static int QUEUE_ID_MASK = 7;
-	
+	private final static boolean coalesceWrites = SpoutConfiguration.COALESCE_WRITES.getBoolean(true);
 	private final static long minimumLatency = SpoutConfiguration.SEND_LATENCY.getLong();
 	private final static long spikeLatency = SpoutConfiguration.SEND_SPIKE_LATENCY.getLong();
 	private final static float spikeChance = SpoutConfiguration.SEND_SPIKE_CHANCE.getFloat() / 10.0F;
 
-	private final int poolIndex;
+	private final ConcurrentHashMap<SpoutSession<?>, SessionQueue> sessions = new ConcurrentHashMap<SpoutSession<?>, SessionQueue>();
+	private final AtomicBoolean flushRequested = new AtomicBoolean(false);
 
-	private final AtomicReference<ChannelQueueThread[]> channelQueues = new  AtomicReference<ChannelQueueThread[]>();
+	private long nextSpikeCheck = 0L;
 
-	private final AtomicReference<ChannelQueueThread[]> interruptedQueues = new AtomicReference<ChannelQueueThread[]>();
-	
 	public NetworkSendThread(int poolIndex) {
-		this.poolIndex = poolIndex;
-		channelQueues.set(new ChannelQueueThread[0]);
+		super("Network send thread, pool index " + poolIndex);
+		setDaemon(true);
 	}
 
 	public void send(SpoutSession<?> session, Channel channel, Message message) {
-		ChannelQueueThread queue = getChannelQueue(message.getChannelId());
-		if (queue != null) {
-			queue.send(session, channel, message);
-		}
+		send(session, channel, new QueueNode(message));
 	}
 
-	private ChannelQueueThread getChannelQueue(int queueId) {
-		queueId &= QUEUE_ID_MASK;
+	/**
+	 * Queues an already encoded message, including its header, to be written after the messages queued before it
+	 * @param session the session
+	 * @param channel the channel
+	 * @param buffer the encoded message
+	 */
+	public void sendRaw(SpoutSession<?> session, Channel channel, ChannelBuffer buffer) {
+		send(session, channel, new QueueNode(buffer));
+	}
 
-		ChannelQueueThread[] queues = channelQueues.get();
-		if (queues == null) {
-			return null;
-		}
-		while (queueId >= queues.length || queues[queueId] == null) {
-			ChannelQueueThread[] newQueues = new ChannelQueueThread[queueId + 1];
-			System.arraycopy(queues, 0, newQueues, 0, queues.length);
-			ChannelQueueThread newQueue = new ChannelQueueThread(poolIndex, queueId);
-			newQueues[queueId] = newQueue;
-			if (channelQueues.compareAndSet(queues, newQueues)) {
-				newQueue.start();
-				queues = newQueues;
+	/**
+	 * Queues a final message and closes the channel once it has been written.  The messages queued before it are
+	 * written first and messages queued after it are dropped.
+	 * @param session the session
+	 * @param channel the channel
+	 * @param message the final message, or null to only close the channel
+	 */
+	public void close(SpoutSession<?> session, Channel channel, Message message) {
+		if (!isAlive()) {
+			// The pool has shut down, so nothing would flush the queue
+			if (message != null) {
+				channel.write(message).addListener(ChannelFutureListener.CLOSE);
+			} else {
+				channel.close();
 			}
+			return;
 		}
-		return queues[queueId];
+		send(session, channel, new QueueNode(message, null, true));
+		flush();
 	}
 
-	public void interrupt() {
-		ChannelQueueThread[] queues = channelQueues.getAndSet(null);
-		if (queues == null) {
-			return;
-		}
-		for (int i = 0; i < queues.length; i++) {
-			ChannelQueueThread t = queues[i];
-			if (t != null) {
-				t.interrupt();
+	private void send(SpoutSession<?> session, Channel channel, QueueNode node) {
+		SessionQueue queue = sessions.get(session);
+		if (queue == null) {
+			SessionQueue newQueue = new SessionQueue(session, channel);
+			queue = sessions.putIfAbsent(session, newQueue);
+			if (queue == null) {
+				queue = newQueue;
 			}
 		}
-		interruptedQueues.set(queues);
+		if (queue.add(node) >= FLUSH_THRESHOLD) {
+			flush();
+		}
 	}
 
-	public void interruptAndJoin() throws InterruptedException {
-		ChannelQueueThread[] queues = interruptedQueues.get();
-		if (queues == null) {
-			interrupt();
-			queues = interruptedQueues.get();
-		}
-		for (int i = 0; i < queues.length; i++) {
-			ChannelQueueThread t = queues[i];
-			if (t != null) {
-				t.join();
-			}
+	/**
+	 * Requests that all queued messages are written
+	 */
+	public void flush() {
+		if (flushRequested.compareAndSet(false, true)) {
+			LockSupport.unpark(this);
 		}
 	}
 
-	private static class ChannelQueueThread extends Thread {
-		
-		private long nextSpikeCheck = 0L;
-
-		private final LinkedBlockingQueue<QueueNode> queue = new LinkedBlockingQueue<QueueNode>();
-
-		public ChannelQueueThread(int poolIndex, int channelId) {
-			super("Channel queue thread, pool index " + poolIndex + " channel id " + channelId);
-		}
-
-		public void send(SpoutSession<?> session, Channel channel, Message message) {
-			queue.add(new QueueNode(session, channel, message));
-		}
-
-		@Override
-		public void run() {
-			Random r = new Random();
-			QueueNode node;
-			while (!isInterrupted()) {
-				if (spikeChance > 0) {
-					long currentTime = System.currentTimeMillis();
-					if (currentTime > nextSpikeCheck) {
-						nextSpikeCheck = currentTime + 100L;
-						if (r.nextFloat() < spikeChance) {
-							try {
-								long spike = (long) (spikeLatency * r.nextFloat());
-								Thread.sleep(spike);
-							} catch (InterruptedException ie) {
-								break;
-							}
-						}
-					}
-				}
-				try {
-					node = queue.take();
-				} catch (InterruptedException ie) {
-					break;
-				}
-				try {
-					if (minimumLatency > 0) {
-						long currentTime = System.currentTimeMillis();
-						long w = minimumLatency + node.getCreationTime() - currentTime;
-						if (w > 0) {
-							try {
-								Thread.sleep(w);
-							} catch (InterruptedException ie) {
-								break;
-							}
+	public void interruptAndJoin() throws InterruptedException {
+		interrupt();
+		join();
+	}
+
+	@Override
+	public void run() {
+		Random r = new Random();
+		while (!isInterrupted()) {
+			if (spikeChance > 0) {
+				long currentTime = System.currentTimeMillis();
+				if (currentTime > nextSpikeCheck) {
+					nextSpikeCheck = currentTime + 100L;
+					if (r.nextFloat() < spikeChance) {
+						try {
+							long spike = (long) (spikeLatency * r.nextFloat());
+							Thread.sleep(spike);
+						} catch (InterruptedException ie) {
+							break;
 						}
 					}
-				} finally {
-					handle(node);
 				}
 			}
-			flushQueue();
+			flushRequested.set(false);
+			flushAll(false);
+			if (!flushRequested.get()) {
+				LockSupport.parkNanos(this, FLUSH_INTERVAL);
+			}
+		}
+		flushAll(true);
+	}
+
+	private void flushAll(boolean ignoreLatency) {
+		for (SessionQueue queue : sessions.values()) {
+			if (!queue.flush(ignoreLatency)) {
+				sessions.remove(queue.session);
+			}
+		}
+	}
+
+	private static class SessionQueue {
+		private final SpoutSession<?> session;
+		private final Channel channel;
+		private final Queue<QueueNode> queue = new ConcurrentLinkedQueue<QueueNode>();
+		private final AtomicInteger size = new AtomicInteger(0);
+		private final List<ChannelBuffer> buffers = new ArrayList<ChannelBuffer>();
+
+		public SessionQueue(SpoutSession<?> session, Channel channel) {
+			this.session = session;
+			this.channel = channel;
+		}
+
+		public int add(QueueNode node) {
+			queue.add(node);
+			return size.incrementAndGet();
 		}
 
-		private void handle(QueueNode node) {
-			Channel channel = node.getChannel();
+		/**
+		 * Writes the queued messages
+		 * @param ignoreLatency true to ignore the simulated send latency
+		 * @return false if the channel is closed
+		 */
+		public boolean flush(boolean ignoreLatency) {
+			if (!channel.isOpen()) {
+				queue.clear();
+				size.set(0);
+				return false;
+			}
 			try {
-				if (channel.isOpen()) {
-					channel.write(node.getMessage());
+				QueueNode node;
+				while ((node = queue.peek()) != null) {
+					if (!ignoreLatency && minimumLatency > 0 && node.getCreationTime() + minimumLatency > System.currentTimeMillis()) {
+						break;
+					}
+					queue.poll();
+					size.decrementAndGet();
+					if (node.isClose()) {
+						close(node.getMessage());
+						return false;
+					}
+					ChannelBuffer encoded = node.getBuffer();
+					if (encoded == null && coalesceWrites) {
+						encoded = encode(node.getMessage());
+					}
+					if (encoded == null) {
+						writeBuffers();
+						channel.write(node.getMessage());
+					} else {
+						buffers.add(encoded);
+					}
 				}
+				writeBuffers();
 			} catch (Exception e) {
+				buffers.clear();
 				try {
-					node.getSession().disconnect(false, "Socket Error!");
+					session.disconnect(false, "Socket Error!");
 				} catch (Exception e2) {
 					try {
-						Spout.getLogger().info("Unable to cleanly close session for " + node.getSession().getPlayer().getName());
+						Spout.getLogger().info("Unable to cleanly close session for " + session.getPlayer().getName());
 					} catch (Exception e3) {
 						Spout.getLogger().info("Unable to cleanly close session for unknown player (Unable to get player name)");
 					}
 				}
 			}
+			return true;
+		}
+
+		private void close(Message message) {
+			writeBuffers();
+			queue.clear();
+			size.set(0);
+			if (message != null) {
+				channel.write(message).addListener(ChannelFutureListener.CLOSE);
+			} else {
+				channel.close();
+			}
 		}
 
-		private void flushQueue() {
-			QueueNode node;
-			while ((node = queue.poll()) != null) {
-				handle(node);
+		private void writeBuffers() {
+			if (buffers.isEmpty()) {
+				return;
 			}
+			channel.write(ChannelBuffers.wrappedBuffer(buffers.toArray(new ChannelBuffer[buffers.size()])));
+			buffers.clear();
 		}
 
+		/**
+		 * Encodes a message with the session's protocol, in the same way as the pipeline encoder
+		 * @param message the message
+		 * @return the header and message data, or null if the message has no codec
+		 */
+		private ChannelBuffer encode(Message message) throws Exception {
+			return NetworkSendThread.encode(session.getProtocol(), message, Spout.getPlatform() == Platform.CLIENT);
+		}
+	}
+
+	/**
+	 * Encodes a message with a protocol, in the same way as the pipeline encoder
+	 * @param protocol the protocol
+	 * @param message the message
+	 * @param upstream true if the message is sent to the server
+	 * @return the header and message data, or null if the message has no codec
+	 */
+	@SuppressWarnings("unchecked")
+	static ChannelBuffer encode(Protocol protocol, Message message, boolean upstream) throws Exception {
+		MessageCodec<Message> codec = (MessageCodec<Message>) protocol.getCodecLookupService().find(message.getClass());
+		if (codec == null) {
+			return null;
+		}
+		ChannelBuffer data = upstream ? codec.encodeToServer(message) : codec.encodeToClient(message);
+		ChannelBuffer header = protocol.writeHeader(codec, data);
+		return ChannelBuffers.wrappedBuffer(header, data);
 	}
 
 	private static class QueueNode {
-		private final SpoutSession<?> session;
-		private final Channel channel;
 		private final Message message;
+		private final ChannelBuffer buffer;
+		private final boolean close;
 		private final long creation;
 
-		public QueueNode(SpoutSession<?> session, Channel channel, Message message) {
-			this.channel = channel;
-			this.message = message;
-			this.session = session;
-			this.creation = System.currentTimeMillis();
+		public QueueNode(Message message) {
+			this(message, null, false);
 		}
 
-		public Channel getChannel() {
-			return channel;
+		public QueueNode(ChannelBuffer buffer) {
+			this(null, buffer, false);
 		}
 
-		public SpoutSession<?> getSession() {
-			return session;
+		private QueueNode(Message message, ChannelBuffer buffer, boolean close) {
+			this.message = message;
+			this.buffer = buffer;
+			this.close = close;
+			this.creation = minimumLatency > 0 ? System.currentTimeMillis() : 0L;
 		}
 
 		public Message getMessage() {
 			return message;
 		}
+
+		public ChannelBuffer getBuffer() {
+			return buffer;
+		}
 		
+		/**
+		 * Gets if the channel should be closed after this node's message is written
+		 * @return true to close the channel
+		 */
+		public boolean isClose() {
+			return close;
+		}
+
 		public long getCreationTime() {
 			return creation;
 		}
@@ -28,20 +28,32 @@ package org.spout.engine.protocol;
 
 import org.spout.api.Spout;
 
+/**
+ * A small fixed set of threads which send the messages for all sessions.
+ */
 public class NetworkSendThreadPool {
 	
-	private static final int POOL_MASK = 0xF;
 	private static final NetworkSendThread[] pool;
 	
 	static {
-		pool = new NetworkSendThread[POOL_MASK + 1];
+		pool = new NetworkSendThread[Math.max(2, Runtime.getRuntime().availableProcessors() >> 1)];
 		for (int i = 0; i < pool.length; i++) {
 			pool[i] = new NetworkSendThread(i);
+			pool[i].start();
 		}
 	}
 	
 	public static NetworkSendThread getNetworkThread(int playerId) {
-		return pool[hash(playerId) & POOL_MASK];
+		return pool[(hash(playerId) & 0x7FFFFFFF) % pool.length];
+	}
+
+	/**
+	 * Writes all queued messages, this is called once per tick after the snapshot
+	 */
+	public static void flush() {
+		for (int i = 0; i < pool.length; i++) {
+			pool[i].flush();
+		}
 	}
 	
 	public static void interrupt() {
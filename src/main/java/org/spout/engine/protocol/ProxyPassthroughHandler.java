@@ -0,0 +1,117 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.protocol;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.spout.api.protocol.MessageCodec;
+import org.spout.api.protocol.Protocol;
+import org.spout.api.protocol.proxy.ConnectionInfoMessage;
+import org.spout.api.protocol.proxy.ProxyStartMessage;
+import org.spout.api.protocol.proxy.RedirectMessage;
+import org.spout.api.protocol.proxy.TransformableMessage;
+
+/**
+ * Splits the incoming data of a proxy channel into messages, using the message headers of a {@link FramedProtocol}.<br>
+ * <br>
+ * Once the session is in passthrough mode, messages that the proxy does not need to inspect or rewrite are
+ * forwarded to the other channel as raw buffers, without being decoded and encoded again.  All other messages
+ * are passed, one at a time, to the decoder.
+ */
+public class ProxyPassthroughHandler extends FrameDecoder {
+	private volatile SpoutProxySession session;
+	private volatile boolean auxChannel;
+
+	/**
+	 * Sets the session for this handler
+	 * @param session the session
+	 * @param auxChannel true if the channel is the upstream channel of the session
+	 */
+	public void setSession(SpoutProxySession session, boolean auxChannel) {
+		this.auxChannel = auxChannel;
+		this.session = session;
+	}
+
+	@Override
+	protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buf) throws Exception {
+		SpoutProxySession session = this.session;
+		Protocol protocol = session == null ? null : session.getProtocol();
+		if (!(protocol instanceof FramedProtocol)) {
+			return buf.readBytes(buf.readableBytes());
+		}
+		FramedProtocol framed = (FramedProtocol) protocol;
+		boolean passthrough = session.canForwardRaw(auxChannel);
+		int start = buf.readerIndex();
+		int end = start;
+		while (true) {
+			int length;
+			try {
+				length = framed.getFrameLength(buf, end);
+				if (length != -1 && length < framed.getHeaderLength()) {
+					throw new CorruptedFrameException("Frame length " + length + " is shorter than the message header");
+				}
+			} catch (CorruptedFrameException e) {
+				// The frame boundaries are lost, so nothing more can be read from this channel
+				buf.skipBytes(buf.readableBytes());
+				channel.close();
+				throw e;
+			}
+			if (length == -1) {
+				break;
+			}
+			if (end + length > buf.writerIndex()) {
+				break;
+			}
+			if (!passthrough || needsDecode(protocol, framed.getOpcode(buf, end))) {
+				if (end == start) {
+					return buf.readBytes(length);
+				}
+				break;
+			}
+			end += length;
+		}
+		if (end > start) {
+			session.forwardRaw(auxChannel, buf.readBytes(end - start));
+		}
+		return null;
+	}
+
+	private static boolean needsDecode(Protocol protocol, int opcode) {
+		MessageCodec<?> codec = protocol.getCodecLookupService().find(opcode);
+		if (codec == null) {
+			return false;
+		}
+		Class<?> type = codec.getType();
+		return TransformableMessage.class.isAssignableFrom(type)
+				|| ConnectionInfoMessage.class.isAssignableFrom(type)
+				|| ProxyStartMessage.class.isAssignableFrom(type)
+				|| RedirectMessage.class.isAssignableFrom(type);
+	}
+}
@@ -30,6 +30,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFutureListener;
 import org.spout.api.Spout;
@@ -96,6 +97,40 @@ public class SpoutProxySession extends SpoutServerSession<SpoutProxy> {
 		auxChannel.write(message);
 	}
 
+	/**
+	 * Indicates if messages received on a channel, which don't need to be inspected, can be forwarded without decoding them
+	 * @param auxChannel true for messages received on the aux channel
+	 * @return true if raw forwarding is possible
+	 */
+	public boolean canForwardRaw(boolean auxChannel) {
+		if (!passthrough.get()) {
+			return false;
+		}
+		if (auxChannel) {
+			return getState() == State.GAME;
+		} else {
+			return this.auxChannel.get() != null;
+		}
+	}
+
+	/**
+	 * Forwards encoded messages, received on one of the channels, to the other channel
+	 * @param auxChannel true for messages received on the aux channel
+	 * @param buffer the encoded messages, including their headers
+	 */
+	public void forwardRaw(boolean auxChannel, ChannelBuffer buffer) {
+		if (auxChannel) {
+			sendRaw(buffer);
+			return;
+		}
+		Channel c = this.auxChannel.get();
+		if (c == null) {
+			Spout.getLogger().warning("Attempt made to send data to an unconnected channel");
+			return;
+		}
+		c.write(buffer);
+	}
+
 	@Override
 	public void messageReceived(Message message) {
 		if (message instanceof ConnectionInfoMessage) {
@@ -29,7 +29,6 @@ package org.spout.engine.protocol;
 import java.util.logging.Level;
 
 import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.ChannelFutureListener;
 
 import org.spout.api.Spout;
 import org.spout.api.event.player.PlayerKickEvent;
@@ -90,11 +89,7 @@ public class SpoutServerSession<T extends SpoutServer> extends SpoutSession<T> i
 		if (protocol != null) {
 			kickMessage = protocol.getKickMessage(reason);
 		}
-		if (kickMessage != null) {
-			channel.write(kickMessage).addListener(ChannelFutureListener.CLOSE);
-		} else {
-			channel.close();
-		}
+		closeChannel(kickMessage);
 		return true;
 	}
 
@@ -33,7 +33,9 @@ import java.util.Queue;
 import java.util.Random;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicReference;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.spout.api.Server;
 import org.spout.api.datatable.ManagedHashMap;
 import org.spout.api.datatable.SerializableMap;
@@ -274,6 +276,42 @@ public abstract class SpoutSession<T extends SpoutEngine> implements Session {
 		}
 	}
 
+	/**
+	 * Writes an already encoded message, including its header, to the channel.  The buffer is
+	 * written in order with the messages sent before it.
+	 * @param buffer the encoded message
+	 */
+	public void sendRaw(ChannelBuffer buffer) {
+		try {
+			if (channel.isOpen()) {
+				NetworkSendThread sendThread = networkSendThread.get();
+				if (sendThread == null) {
+					channel.write(buffer);
+				} else {
+					sendThread.sendRaw(this, channel, buffer);
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			disconnect(false, "Socket Error!");
+		}
+	}
+
+	/**
+	 * Writes a final message and closes the channel.  The messages sent before it are written first.
+	 * @param message the final message, or null to only close the channel
+	 */
+	protected void closeChannel(Message message) {
+		NetworkSendThread sendThread = networkSendThread.get();
+		if (sendThread != null) {
+			sendThread.close(this, channel, message);
+		} else if (message != null) {
+			channel.write(message).addListener(ChannelFutureListener.CLOSE);
+		} else {
+			channel.close();
+		}
+	}
+
 	@Override
 	public void sendAll(Message... messages) {
 		sendAll(false, messages);
@@ -26,17 +26,34 @@
  */
 package org.spout.engine.protocol.builtin;
 
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.spout.api.entity.Entity;
+import org.spout.api.geo.discrete.Transform;
 import org.spout.api.protocol.ClientNetworkSynchronizer;
 import org.spout.api.protocol.EntityProtocol;
 import org.spout.api.protocol.Session;
 
 public class SpoutClientNetworkSynchronizer extends ClientNetworkSynchronizer {
+	/** The last transform received from the server for each entity, movement updates are relative to these */
+	private final ConcurrentHashMap<Integer, Transform> receivedTransforms = new ConcurrentHashMap<Integer, Transform>();
+
 	public SpoutClientNetworkSynchronizer(Session session) {
 		super(session);
 	}
 
+	public Transform getReceivedTransform(int entityId) {
+		return receivedTransforms.get(entityId);
+	}
+
+	public void setReceivedTransform(int entityId, Transform transform) {
+		if (transform == null) {
+			receivedTransforms.remove(entityId);
+		} else {
+			receivedTransforms.put(entityId, transform);
+		}
+	}
+
 	// TODO what is this for?
 	public EntityProtocol getEntityProtocol(Entity entity) {
 		EntityProtocol protocol = entity.getNetwork().getEntityProtocol(SpoutProtocol.ENTITY_PROTOCOL_ID);
@@ -30,6 +30,7 @@ import java.net.InetSocketAddress;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
 import org.spout.api.Platform;
 import org.spout.api.Spout;
 import org.spout.api.command.Command;
@@ -47,6 +48,7 @@ import org.spout.api.protocol.Session;
 import org.spout.api.util.SyncedMapEvent;
 import org.spout.api.util.SyncedMapRegistry;
 import org.spout.api.util.SyncedStringMap;
+import org.spout.engine.protocol.FramedProtocol;
 import org.spout.engine.protocol.builtin.message.CommandMessage;
 import org.spout.engine.protocol.builtin.message.LoginMessage;
 import org.spout.engine.protocol.builtin.message.SyncedMapMessage;
@@ -54,12 +56,17 @@ import org.spout.engine.protocol.builtin.message.SyncedMapMessage;
 /**
  * The protocol used in SpoutClient
  */
-public class SpoutProtocol extends Protocol {
+public class SpoutProtocol extends Protocol implements FramedProtocol {
 	public static final int ENTITY_PROTOCOL_ID = NetworkComponent.getProtocolId(SpoutProtocol.class.getName());
 	public static final SpoutProtocol INSTANCE = new SpoutProtocol();
 	public static final DefaultedKey<Integer> PLAYER_ENTITY_ID = new DefaultedKeyImpl<Integer>("playerEntityId", -1);
 	public static final int PROTOCOL_VERSION = 0;
 	public static final int DEFAULT_PORT = 13756;
+	private static final int HEADER_LENGTH = 6;
+	/**
+	 * The maximum length of the data of a message, excluding its header
+	 */
+	private static final int MAX_MESSAGE_LENGTH = 1 << 24;
 
 	public SpoutProtocol() {
 		super("Spout", DEFAULT_PORT, new SpoutCodecLookupService(), new SpoutHandlerLookupService());
@@ -80,9 +87,31 @@ public class SpoutProtocol extends Protocol {
 		}
 	}
 
+	@Override
+	public int getHeaderLength() {
+		return HEADER_LENGTH;
+	}
+
+	@Override
+	public int getFrameLength(ChannelBuffer buf, int index) throws CorruptedFrameException {
+		if (buf.writerIndex() - index < HEADER_LENGTH) {
+			return -1;
+		}
+		int length = buf.getInt(index + 2);
+		if (length < 0 || length > MAX_MESSAGE_LENGTH) {
+			throw new CorruptedFrameException("Invalid message length " + length + " for opcode " + buf.getUnsignedShort(index));
+		}
+		return HEADER_LENGTH + length;
+	}
+
+	@Override
+	public int getOpcode(ChannelBuffer buf, int index) {
+		return buf.getUnsignedShort(index);
+	}
+
 	@Override
 	public ChannelBuffer writeHeader(MessageCodec<?> codec, ChannelBuffer data) {
-		ChannelBuffer buf = ChannelBuffers.buffer(6);
+		ChannelBuffer buf = ChannelBuffers.buffer(HEADER_LENGTH);
 		buf.writeShort(codec.getOpcode());
 		buf.writeInt(data.writerIndex());
 		return buf;
@@ -26,6 +26,9 @@
  */
 package org.spout.engine.protocol.builtin;
 
+import gnu.trove.set.TShortSet;
+import gnu.trove.set.hash.TShortHashSet;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -34,6 +37,8 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import org.spout.api.Spout;
 
 import org.spout.api.entity.Entity;
@@ -44,6 +49,7 @@ import org.spout.api.geo.cuboid.ChunkSnapshot;
 import org.spout.api.geo.discrete.Point;
 import org.spout.api.geo.discrete.Transform;
 import org.spout.api.material.BlockMaterial;
+import org.spout.api.material.block.BlockFullState;
 import org.spout.api.math.IntVector3;
 import org.spout.api.math.Quaternion;
 import org.spout.api.math.Vector3;
@@ -55,8 +61,10 @@ import org.spout.engine.component.entity.SpoutSceneComponent;
 import org.spout.engine.entity.SpoutPlayer;
 import org.spout.engine.protocol.builtin.message.BlockUpdateMessage;
 import org.spout.engine.protocol.builtin.message.ChunkDataMessage;
+import org.spout.engine.protocol.builtin.message.MultiBlockUpdateMessage;
 import org.spout.engine.protocol.builtin.message.UpdateEntityMessage;
 import org.spout.engine.protocol.builtin.message.WorldChangeMessage;
+import org.spout.engine.world.SpoutChunk;
 
 public class SpoutServerNetworkSynchronizer extends ServerNetworkSynchronizer {
 	private Point lastChunkCheck =  Point.invalid;
@@ -77,6 +85,8 @@ public class SpoutServerNetworkSynchronizer extends ServerNetworkSynchronizer {
 	/** Includes chunks that need to be observed. When observation is successfully attained or no longer wanted, point is removed */
 	private final Set<Point> chunksToObserve = new LinkedHashSet<Point>();
 	private boolean sync = false;
+	/** The last transform sent to the client for each entity, movement updates are sent relative to these */
+	private final ConcurrentHashMap<Integer, Transform> sentTransforms = new ConcurrentHashMap<Integer, Transform>();
 
 	
 	protected int tickCounter = 0;
@@ -374,10 +384,28 @@ public class SpoutServerNetworkSynchronizer extends ServerNetworkSynchronizer {
 
 	@Override
 	public Collection<Chunk> doSendChunk(Chunk c) {
-		session.send(new ChunkDataMessage(c.getSnapshot(ChunkSnapshot.SnapshotType.BOTH, ChunkSnapshot.EntityType.NO_ENTITIES, ChunkSnapshot.ExtraData.BIOME_DATA)));
+		session.send(getChunkDataMessage((SpoutChunk) c));
 		return Collections.singleton(c);
 	}
 
+	/**
+	 * Gets the chunk data message for a chunk.  The message is shared by all observers until the chunk is modified, so that it is only snapshotted and compressed once.
+	 * @param c the chunk
+	 * @return the chunk data message
+	 */
+	private static ChunkDataMessage getChunkDataMessage(SpoutChunk c) {
+		final AtomicReference<CachedChunkData> cache = c.getNetworkCache();
+		// Read the generation before the snapshot, so a concurrent change can only cause a stale generation, never stale data
+		final int generation = c.getModificationGeneration();
+		final CachedChunkData cached = cache.get();
+		if (cached != null && cached.getGeneration() == generation) {
+			return cached.getMessage();
+		}
+		ChunkDataMessage message = new ChunkDataMessage(c.getSnapshot(ChunkSnapshot.SnapshotType.LIGHT_ONLY, ChunkSnapshot.EntityType.NO_ENTITIES, ChunkSnapshot.ExtraData.BIOME_DATA, true));
+		cache.compareAndSet(cached, new CachedChunkData(generation, message));
+		return message;
+	}
+
 	@Override
 	protected void freeChunk(Point p) {
 		session.send(new ChunkDataMessage(p.getChunkX(), p.getChunkY(), p.getChunkZ()));
@@ -385,7 +413,9 @@ public class SpoutServerNetworkSynchronizer extends ServerNetworkSynchronizer {
 
 	@Override
 	protected void sendPosition(Point p, Quaternion rot) {
-		session.send(new UpdateEntityMessage(player.getId(), new Transform(p, rot, Vector3.ONE), UpdateEntityMessage.UpdateAction.TRANSFORM, getRepositionManager()));
+		Transform transform = new Transform(p, rot, Vector3.ONE);
+		sentTransforms.put(player.getId(), transform);
+		session.send(new UpdateEntityMessage(player.getId(), transform, UpdateEntityMessage.UpdateAction.TRANSFORM, getRepositionManager()));
 	}
 
 	@Override
@@ -398,6 +428,48 @@ public class SpoutServerNetworkSynchronizer extends ServerNetworkSynchronizer {
 		session.send(new BlockUpdateMessage(chunk.getBlock(x, y, z)));
 	}
 
+	/**
+	 * Sends all the dirty blocks of a chunk to the client as a single message.<br>
+	 * <br>
+	 * This is used instead of calling updateBlock once for each dirty block.
+	 * @param chunk the chunk
+	 */
+	public void updateBlocks(SpoutChunk chunk) {
+		MultiBlockUpdateMessage message = getBlockUpdateMessage(chunk);
+		if (message != null) {
+			session.send(message);
+		}
+	}
+
+	/**
+	 * Builds a message containing the current state of all the dirty blocks in a chunk
+	 * @param chunk the chunk
+	 * @return the message, or null if the chunk has no dirty blocks
+	 */
+	private static MultiBlockUpdateMessage getBlockUpdateMessage(SpoutChunk chunk) {
+		int dirtyBlocks = chunk.getDirtyBlocks();
+		if (dirtyBlocks <= 0) {
+			return null;
+		}
+		// A block can be in the dirty list more than once
+		TShortSet packed = new TShortHashSet(dirtyBlocks);
+		for (int i = 0; i < dirtyBlocks; i++) {
+			Vector3 block = chunk.getDirtyBlock(i);
+			if (block != null) {
+				packed.add(MultiBlockUpdateMessage.packCoords(block.getFloorX(), block.getFloorY(), block.getFloorZ()));
+			}
+		}
+		short[] coords = packed.toArray();
+		short[] blockTypes = new short[coords.length];
+		short[] blockData = new short[coords.length];
+		for (int i = 0; i < coords.length; i++) {
+			int state = chunk.getBlockFullState(MultiBlockUpdateMessage.unpackX(coords[i]), MultiBlockUpdateMessage.unpackY(coords[i]), MultiBlockUpdateMessage.unpackZ(coords[i]));
+			blockTypes[i] = BlockFullState.getId(state);
+			blockData[i] = BlockFullState.getData(state);
+		}
+		return new MultiBlockUpdateMessage(chunk.getX(), chunk.getY(), chunk.getZ(), coords, blockTypes, blockData);
+	}
+
 	@Override
 	protected void initChunk(Point p) {
 	}
@@ -419,10 +491,50 @@ public class SpoutServerNetworkSynchronizer extends ServerNetworkSynchronizer {
 			messages.addAll(protocol.getUpdateMessages(e, liveTransform, getRepositionManager(), true));
 		}
 		for (Message message : messages) {
+			if (message instanceof UpdateEntityMessage) {
+				message = compressMovement((UpdateEntityMessage) message);
+				if (message == null) {
+					continue;
+				}
+			}
 			this.session.send(message);
 		}
 	}
 
+	/**
+	 * Replaces full transform updates with relative movement updates, where possible.<br>
+	 * <br>
+	 * The transform recorded for the entity is the one the client will reconstruct, so quantization errors don't accumulate.
+	 * @param message the update message
+	 * @return the message to send, or null if nothing needs to be sent
+	 */
+	private Message compressMovement(UpdateEntityMessage message) {
+		int id = message.getEntityId();
+		switch (message.getAction()) {
+			case ADD:
+				sentTransforms.put(id, message.getTransform());
+				return message;
+			case REMOVE:
+				sentTransforms.remove(id);
+				return message;
+			case TRANSFORM:
+				Transform last = sentTransforms.get(id);
+				Transform transform = message.getTransform();
+				UpdateEntityMessage delta = UpdateEntityMessage.getDelta(id, last, transform);
+				if (delta == null) {
+					sentTransforms.put(id, transform);
+					return message;
+				}
+				if (!delta.hasChanges()) {
+					return null;
+				}
+				sentTransforms.put(id, delta.applyTo(last));
+				return delta;
+			default:
+				return message;
+		}
+	}
+
 	private EntityProtocol getEntityProtocol(Entity entity) {
 		EntityProtocol protocol = entity.getNetwork().getEntityProtocol(SpoutProtocol.ENTITY_PROTOCOL_ID);
 		if (protocol == null) {
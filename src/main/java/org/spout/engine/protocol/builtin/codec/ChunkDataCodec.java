@@ -27,6 +27,8 @@
 package org.spout.engine.protocol.builtin.codec;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
@@ -35,18 +37,40 @@ import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.spout.api.geo.cuboid.Chunk;
 import org.spout.api.protocol.MessageCodec;
-import org.spout.api.util.bytebit.ByteBitSet;
 import org.spout.engine.protocol.builtin.ChannelBufferUtils;
 import org.spout.engine.protocol.builtin.message.ChunkDataMessage;
 
 /**
- *
+ * Encodes chunks as their palette, the bit packed block array and the serialized light buffers, all deflated together.<br>
+ * <br>
+ * The deflater, inflater and scratch buffers are kept per thread, so encoding and decoding a chunk only allocates the
+ * arrays of the decoded message.
  */
 public class ChunkDataCodec extends MessageCodec<ChunkDataMessage> {
 	private static final byte ISUNLOAD = 0b1;
 	private static final byte HASBIOMES = 0b10;
-	//private static final int INTIAL_DATA_SIZE = Chunk.BLOCKS.VOLUME * 2 + Chunk.BLOCKS.VOLUME * 2 + Chunk.BLOCKS.HALF_VOLUME + Chunk.BLOCKS.HALF_VOLUME; // Block Ids, Block Data, Block light, Sky light
-	private static final int INTIAL_DATA_SIZE = Chunk.BLOCKS.VOLUME * 2 + Chunk.BLOCKS.VOLUME * 2; // Block Ids, Block Data
+	/**
+	 * The largest uncompressed payload accepted when decoding
+	 */
+	private static final int MAX_UNCOMPRESSED_SIZE = 1 << 22;
+	private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater();
+		}
+	};
+	private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater();
+		}
+	};
+	private static final ThreadLocal<byte[][]> SCRATCH = new ThreadLocal<byte[][]>() {
+		@Override
+		protected byte[][] initialValue() {
+			return new byte[][] {new byte[Chunk.BLOCKS.VOLUME * 2], new byte[Chunk.BLOCKS.VOLUME * 2]};
+		}
+	};
 
 	public ChunkDataCodec() {
 		super(ChunkDataMessage.class, 0x06);
@@ -54,6 +78,10 @@ public class ChunkDataCodec extends MessageCodec<ChunkDataMessage> {
 
 	@Override
 	public ChannelBuffer encode(ChunkDataMessage message) throws IOException {
+		final ChannelBuffer cached = message.getEncodedPayload();
+		if (cached != null) {
+			return cached.duplicate();
+		}
 		final ChannelBuffer buffer;
 		if (message.isUnload()) {
 			buffer = ChannelBuffers.buffer(13);
@@ -62,49 +90,56 @@ public class ChunkDataCodec extends MessageCodec<ChunkDataMessage> {
 			buffer.writeInt(message.getY());
 			buffer.writeInt(message.getZ());
 		} else {
-			int size = 17; // 1 byte + 4 ints (4 byte each)
-			int dataSize = INTIAL_DATA_SIZE;
-			boolean hasBiomes = message.hasBiomes();
+			final boolean hasBiomes = message.hasBiomes();
+			final int[] palette = message.getPalette();
+			final int[] packed = message.getPackedBlockArray();
+			final short[] lightIds = message.getLightManagerIds();
+			final byte[][] lightData = message.getLightData();
+
+			int dataSize = 4 + (palette.length << 2) + 4 + 4 + (packed.length << 2) + 2;
+			for (int i = 0; i < lightIds.length; i++) {
+				dataSize += 2 + 4 + lightData[i].length;
+			}
 			if (hasBiomes) {
 				dataSize += Chunk.BLOCKS.AREA;
 			}
-			byte[] uncompressedData = new byte[dataSize];
-			byte[] compressedData = new byte[dataSize];
 
-			int index = 0;
-			for (short s : message.getBlockIds()) {
-				uncompressedData[index++] = (byte) s;
-				uncompressedData[index++] = (byte) (s >> 8);
+			byte[] uncompressedData = getScratch(0, dataSize);
+			ByteBuffer data = ByteBuffer.wrap(uncompressedData, 0, dataSize);
+			data.putInt(palette.length);
+			for (int i = 0; i < palette.length; i++) {
+				data.putInt(palette[i]);
 			}
-			for (short s : message.getBlockData()) {
-				uncompressedData[index++] = (byte) s;
-				uncompressedData[index++] = (byte) (s >> 8);
+			data.putInt(message.getPackedWidth());
+			data.putInt(packed.length);
+			for (int i = 0; i < packed.length; i++) {
+				data.putInt(packed[i]);
 			}
-			/*for (byte b : message.getBlockLight()) {
-				uncompressedData[index++] = (byte) b;
+			data.putShort((short) lightIds.length);
+			for (int i = 0; i < lightIds.length; i++) {
+				data.putShort(lightIds[i]);
+				data.putInt(lightData[i].length);
+				data.put(lightData[i]);
 			}
-			for (byte b : message.getSkyLight()) {
-				uncompressedData[index++] = (byte) b;
-			}*/
 			if (hasBiomes) {
-				System.arraycopy(message.getBiomeData(), 0, uncompressedData, index, message.getBiomeData().length);
-				index += message.getBiomeData().length;
+				data.put(message.getBiomeData(), 0, Chunk.BLOCKS.AREA);
 			}
 
-			Deflater deflater = new Deflater();
-			deflater.setInput(uncompressedData);
+			Deflater deflater = DEFLATER.get();
+			deflater.reset();
+			deflater.setInput(uncompressedData, 0, dataSize);
 			deflater.finish();
-			int compressedSize = deflater.deflate(compressedData);
-			try {
-				if (compressedSize == 0) {
-					throw new IOException("Not all data compressed!");
+			byte[] compressedData = getScratch(1, dataSize + (dataSize >> 8) + 64);
+			int compressedSize = 0;
+			while (!deflater.finished()) {
+				if (compressedSize == compressedData.length) {
+					compressedData = Arrays.copyOf(compressedData, compressedData.length << 1);
+					SCRATCH.get()[1] = compressedData;
 				}
-			} finally {
-				deflater.end();
+				compressedSize += deflater.deflate(compressedData, compressedSize, compressedData.length - compressedSize);
 			}
 
-			size += compressedSize;
-			buffer = ChannelBuffers.dynamicBuffer(size);
+			buffer = ChannelBuffers.dynamicBuffer(21 + compressedSize);
 			buffer.writeByte(hasBiomes ? HASBIOMES : 0); // Has biomes only, not unload
 			buffer.writeInt(message.getX());
 			buffer.writeInt(message.getY());
@@ -112,8 +147,12 @@ public class ChunkDataCodec extends MessageCodec<ChunkDataMessage> {
 			if (hasBiomes) {
 				ChannelBufferUtils.writeString(buffer, message.getBiomeManagerClass());
 			}
+			buffer.writeInt(dataSize);
 			buffer.writeInt(compressedSize);
 			buffer.writeBytes(compressedData, 0, compressedSize);
+			// The same message is sent to every observer of the chunk, so only deflate it once
+			message.setEncodedPayload(buffer);
+			return buffer.duplicate();
 		}
 		return buffer;
 	}
@@ -130,44 +169,76 @@ public class ChunkDataCodec extends MessageCodec<ChunkDataMessage> {
 			return new ChunkDataMessage(x, y, z);
 		} else {
 			final String biomeManagerClass = hasBiomes ? ChannelBufferUtils.readString(buffer) : null;
-			int uncompressedSize = INTIAL_DATA_SIZE;
-			if (hasBiomes) {
-				uncompressedSize += Chunk.BLOCKS.AREA;
+			final int uncompressedSize = buffer.readInt();
+			final int compressedSize = buffer.readInt();
+			if (uncompressedSize < 0 || uncompressedSize > MAX_UNCOMPRESSED_SIZE || compressedSize < 0 || compressedSize > buffer.readableBytes()) {
+				throw new IOException("Invalid chunk data sizes for chunk (" + x + "," + y + "," + z + ")");
+			}
+			final byte[] uncompressedData = getScratch(0, uncompressedSize);
+			Inflater inflater = INFLATER.get();
+			inflater.reset();
+			if (buffer.hasArray()) {
+				inflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.readerIndex(), compressedSize);
+				buffer.skipBytes(compressedSize);
+			} else {
+				byte[] compressedData = getScratch(1, compressedSize);
+				buffer.readBytes(compressedData, 0, compressedSize);
+				inflater.setInput(compressedData, 0, compressedSize);
 			}
-			final byte[] uncompressedData = new byte[uncompressedSize];
-			final byte[] compressedData = new byte[buffer.readInt()];
-			buffer.readBytes(compressedData);
-			Inflater inflater = new Inflater();
-			inflater.setInput(compressedData);
 			try {
-				inflater.inflate(uncompressedData);
+				if (inflater.inflate(uncompressedData, 0, uncompressedSize) != uncompressedSize) {
+					throw new IOException("Chunk data for chunk (" + x + "," + y + "," + z + ") is truncated");
+				}
 			} catch (DataFormatException e) {
 				throw new IOException("Error while reading chunk (" + x + "," + y + "," + z + ")!", e);
 			}
-			inflater.end();
-
-			final short[] blockIds = new short[Chunk.BLOCKS.VOLUME];
-			final short[] blockData = new short[Chunk.BLOCKS.VOLUME];
-			//final byte[] blockLight = new byte[Chunk.BLOCKS.HALF_VOLUME];
-			//final byte[] skyLight = new byte[Chunk.BLOCKS.HALF_VOLUME];
-			final byte[] biomeData = hasBiomes ? new byte[Chunk.BLOCKS.AREA] : null;
 
-			int index = 0;
-			for (int i = 0; i < blockIds.length; ++i) {
-				blockIds[i] = (short) (uncompressedData[index++] | (uncompressedData[index++] << 8));
-			}
-			for (int i = 0; i < blockData.length; ++i) {
-				blockData[i] = (short) (uncompressedData[index++] | (uncompressedData[index++] << 8));
-			}
-			/*System.arraycopy(uncompressedData, index, blockLight, 0, blockLight.length);
-			index += blockLight.length;
-			System.arraycopy(uncompressedData, index, skyLight, 0, skyLight.length);
-			index += skyLight.length;*/
-			if (hasBiomes) {
-				System.arraycopy(uncompressedData, index, biomeData, 0, biomeData.length);
+			try {
+				ByteBuffer data = ByteBuffer.wrap(uncompressedData, 0, uncompressedSize);
+				final int[] palette = new int[readLength(data, 4)];
+				for (int i = 0; i < palette.length; i++) {
+					palette[i] = data.getInt();
+				}
+				final int packedWidth = data.getInt();
+				final int[] packed = new int[readLength(data, 4)];
+				for (int i = 0; i < packed.length; i++) {
+					packed[i] = data.getInt();
+				}
+				final int lights = data.getShort() & 0xFFFF;
+				final short[] lightIds = new short[lights];
+				final byte[][] lightData = new byte[lights][];
+				for (int i = 0; i < lights; i++) {
+					lightIds[i] = data.getShort();
+					lightData[i] = new byte[readLength(data, 1)];
+					data.get(lightData[i]);
+				}
+				final byte[] biomeData = hasBiomes ? new byte[Chunk.BLOCKS.AREA] : null;
+				if (hasBiomes) {
+					data.get(biomeData);
+				}
+				return new ChunkDataMessage(x, y, z, palette, packedWidth, packed, lightIds, lightData, biomeData, biomeManagerClass);
+			} catch (RuntimeException e) {
+				throw new IOException("Malformed chunk data for chunk (" + x + "," + y + "," + z + ")", e);
 			}
+		}
+	}
+
+	private static int readLength(ByteBuffer data, int elementSize) throws IOException {
+		int length = data.getInt();
+		if (length < 0 || length > data.remaining() / elementSize) {
+			throw new IOException("Invalid array length " + length + " in chunk data");
+		}
+		return length;
+	}
 
-			return new ChunkDataMessage(x, y, z, blockIds, blockData, biomeData, biomeManagerClass);
+	/**
+	 * Gets one of the scratch buffers of the current thread, growing it if it is smaller than the required size
+	 */
+	private static byte[] getScratch(int index, int size) {
+		byte[][] scratch = SCRATCH.get();
+		if (scratch[index].length < size) {
+			scratch[index] = new byte[Math.max(size, scratch[index].length << 1)];
 		}
+		return scratch[index];
 	}
-}
\ No newline at end of file
+}
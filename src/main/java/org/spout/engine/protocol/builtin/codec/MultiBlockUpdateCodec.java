@@ -0,0 +1,77 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.protocol.builtin.codec;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.spout.api.protocol.MessageCodec;
+import org.spout.engine.protocol.builtin.message.MultiBlockUpdateMessage;
+
+/**
+ *
+ */
+public class MultiBlockUpdateCodec extends MessageCodec<MultiBlockUpdateMessage> {
+	public MultiBlockUpdateCodec() {
+		super(MultiBlockUpdateMessage.class, 0x0B);
+	}
+
+	@Override
+	public ChannelBuffer encode(MultiBlockUpdateMessage message) {
+		final int size = message.getSize();
+		ChannelBuffer buffer = ChannelBuffers.buffer(14 + size * 6);
+		buffer.writeInt(message.getChunkX());
+		buffer.writeInt(message.getChunkY());
+		buffer.writeInt(message.getChunkZ());
+		buffer.writeShort(size);
+		short[] coords = message.getCoords();
+		short[] blockTypes = message.getBlockTypes();
+		short[] blockData = message.getBlockData();
+		for (int i = 0; i < size; i++) {
+			buffer.writeShort(coords[i]);
+			buffer.writeShort(blockTypes[i]);
+			buffer.writeShort(blockData[i]);
+		}
+		return buffer;
+	}
+
+	@Override
+	public MultiBlockUpdateMessage decode(ChannelBuffer buffer) {
+		final int chunkX = buffer.readInt();
+		final int chunkY = buffer.readInt();
+		final int chunkZ = buffer.readInt();
+		final int size = buffer.readUnsignedShort();
+		short[] coords = new short[size];
+		short[] blockTypes = new short[size];
+		short[] blockData = new short[size];
+		for (int i = 0; i < size; i++) {
+			coords[i] = buffer.readShort();
+			blockTypes[i] = buffer.readShort();
+			blockData[i] = buffer.readShort();
+		}
+		return new MultiBlockUpdateMessage(chunkX, chunkY, chunkZ, coords, blockTypes, blockData);
+	}
+}
@@ -43,6 +43,9 @@ import static org.spout.engine.protocol.builtin.message.UpdateEntityMessage.Upda
 import static org.spout.engine.protocol.builtin.message.UpdateEntityMessage.UpdateAction.TRANSFORM;
 
 public class UpdateEntityCodec extends MessageCodec<UpdateEntityMessage> {
+	private static final int POSITION_FLAG = 0x01;
+	private static final int ROTATION_FLAG = 0x02;
+
 	public UpdateEntityCodec() {
 		super(UpdateEntityMessage.class, 0x04);
 	}
@@ -52,7 +55,7 @@ public class UpdateEntityCodec extends MessageCodec<UpdateEntityMessage> {
 		ChannelBuffer buffer = null;
 		switch (message.getAction()) {
 			case REMOVE:
-				buffer = ChannelBuffers.buffer(4);
+				buffer = ChannelBuffers.buffer(5);
 				buffer.writeByte(message.getAction().ordinal());
 				buffer.writeInt(message.getEntityId());
 				break;
@@ -64,7 +67,23 @@ public class UpdateEntityCodec extends MessageCodec<UpdateEntityMessage> {
 				ChannelBufferUtils.writeTransform(buffer, message.getTransform());
 				break;
 			case POSITION:
-				throw new UnsupportedOperationException("Position is unimplemented!");
+				short[] positionDelta = message.getPositionDelta();
+				short[] rotation = message.getRotation();
+				buffer = ChannelBuffers.buffer(6 + (positionDelta == null ? 0 : 6) + (rotation == null ? 0 : 8));
+				buffer.writeByte(message.getAction().ordinal());
+				buffer.writeInt(message.getEntityId());
+				buffer.writeByte((positionDelta == null ? 0 : POSITION_FLAG) | (rotation == null ? 0 : ROTATION_FLAG));
+				if (positionDelta != null) {
+					for (short s : positionDelta) {
+						buffer.writeShort(s);
+					}
+				}
+				if (rotation != null) {
+					for (short s : rotation) {
+						buffer.writeShort(s);
+					}
+				}
+				break;
 			default:
 				throw new IllegalArgumentException("Unknown UpdateAction!");
 		}
@@ -92,7 +111,23 @@ public class UpdateEntityCodec extends MessageCodec<UpdateEntityMessage> {
 				transform = ChannelBufferUtils.readTransform(buffer);
 				break;
 			case POSITION:
-				throw new UnsupportedOperationException("Position is unimplemented!");
+				entityId = buffer.readInt();
+				final int flags = buffer.readUnsignedByte();
+				short[] positionDelta = null;
+				short[] rotation = null;
+				if ((flags & POSITION_FLAG) != 0) {
+					positionDelta = new short[3];
+					for (int i = 0; i < positionDelta.length; i++) {
+						positionDelta[i] = buffer.readShort();
+					}
+				}
+				if ((flags & ROTATION_FLAG) != 0) {
+					rotation = new short[4];
+					for (int i = 0; i < rotation.length; i++) {
+						rotation[i] = buffer.readShort();
+					}
+				}
+				return new UpdateEntityMessage(entityId, positionDelta, rotation);
 			default:
 				throw new IllegalArgumentException("Unknown UpdateAction!");
 		}
@@ -72,6 +72,6 @@ public class ChunkDataMessageHandler extends MessageHandler<ChunkDataMessage> {
 			}
 			manager.deserialize(message.getBiomeData());
 		}
-		((SpoutClientWorld) world).addChunk(message.getX(), message.getY(), message.getZ(), message.getBlockIds(), message.getBlockData());
+		((SpoutClientWorld) world).addChunk(message.getX(), message.getY(), message.getZ(), message.getPalette(), message.getPackedWidth(), message.getPackedBlockArray(), message.getLightManagerIds(), message.getLightData());
 	}
 }
@@ -28,12 +28,14 @@ package org.spout.engine.protocol.builtin.handler;
 
 import org.spout.api.entity.Entity;
 import org.spout.api.entity.Player;
+import org.spout.api.geo.discrete.Transform;
 import org.spout.api.protocol.MessageHandler;
 import org.spout.api.protocol.ClientSession;
 import org.spout.api.protocol.ServerSession;
 import org.spout.api.protocol.reposition.RepositionManager;
 
 import org.spout.engine.component.entity.MovementValidator;
+import org.spout.engine.protocol.builtin.SpoutClientNetworkSynchronizer;
 import org.spout.engine.protocol.builtin.message.UpdateEntityMessage;
 
 import static org.spout.engine.protocol.builtin.message.UpdateEntityMessage.UpdateAction.ADD;
@@ -46,9 +48,11 @@ public class UpdateEntityMessageHandler extends MessageHandler<UpdateEntityMessa
 	@Override
 	public void handleClient(ClientSession session, UpdateEntityMessage message) {
 		RepositionManager rmInverse = session.getNetworkSynchronizer().getRepositionManager().getInverse();
+		SpoutClientNetworkSynchronizer synchronizer = (SpoutClientNetworkSynchronizer) session.getNetworkSynchronizer();
 
 		// Add is a special case because the player is already spawned
 		if (message.getAction() == ADD) {
+			synchronizer.setReceivedTransform(message.getEntityId(), message.getTransform());
 			Entity entity = session.getEngine().getDefaultWorld().createEntity(rmInverse.convert(message.getTransform().getPosition()));
 			entity.getScene().setTransform(rmInverse.convert(message.getTransform()));
 			((SpoutWorld) session.getEngine().getDefaultWorld()).spawnEntity(entity, message.getEntityId());
@@ -66,11 +70,20 @@ public class UpdateEntityMessageHandler extends MessageHandler<UpdateEntityMessa
 
 			switch (message.getAction()) {
 				case TRANSFORM:
+					synchronizer.setReceivedTransform(message.getEntityId(), message.getTransform());
 					entity.getScene().setTransform(rmInverse.convert(message.getTransform()));
 					break;
 				case POSITION:
-					throw new UnsupportedOperationException("UpdateAction.POSITION not implemented yet.");
+					Transform last = synchronizer.getReceivedTransform(message.getEntityId());
+					if (last == null) {
+						return;
+					}
+					Transform transform = message.applyTo(last);
+					synchronizer.setReceivedTransform(message.getEntityId(), transform);
+					entity.getScene().setTransform(rmInverse.convert(transform));
+					break;
 				case REMOVE:
+					synchronizer.setReceivedTransform(message.getEntityId(), null);
 					entity.remove();
 			}
 		}
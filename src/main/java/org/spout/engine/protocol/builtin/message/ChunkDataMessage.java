@@ -30,52 +30,77 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
-import org.spout.api.geo.cuboid.ChunkSnapshot;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.spout.api.util.SpoutToStringStyle;
+import org.spout.api.util.cuboid.CuboidLightBuffer;
+import org.spout.engine.world.SpoutChunkSnapshot;
 
 public class ChunkDataMessage extends SpoutMessage {
 	private final boolean unload;
 	// Block x, y, z
 	private final int x, y, z;
-	private final short[] blockIds, blockData;
-	//private final byte[] blockLight, skyLight;
+	// Block full states, as stored by the palette block store
+	private final int[] palette;
+	private final int packedWidth;
+	private final int[] packedBlockArray;
+	// Serialized light buffers, by lighting manager id
+	private final short[] lightManagerIds;
+	private final byte[][] lightData;
 	private final byte[] biomeData;
 	private final String biomeManagerClass;
+	/**
+	 * The encoded form of this message, shared by every session the message is sent to
+	 */
+	private volatile ChannelBuffer encodedPayload = null;
 
-	// TODO: protocol - what to do with light
 	public ChunkDataMessage(int x, int y, int z) {
 		this.unload = true;
 		this.x = x;
 		this.y = y;
 		this.z = z;
-		this.blockIds = null;
-		this.blockData = null;
-		//this.blockLight = null;
-		//this.skyLight = null;
+		this.palette = null;
+		this.packedWidth = 0;
+		this.packedBlockArray = null;
+		this.lightManagerIds = null;
+		this.lightData = null;
 		this.biomeData = null;
 		this.biomeManagerClass = null;
 	}
 
-	public ChunkDataMessage(ChunkSnapshot snapshot) {
+	/**
+	 * Creates a chunk data message from a palette snapshot of a chunk, which should include the light buffers
+	 * @param snapshot the snapshot
+	 */
+	public ChunkDataMessage(SpoutChunkSnapshot snapshot) {
 		this.unload = false;
 		this.x = snapshot.getX();
 		this.y = snapshot.getY();
 		this.z = snapshot.getZ();
-		this.blockIds = snapshot.getBlockIds();
-		this.blockData = snapshot.getBlockData();
-		//this.blockLight = snapshot.getLightBuffers();
-		//this.skyLight = snapshot.getLightBuffers();
+		this.palette = snapshot.getPalette();
+		this.packedWidth = snapshot.getPackedWidth();
+		this.packedBlockArray = snapshot.getPackedBlockArray();
+		CuboidLightBuffer[] buffers = snapshot.getLightBuffers();
+		int lights = buffers == null ? 0 : buffers.length;
+		this.lightManagerIds = new short[lights];
+		this.lightData = new byte[lights][];
+		for (int i = 0; i < lights; i++) {
+			lightManagerIds[i] = buffers[i].getManagerId();
+			lightData[i] = buffers[i].serialize();
+		}
 		this.biomeData = snapshot.getBiomeManager() != null ? snapshot.getBiomeManager().serialize() : null;
 		this.biomeManagerClass = snapshot.getBiomeManager() != null ? snapshot.getBiomeManager().getClass().getCanonicalName() : null;
 	}
 
-	public ChunkDataMessage(int x, int y, int z, short[] blockIds, short[] blockData, byte[] biomeData, String biomeManagerClass) {
+	public ChunkDataMessage(int x, int y, int z, int[] palette, int packedWidth, int[] packedBlockArray, short[] lightManagerIds, byte[][] lightData, byte[] biomeData, String biomeManagerClass) {
 		this.unload = false;
 		this.x = x;
 		this.y = y;
 		this.z = z;
-		this.blockIds = blockIds;
-		this.blockData = blockData;
+		this.palette = palette;
+		this.packedWidth = packedWidth;
+		this.packedBlockArray = packedBlockArray;
+		this.lightManagerIds = lightManagerIds;
+		this.lightData = lightData;
 		this.biomeData = biomeData;
 		this.biomeManagerClass = biomeManagerClass;
 	}
@@ -96,21 +121,25 @@ public class ChunkDataMessage extends SpoutMessage {
 		return z;
 	}
 
-	public short[] getBlockIds() {
-		return blockIds;
+	public int[] getPalette() {
+		return palette;
+	}
+
+	public int getPackedWidth() {
+		return packedWidth;
+	}
+
+	public int[] getPackedBlockArray() {
+		return packedBlockArray;
 	}
 
-	public short[] getBlockData() {
-		return blockData;
+	public short[] getLightManagerIds() {
+		return lightManagerIds;
 	}
 
-	/*public byte[] getBlockLight() {
-		return blockLight;
+	public byte[][] getLightData() {
+		return lightData;
 	}
-	
-	public byte[] getSkyLight() {
-		return skyLight;
-	}*/
 
 	public byte[] getBiomeData() {
 		return biomeData;
@@ -124,6 +153,21 @@ public class ChunkDataMessage extends SpoutMessage {
 		return biomeData != null && biomeManagerClass != null;
 	}
 
+	/**
+	 * Gets the cached encoded form of this message.<br>
+	 * <br>
+	 * The returned buffer is shared, so it must be duplicated before it is read.
+	 * 
+	 * @return the encoded payload, or null if the message has not been encoded yet
+	 */
+	public ChannelBuffer getEncodedPayload() {
+		return encodedPayload;
+	}
+
+	public void setEncodedPayload(ChannelBuffer encodedPayload) {
+		this.encodedPayload = encodedPayload;
+	}
+
 	@Override
 	public String toString() {
 		return new ToStringBuilder(this, SpoutToStringStyle.INSTANCE)
@@ -131,10 +175,10 @@ public class ChunkDataMessage extends SpoutMessage {
 				.append("x", x)
 				.append("y", y)
 				.append("z", z)
-				.append("blockIds", blockIds, false)
-				.append("blockData", blockData, false)
-				//.append("blockLigh", blockLight, false)
-				//.append("skyLight", skyLigh, false)
+				.append("palette", palette, false)
+				.append("packedWidth", packedWidth)
+				.append("packedBlockArray", packedBlockArray, false)
+				.append("lightManagerIds", lightManagerIds, false)
 				.append("biomeData", biomeData, false)
 				.append("biomeManagerClass", biomeManagerClass)
 				.toString();
@@ -147,10 +191,11 @@ public class ChunkDataMessage extends SpoutMessage {
 				.append(x)
 				.append(y)
 				.append(z)
-				.append(blockIds)
-				.append(blockData)
-				//.append(blockLight)
-				//.append(skyLight)
+				.append(palette)
+				.append(packedWidth)
+				.append(packedBlockArray)
+				.append(lightManagerIds)
+				.append(lightData)
 				.append(biomeData)
 				.append(biomeManagerClass)
 				.toHashCode();
@@ -165,10 +210,11 @@ public class ChunkDataMessage extends SpoutMessage {
 					.append(x, other.x)
 					.append(y, other.y)
 					.append(z, other.z)
-					.append(blockIds, other.blockIds)
-					.append(blockData, other.blockData)
-					//.append(blockLight, other.blockLight)
-					//.append(skyLight, other.skyLight)
+					.append(palette, other.palette)
+					.append(packedWidth, other.packedWidth)
+					.append(packedBlockArray, other.packedBlockArray)
+					.append(lightManagerIds, other.lightManagerIds)
+					.append(lightData, other.lightData)
 					.append(biomeData, other.biomeData)
 					.append(biomeManagerClass, other.biomeManagerClass)
 					.isEquals();
@@ -176,4 +222,4 @@ public class ChunkDataMessage extends SpoutMessage {
 			return false;
 		}
 	}
-}
\ No newline at end of file
+}
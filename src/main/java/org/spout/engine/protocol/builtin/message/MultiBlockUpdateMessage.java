@@ -0,0 +1,146 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.protocol.builtin.message;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.spout.api.util.SpoutToStringStyle;
+
+/**
+ * A set of block changes within a single chunk.<br>
+ * <br>
+ * Block coordinates are packed relative to the chunk as (x << 8) | (y << 4) | z.
+ */
+public class MultiBlockUpdateMessage extends SpoutMessage {
+	private final int chunkX, chunkY, chunkZ;
+	private final short[] coords, blockTypes, blockData;
+
+	public MultiBlockUpdateMessage(int chunkX, int chunkY, int chunkZ, short[] coords, short[] blockTypes, short[] blockData) {
+		if (blockTypes.length != coords.length) {
+			throw new IllegalArgumentException(String.format("blockTypes is not of expected size (%d instead of %d)",
+					blockTypes.length, coords.length));
+		}
+
+		if (blockData.length != coords.length) {
+			throw new IllegalArgumentException(String.format("blockData is not of expected size (%d instead of %d)",
+					blockData.length, coords.length));
+		}
+
+		this.chunkX = chunkX;
+		this.chunkY = chunkY;
+		this.chunkZ = chunkZ;
+		this.coords = coords;
+		this.blockTypes = blockTypes;
+		this.blockData = blockData;
+	}
+
+	public static short packCoords(int x, int y, int z) {
+		return (short) (((x & 0xF) << 8) | ((y & 0xF) << 4) | (z & 0xF));
+	}
+
+	public static int unpackX(short packed) {
+		return (packed >> 8) & 0xF;
+	}
+
+	public static int unpackY(short packed) {
+		return (packed >> 4) & 0xF;
+	}
+
+	public static int unpackZ(short packed) {
+		return packed & 0xF;
+	}
+
+	public int getChunkX() {
+		return chunkX;
+	}
+
+	public int getChunkY() {
+		return chunkY;
+	}
+
+	public int getChunkZ() {
+		return chunkZ;
+	}
+
+	public int getSize() {
+		return coords.length;
+	}
+
+	public short[] getCoords() {
+		return coords;
+	}
+
+	public short[] getBlockTypes() {
+		return blockTypes;
+	}
+
+	public short[] getBlockData() {
+		return blockData;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this, SpoutToStringStyle.INSTANCE)
+				.append("chunkX", chunkX)
+				.append("chunkY", chunkY)
+				.append("chunkZ", chunkZ)
+				.append("coords", coords)
+				.append("blockTypes", blockTypes)
+				.append("blockData", blockData)
+				.toString();
+	}
+
+	@Override
+	public int hashCode() {
+		return new HashCodeBuilder(47, 97)
+				.append(chunkX)
+				.append(chunkY)
+				.append(chunkZ)
+				.append(coords)
+				.append(blockTypes)
+				.append(blockData)
+				.toHashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof MultiBlockUpdateMessage) {
+			final MultiBlockUpdateMessage other = (MultiBlockUpdateMessage) obj;
+			return new EqualsBuilder()
+					.append(chunkX, other.chunkX)
+					.append(chunkY, other.chunkY)
+					.append(chunkZ, other.chunkZ)
+					.append(coords, other.coords)
+					.append(blockTypes, other.blockTypes)
+					.append(blockData, other.blockData)
+					.isEquals();
+		} else {
+			return false;
+		}
+	}
+}
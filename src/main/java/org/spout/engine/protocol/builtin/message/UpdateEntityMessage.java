@@ -27,25 +27,108 @@
 package org.spout.engine.protocol.builtin.message;
 
 
+import java.util.Arrays;
+
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
+import org.spout.api.geo.discrete.Point;
 import org.spout.api.geo.discrete.Transform;
+import org.spout.api.math.Quaternion;
 import org.spout.api.protocol.reposition.RepositionManager;
 import org.spout.api.util.SpoutToStringStyle;
 
 public class UpdateEntityMessage extends SpoutMessage {
+	/**
+	 * Position deltas are sent in fixed point, in units of 1 / POSITION_SCALE blocks
+	 */
+	public static final float POSITION_SCALE = 256F;
+	/**
+	 * Rotation components are quantized to shorts, in units of 1 / ROTATION_SCALE
+	 */
+	public static final float ROTATION_SCALE = Short.MAX_VALUE;
 	private final int entityId;
 	private final Transform transform;
 	private final UpdateAction action;
+	private final short[] positionDelta;
+	private final short[] rotation;
 
-	// TODO: protocol - implement position-only update
 	// TODO: possibly combine Entity Datatable message here?
 	public UpdateEntityMessage(int entityId, Transform transform, UpdateAction action, RepositionManager rm) {
 		this.entityId = entityId;
 		this.transform = transform;
 		this.action = action;
+		this.positionDelta = null;
+		this.rotation = null;
+	}
+
+	/**
+	 * Creates a relative movement update.  Either component may be null, if it has not changed.
+	 * @param entityId the entity id
+	 * @param positionDelta the fixed point x, y and z position delta
+	 * @param rotation the quantized x, y, z and w rotation components
+	 */
+	public UpdateEntityMessage(int entityId, short[] positionDelta, short[] rotation) {
+		if (positionDelta != null && positionDelta.length != 3) {
+			throw new IllegalArgumentException("Position delta must have 3 components");
+		}
+		if (rotation != null && rotation.length != 4) {
+			throw new IllegalArgumentException("Rotation must have 4 components");
+		}
+		this.entityId = entityId;
+		this.transform = null;
+		this.action = UpdateAction.POSITION;
+		this.positionDelta = positionDelta;
+		this.rotation = rotation;
+	}
+
+	/**
+	 * Creates a relative movement update from one transform to another.<br>
+	 * <br>
+	 * Null is returned if the update can't be expressed relative to the previous transform, because the world or scale changed,
+	 * or the position delta exceeds the fixed point range.  A full transform update should be sent instead.
+	 * @param entityId the entity id
+	 * @param from the transform last sent to the client
+	 * @param to the new transform
+	 * @return the update, or null if a full transform is required
+	 */
+	public static UpdateEntityMessage getDelta(int entityId, Transform from, Transform to) {
+		if (from == null) {
+			return null;
+		}
+		Point fromPos = from.getPosition();
+		Point toPos = to.getPosition();
+		if (fromPos.getWorld() != toPos.getWorld() || !from.getScale().equals(to.getScale())) {
+			return null;
+		}
+		int dx = Math.round((toPos.getX() - fromPos.getX()) * POSITION_SCALE);
+		int dy = Math.round((toPos.getY() - fromPos.getY()) * POSITION_SCALE);
+		int dz = Math.round((toPos.getZ() - fromPos.getZ()) * POSITION_SCALE);
+		if (!isShort(dx) || !isShort(dy) || !isShort(dz)) {
+			return null;
+		}
+		short[] positionDelta = null;
+		if (dx != 0 || dy != 0 || dz != 0) {
+			positionDelta = new short[] {(short) dx, (short) dy, (short) dz};
+		}
+		short[] rotation = quantize(to.getRotation());
+		if (Arrays.equals(rotation, quantize(from.getRotation()))) {
+			rotation = null;
+		}
+		return new UpdateEntityMessage(entityId, positionDelta, rotation);
+	}
+
+	private static boolean isShort(int value) {
+		return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+	}
+
+	private static short[] quantize(Quaternion q) {
+		return new short[] {quantize(q.getX()), quantize(q.getY()), quantize(q.getZ()), quantize(q.getW())};
+	}
+
+	private static short quantize(float f) {
+		return (short) Math.round(Math.max(-1F, Math.min(1F, f)) * ROTATION_SCALE);
 	}
 
 	public int getEntityId() {
@@ -59,6 +142,45 @@ public class UpdateEntityMessage extends SpoutMessage {
 		return transform.copy();
 	}
 
+	public short[] getPositionDelta() {
+		return positionDelta;
+	}
+
+	public short[] getRotation() {
+		return rotation;
+	}
+
+	/**
+	 * Gets if a relative movement update changes the position or rotation
+	 * @return true if either component changed
+	 */
+	public boolean hasChanges() {
+		return positionDelta != null || rotation != null;
+	}
+
+	/**
+	 * Applies a relative movement update to the transform it was computed against
+	 * @param base the previous transform
+	 * @return the new transform
+	 */
+	public Transform applyTo(Transform base) {
+		if (action != UpdateAction.POSITION) {
+			throw new IllegalStateException("Only position updates are relative");
+		}
+		Point position = base.getPosition();
+		if (positionDelta != null) {
+			position = new Point(position.getWorld(),
+					position.getX() + positionDelta[0] / POSITION_SCALE,
+					position.getY() + positionDelta[1] / POSITION_SCALE,
+					position.getZ() + positionDelta[2] / POSITION_SCALE);
+		}
+		Quaternion rot = base.getRotation();
+		if (rotation != null) {
+			rot = new Quaternion(rotation[0] / ROTATION_SCALE, rotation[1] / ROTATION_SCALE, rotation[2] / ROTATION_SCALE, rotation[3] / ROTATION_SCALE, true);
+		}
+		return new Transform(position, rot, base.getScale());
+	}
+
 	public UpdateAction getAction() {
 		return action;
 	}
@@ -69,6 +191,8 @@ public class UpdateEntityMessage extends SpoutMessage {
 				.append("entityId", entityId)
 				.append("transform", transform)
 				.append("action", action)
+				.append("positionDelta", positionDelta)
+				.append("rotation", rotation)
 				.toString();
 	}
 
@@ -78,6 +202,8 @@ public class UpdateEntityMessage extends SpoutMessage {
 				.append(entityId)
 				.append(transform)
 				.append(action)
+				.append(positionDelta)
+				.append(rotation)
 				.toHashCode();
 	}
 
@@ -89,6 +215,8 @@ public class UpdateEntityMessage extends SpoutMessage {
 					.append(entityId, other.entityId)
 					.append(transform, other.transform)
 					.append(action, other.action)
+					.append(positionDelta, other.positionDelta)
+					.append(rotation, other.rotation)
 					.isEquals();
 		} else {
 			return false;
@@ -96,7 +224,6 @@ public class UpdateEntityMessage extends SpoutMessage {
 	}
 	
 	public enum UpdateAction {
-		// TODO; protocol - use UpdatAction.POSITION?
 		/**
 		 * Signals for the client to spawn a new entity. (S -> C)
 		 */
@@ -109,13 +236,9 @@ public class UpdateEntityMessage extends SpoutMessage {
 		 */
 		TRANSFORM,
 		/**
-		 * Signals for the engine to update the entity's position.
-		 * S -> C for all entities.
-		 * C -> S for players (to verify client movement)
-		 * 
-		 * CURRENTLY UNIMPLEMENTED - deprecated until implemented
+		 * Signals for the client to move the entity relative to the last transform sent for it.
+		 * Only the changed position and rotation components are sent. (S -> C)
 		 */
-		@Deprecated
 		POSITION,
 		/**
 		 * Signals the client to remove the entity. (S -> C)
@@ -28,22 +28,24 @@ package org.spout.engine.scheduler;
 
 import java.awt.Canvas;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -82,6 +84,8 @@ import org.spout.engine.util.thread.coretasks.StartTickTask;
 import org.spout.engine.util.thread.lock.SpoutSnapshotLock;
 import org.spout.engine.util.thread.snapshotable.SnapshotManager;
 import org.spout.engine.util.thread.snapshotable.SnapshotableArrayList;
+import org.spout.engine.util.thread.threadfactory.NamedThreadFactory;
+import org.spout.engine.world.RegionChunkLoader;
 import org.spout.engine.world.RegionGenerator;
 import static org.spout.engine.world.SpoutChunk.meshesGenerated;
 import org.spout.engine.world.SpoutChunkSnapshotModel;
@@ -187,8 +191,14 @@ public final class SpoutScheduler implements Scheduler {
 	private final FinalizeTask finalizeTask = new FinalizeTask();
 	private final PreSnapshotTask preSnapshotTask = new PreSnapshotTask();
 	private final CopySnapshotTask copySnapshotTask = new CopySnapshotTask();
-	// scheduler executor service
-	private final ExecutorService executorService;
+	// scheduler executor for tick stage tasks
+	private final TickTaskExecutor tickExecutor;
+	// task durations in the last tick, per task factory, only accessed by the main thread
+	private final Map<ManagerRunnableFactory, Map<AsyncManager, Long>> taskDurations = new HashMap<ManagerRunnableFactory, Map<AsyncManager, Long>>();
+	// executor for the lighting managers of a region, which are resolved alongside the region's own thread
+	private final ExecutorService lightingExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new MarkedNamedThreadFactory("SpoutScheduler - lighting executor", true));
+	// per stage, manager and plugin task timings, only recorded while enabled
+	private final TickProfiler profiler = new TickProfiler();
 
 	/**
 	 * Creates a new task scheduler.
@@ -211,7 +221,7 @@ public final class SpoutScheduler implements Scheduler {
 			meshThread = null;
 		}
 
-		executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2 + 1, new MarkedNamedThreadFactory("SpoutScheduler - async manager executor service", true));
+		tickExecutor = new TickTaskExecutor(Runtime.getRuntime().availableProcessors() * 2 + 1, "SpoutScheduler - async manager executor service");
 
 		taskManager = new SpoutTaskManager(this, mainThread);
 	}
@@ -388,6 +398,8 @@ public final class SpoutScheduler implements Scheduler {
 			}
 			
 			RegionGenerator.shutdownExecutorService();
+			RegionChunkLoader.shutdownExecutorService();
+			lightingExecutor.shutdown();
 			
 			if (engine.getPlatform() == Platform.CLIENT) {
 				try {
@@ -408,6 +420,7 @@ public final class SpoutScheduler implements Scheduler {
 			}
 			
 			RegionGenerator.awaitExecutorServiceTermination();
+			RegionChunkLoader.awaitExecutorServiceTermination();
 			
 			heavyLoad.set(false);
 
@@ -648,6 +661,9 @@ public final class SpoutScheduler implements Scheduler {
 	private boolean tick(long delta) throws InterruptedException {
 		TickStage.setStage(TickStage.TICKSTART);
 
+		final boolean profile = profiler.isEnabled();
+		final long tickStart = profile ? System.nanoTime() : 0L;
+
 		if (engine instanceof Client) {
 			// Pull input each frame
 			((SpoutClient) engine).getInputManager().pollInput(((Client) engine).getPlayer());
@@ -658,8 +674,14 @@ public final class SpoutScheduler implements Scheduler {
 
 		asyncManagers.copySnapshot();
 
+		long heartbeatStart = profile ? System.nanoTime() : 0L;
+
 		taskManager.heartbeat(delta);
 
+		if (profile) {
+			profiler.recordStage("Sync tasks", System.nanoTime() - heartbeatStart, 0);
+		}
+
 		if (parallelTaskManager == null) {
 			parallelTaskManager = ((SpoutParallelTaskManager) engine.getParallelTaskManager());
 		}
@@ -713,6 +735,11 @@ public final class SpoutScheduler implements Scheduler {
 
 			updates.set(1);
 
+			if (profile) {
+				profiler.recordStage("Dynamic updates", 0L, dynamicUpdates);
+				profiler.recordStage("Physics updates", 0L, physicsUpdates);
+			}
+
 			doLighting(managers);
 
 			if (totalUpdates >= UPDATE_THRESHOLD) {
@@ -723,12 +750,17 @@ public final class SpoutScheduler implements Scheduler {
 
 			copySnapshot(managers);
 
+			NetworkSendThreadPool.flush();
+
 			runCoreTasks();
 
 			TickStage.setStage(TickStage.TICKSTART);
 		} finally {
 			unlockSnapshotLock("Primary Snapshot Lock", snapshotLock);
 		}
+		if (profile) {
+			profiler.endTick(System.nanoTime() - tickStart);
+		}
 		return true;
 	}
 
@@ -858,6 +890,20 @@ public final class SpoutScheduler implements Scheduler {
 
 	private void runTasks(List<AsyncManager> managers, ManagerRunnableFactory taskFactory, String stageString, int globalStage, int localStage) {
 		long time = -System.currentTimeMillis();
+		final boolean profile = profiler.isEnabled();
+		final long stageStart = profile ? System.nanoTime() : 0L;
+		int taskCount = 0;
+		final Map<AsyncManager, Long> durations = getTaskDurations(taskFactory);
+		Comparator<AsyncManager> longestFirst = new Comparator<AsyncManager>() {
+			@Override
+			public int compare(AsyncManager a, AsyncManager b) {
+				Long da = durations.get(a);
+				Long db = durations.get(b);
+				long la = da == null ? 0L : da;
+				long lb = db == null ? 0L : db;
+				return la > lb ? -1 : (la < lb ? 1 : 0);
+			}
+		};
 		int maxSequence = taskFactory.getMaxSequence();
 		for (int s = taskFactory.getMinSequence(); s <= maxSequence; s++) {
 			if (s == -1) {
@@ -865,41 +911,52 @@ public final class SpoutScheduler implements Scheduler {
 			} else {
 				TickStage.setStage(globalStage);
 			}
-			List<Future<?>> futures = new ArrayList<Future<?>>(managers.size());
+			List<AsyncManager> sequenceManagers = new ArrayList<AsyncManager>(managers.size());
 			for (AsyncManager manager : managers) {
 				if (s == -1 || s == manager.getSequence()) {
-					Runnable r = taskFactory.getTask(manager, s);
-					if (r != null) {
-						futures.add(executorService.submit(r));
-					}
+					sequenceManagers.add(manager);
 				}
 			}
-			forLoop:
-			for (int i = 0; i < futures.size(); i++) {
-				boolean done = false;
-				while (!done) {
-					try {
-						Future<?> f = futures.get(i);
-						if (!f.isDone()) {
-							f.get(PULSE_EVERY << 4, TimeUnit.MILLISECONDS);
-						}
-						done = true;
-					} catch (InterruptedException e) {
-						Spout.info("Warning: main thread interrupted while waiting on tick stage task, " + taskFactory.getClass().getName());
-						break forLoop;
-					} catch (ExecutionException e) {
-						Spout.info("Exception thrown when executing task, " + taskFactory.getClass().getName() + ", " + e.getMessage());
-						e.printStackTrace();
-						Spout.info("Caused by");
-						e.getCause().printStackTrace();
-						done = true;
-					} catch (TimeoutException e) {
-						if (((SpoutEngine) engine).isSetupComplete()) {
-							logLongDurationTick(stageString, managers);
-						}
+			// Start the slowest managers of the previous tick first, so they don't end up running alone at the end of the phase
+			Collections.sort(sequenceManagers, longestFirst);
+			List<AsyncManager> taskManagers = new ArrayList<AsyncManager>(sequenceManagers.size());
+			List<Runnable> tasks = new ArrayList<Runnable>(sequenceManagers.size());
+			for (AsyncManager manager : sequenceManagers) {
+				Runnable r = taskFactory.getTask(manager, s);
+				if (r != null) {
+					taskManagers.add(manager);
+					tasks.add(r);
+				}
+			}
+			if (tasks.isEmpty()) {
+				continue;
+			}
+			TickTaskExecutor.Phase phase = tickExecutor.start(tasks.toArray(new Runnable[tasks.size()]));
+			try {
+				while (!phase.await(PULSE_EVERY << 4, TimeUnit.MILLISECONDS)) {
+					if (((SpoutEngine) engine).isSetupComplete()) {
+						logLongDurationTick(stageString, managers);
 					}
 				}
+			} catch (InterruptedException e) {
+				Spout.info("Warning: main thread interrupted while waiting on tick stage task, " + taskFactory.getClass().getName());
+				return;
+			}
+			for (int i = 0; i < taskManagers.size(); i++) {
+				Throwable t = phase.getFailure(i);
+				if (t != null) {
+					Spout.info("Exception thrown when executing task for " + taskManagers.get(i) + ", " + taskFactory.getClass().getName() + ", " + t.getMessage());
+					t.printStackTrace();
+				}
+				durations.put(taskManagers.get(i), phase.getDuration(i));
+				if (profile) {
+					profiler.recordManager(taskManagers.get(i), phase.getDuration(i));
+				}
 			}
+			taskCount += tasks.size();
+		}
+		if (profile) {
+			profiler.recordStage(stageString, System.nanoTime() - stageStart, taskCount);
 		}
 		time += System.currentTimeMillis();
 		if (Spout.debugMode() && time > PULSE_EVERY) {
@@ -907,6 +964,34 @@ public final class SpoutScheduler implements Scheduler {
 		}
 	}
 
+	/**
+	 * Gets the durations of the tasks of each manager in the last tick, for a task factory
+	 */
+	private Map<AsyncManager, Long> getTaskDurations(ManagerRunnableFactory taskFactory) {
+		Map<AsyncManager, Long> durations = taskDurations.get(taskFactory);
+		if (durations == null) {
+			durations = new WeakHashMap<AsyncManager, Long>();
+			taskDurations.put(taskFactory, durations);
+		}
+		return durations;
+	}
+
+	/**
+	 * Gets the profiler which records the time taken by each tick stage, region and plugin task
+	 * @return the tick profiler
+	 */
+	public TickProfiler getProfiler() {
+		return profiler;
+	}
+
+	/**
+	 * Gets the executor used by regions to resolve their lighting managers concurrently during the lighting stage
+	 * @return the lighting executor
+	 */
+	public ExecutorService getLightingExecutor() {
+		return lightingExecutor;
+	}
+
 	public long getFps() {
 		return renderThread.getFps();
 	}
@@ -1132,24 +1217,20 @@ public final class SpoutScheduler implements Scheduler {
 		}
 		 */
 	}
-	
-	private static class MarkedNamedThreadFactory extends Thread implements ThreadFactory {
-		
-		private final AtomicInteger idCounter = new AtomicInteger();
-		private final String namePrefix;
-		private final boolean daemon;
 
+	/**
+	 * Creates threads which are marked as scheduler threads, so they don't wait on the snapshot lock held by the main thread
+	 */
+	private static class MarkedNamedThreadFactory extends NamedThreadFactory {
 		public MarkedNamedThreadFactory(String namePrefix, boolean daemon) {
-			this.namePrefix = namePrefix;
-			this.daemon = daemon;
+			super(namePrefix, daemon);
 		}
-		
+
 		@Override
 		public Thread newThread(Runnable runnable) {
 			Thread thread = new SchedulerSyncExecutorThread(runnable, "Executor{" + namePrefix + "-" + idCounter.getAndIncrement() + "}");
 			thread.setDaemon(daemon);
 			return thread;
 		}
-		
 	}
 }
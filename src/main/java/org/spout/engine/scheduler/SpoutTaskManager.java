@@ -154,7 +154,14 @@ public class SpoutTaskManager implements TaskManager {
 				if (!currentTask.isAlive()) {
 					continue;
 				} else if (currentTask.isSync()) {
-					currentTask.pulse();
+					TickProfiler profiler = scheduler instanceof SpoutScheduler ? ((SpoutScheduler) scheduler).getProfiler() : null;
+					if (profiler != null && profiler.isEnabled()) {
+						long start = System.nanoTime();
+						currentTask.pulse();
+						profiler.recordTask(currentTask.getOwner(), System.nanoTime() - start);
+					} else {
+						currentTask.pulse();
+					}
 					repeatSchedule(currentTask);
 				} else {
 					Spout.getLogger().info("Async repeating task submitted");
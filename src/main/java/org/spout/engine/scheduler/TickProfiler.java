@@ -0,0 +1,324 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.scheduler;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.spout.api.util.Named;
+import org.spout.engine.util.thread.AsyncManager;
+
+/**
+ * Records the wall time and work counts of each tick stage, each async manager and each plugin task.<br>
+ * <br>
+ * Times are accumulated during a tick and committed as one sample per tick, when the tick ends.  The samples of the
+ * last {@link #WINDOW} ticks are kept for each key, and percentiles are calculated from them on request.  Nothing is
+ * recorded while the profiler is disabled.
+ */
+public class TickProfiler {
+	/**
+	 * The number of ticks kept for the percentiles
+	 */
+	public static final int WINDOW = 200;
+	private static final double NANOS_PER_MS = 1000000D;
+
+	private volatile boolean enabled = false;
+	private final Samples ticks = new Samples("Tick");
+	private final Map<String, Samples> stages = new ConcurrentHashMap<String, Samples>();
+	private final Map<AsyncManager, Samples> managers = Collections.synchronizedMap(new WeakHashMap<AsyncManager, Samples>());
+	private final Map<Object, Samples> tasks = Collections.synchronizedMap(new WeakHashMap<Object, Samples>());
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Clears all the recorded samples
+	 */
+	public void reset() {
+		ticks.clear();
+		stages.clear();
+		managers.clear();
+		tasks.clear();
+	}
+
+	/**
+	 * Records the time taken by a tick stage, this may be called more than once per tick for a stage
+	 * @param stage the name of the stage
+	 * @param nanos the time taken, in nanoseconds
+	 * @param work the work done, such as the number of tasks run or block updates
+	 */
+	public void recordStage(String stage, long nanos, int work) {
+		Samples samples = stages.get(stage);
+		if (samples == null) {
+			samples = new Samples(stage);
+			stages.put(stage, samples);
+		}
+		samples.add(nanos, work);
+	}
+
+	/**
+	 * Records the time taken by the task of an async manager for a tick stage
+	 * @param manager the manager
+	 * @param nanos the time taken, in nanoseconds
+	 */
+	public void recordManager(AsyncManager manager, long nanos) {
+		synchronized (managers) {
+			Samples samples = managers.get(manager);
+			if (samples == null) {
+				samples = new Samples(manager.toString());
+				managers.put(manager, samples);
+			}
+			samples.add(nanos, 1);
+		}
+	}
+
+	/**
+	 * Records the time taken by a pulse of a sync task
+	 * @param owner the owner of the task
+	 * @param nanos the time taken, in nanoseconds
+	 */
+	public void recordTask(Object owner, long nanos) {
+		Object key = owner == null ? this : owner;
+		synchronized (tasks) {
+			Samples samples = tasks.get(key);
+			if (samples == null) {
+				samples = new Samples(owner instanceof Named ? ((Named) owner).getName() : String.valueOf(owner));
+				tasks.put(key, samples);
+			}
+			samples.add(nanos, 1);
+		}
+	}
+
+	/**
+	 * Commits the times recorded during the tick
+	 * @param nanos the total time taken by the tick, in nanoseconds
+	 */
+	public void endTick(long nanos) {
+		ticks.add(nanos, 1);
+		ticks.commit();
+		for (Samples samples : stages.values()) {
+			samples.commit();
+		}
+		for (Samples samples : getAll(managers)) {
+			samples.commit();
+		}
+		for (Samples samples : getAll(tasks)) {
+			samples.commit();
+		}
+	}
+
+	/**
+	 * Gets a readable summary of the samples, with the stages and the slowest managers and tasks by 95th percentile
+	 * @param top the number of managers and tasks to include
+	 * @return the lines of the summary
+	 */
+	public List<String> getSummary(int top) {
+		List<String> lines = new ArrayList<String>();
+		lines.add("Tick profile over the last " + ticks.getCount() + " ticks (p50 / p95 / p99 / max ms, work per tick)");
+		lines.add(ticks.toSummary());
+		for (Samples samples : sorted(new ArrayList<Samples>(stages.values()), Integer.MAX_VALUE)) {
+			lines.add("  " + samples.toSummary());
+		}
+		lines.add("Slowest regions and worlds:");
+		for (Samples samples : sorted(getAll(managers), top)) {
+			lines.add("  " + samples.toSummary());
+		}
+		lines.add("Slowest plugin tasks:");
+		for (Samples samples : sorted(getAll(tasks), top)) {
+			lines.add("  " + samples.toSummary());
+		}
+		return lines;
+	}
+
+	/**
+	 * Writes all the samples to a file as comma separated values, one line per stage, manager and task
+	 * @param file the file
+	 * @throws IOException if the file could not be written
+	 */
+	public void dump(File file) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.println("type,name,ticks,work,mean_ms,p50_ms,p95_ms,p99_ms,max_ms");
+			out.println(ticks.toCsv("tick"));
+			for (Samples samples : stages.values()) {
+				out.println(samples.toCsv("stage"));
+			}
+			for (Samples samples : getAll(managers)) {
+				out.println(samples.toCsv("manager"));
+			}
+			for (Samples samples : getAll(tasks)) {
+				out.println(samples.toCsv("task"));
+			}
+		} finally {
+			out.close();
+		}
+		if (out.checkError()) {
+			throw new IOException("Unable to write tick profile to " + file);
+		}
+	}
+
+	private static List<Samples> getAll(Map<?, Samples> map) {
+		synchronized (map) {
+			return new ArrayList<Samples>(map.values());
+		}
+	}
+
+	private static List<Samples> sorted(List<Samples> list, int top) {
+		final long[] p95 = new long[list.size()];
+		final List<Samples> indexed = list;
+		Integer[] order = new Integer[list.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+			p95[i] = list.get(i).getPercentile(0.95);
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(p95[b], p95[a]);
+			}
+		});
+		List<Samples> result = new ArrayList<Samples>(Math.min(top, order.length));
+		for (int i = 0; i < order.length && i < top; i++) {
+			result.add(indexed.get(order[i]));
+		}
+		return result;
+	}
+
+	private static String ms(long nanos) {
+		// Locale.ROOT keeps the decimal separator a point, so the dump stays machine readable
+		return String.format(Locale.ROOT, "%.2f", nanos / NANOS_PER_MS);
+	}
+
+	/**
+	 * The samples for one key, the last {@link TickProfiler#WINDOW} ticks are kept in a ring buffer
+	 */
+	private static class Samples {
+		private final String name;
+		private final long[] times = new long[WINDOW];
+		private final long[] works = new long[WINDOW];
+		private int next = 0;
+		private int count = 0;
+		private long pendingTime = 0;
+		private long pendingWork = 0;
+		private boolean pending = false;
+
+		public Samples(String name) {
+			this.name = name;
+		}
+
+		public synchronized void add(long nanos, int work) {
+			pendingTime += nanos;
+			pendingWork += work;
+			pending = true;
+		}
+
+		public synchronized void commit() {
+			if (!pending) {
+				return;
+			}
+			times[next] = pendingTime;
+			works[next] = pendingWork;
+			next = (next + 1) % WINDOW;
+			if (count < WINDOW) {
+				count++;
+			}
+			pendingTime = 0;
+			pendingWork = 0;
+			pending = false;
+		}
+
+		public synchronized void clear() {
+			next = 0;
+			count = 0;
+			pendingTime = 0;
+			pendingWork = 0;
+			pending = false;
+		}
+
+		public synchronized int getCount() {
+			return count;
+		}
+
+		public synchronized long getPercentile(double percentile) {
+			if (count == 0) {
+				return 0L;
+			}
+			long[] sorted = Arrays.copyOf(times, count);
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(percentile * count) - 1;
+			return sorted[Math.max(0, Math.min(count - 1, index))];
+		}
+
+		public synchronized long getMean() {
+			if (count == 0) {
+				return 0L;
+			}
+			long total = 0;
+			for (int i = 0; i < count; i++) {
+				total += times[i];
+			}
+			return total / count;
+		}
+
+		/**
+		 * Gets the work done over the kept ticks
+		 * @return the total work
+		 */
+		public synchronized long getWork() {
+			long total = 0;
+			for (int i = 0; i < count; i++) {
+				total += works[i];
+			}
+			return total;
+		}
+
+		public synchronized String toSummary() {
+			String work = count == 0 ? "0" : String.format(Locale.ROOT, "%.1f", getWork() / (double) count);
+			return name + ": " + ms(getPercentile(0.5)) + " / " + ms(getPercentile(0.95)) + " / " + ms(getPercentile(0.99)) + " / " + ms(getPercentile(1.0)) + ", " + work;
+		}
+
+		public synchronized String toCsv(String type) {
+			return type + ",\"" + name.replace("\"", "\"\"") + "\"," + count + "," + getWork() + "," + ms(getMean()) + "," + ms(getPercentile(0.5)) + "," + ms(getPercentile(0.95)) + "," + ms(getPercentile(0.99)) + "," + ms(getPercentile(1.0));
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.scheduler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes the tasks of a tick stage on a fixed set of worker threads, one phase at a time.<br>
+ * <br>
+ * The tasks of a phase are not assigned to workers up front.  Each worker claims the next unstarted
+ * task from a shared index as soon as it is free, so the load is balanced while the phase runs and
+ * a slow task never holds back tasks queued behind it.  A phase ends, and the next phase may be
+ * started, only once every task of the phase has completed.
+ */
+public class TickTaskExecutor {
+	private final Thread[] workers;
+	private final Semaphore wakeup = new Semaphore(0);
+	private volatile Phase current = null;
+
+	public TickTaskExecutor(int threads, String name) {
+		workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new SchedulerSyncExecutorThread(new Worker(), "Executor{" + name + "-" + i + "}");
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Starts a phase.  The previous phase must have completed.
+	 * @param tasks the tasks, started in array order
+	 * @return the phase
+	 */
+	public Phase start(Runnable[] tasks) {
+		Phase phase = new Phase(tasks);
+		current = phase;
+		if (tasks.length > 0) {
+			wakeup.release(Math.min(tasks.length, workers.length));
+		}
+		return phase;
+	}
+
+	public static class Phase {
+		private final Runnable[] tasks;
+		private final long[] durations;
+		private final AtomicInteger next = new AtomicInteger(0);
+		private final CountDownLatch done;
+		private final Throwable[] failures;
+
+		private Phase(Runnable[] tasks) {
+			this.tasks = tasks;
+			this.durations = new long[tasks.length];
+			this.failures = new Throwable[tasks.length];
+			this.done = new CountDownLatch(tasks.length);
+		}
+
+		/**
+		 * Waits for all the tasks of the phase to complete
+		 * @param timeout the maximum time to wait
+		 * @param unit the time unit
+		 * @return true if the phase completed
+		 * @throws InterruptedException if interrupted while waiting
+		 */
+		public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+			return done.await(timeout, unit);
+		}
+
+		/**
+		 * Gets the time taken by a task, once the phase has completed
+		 * @param index the index of the task
+		 * @return the duration, in nanoseconds
+		 */
+		public long getDuration(int index) {
+			return durations[index];
+		}
+
+		/**
+		 * Gets the exception thrown by a task, once the phase has completed
+		 * @param index the index of the task
+		 * @return the exception, or null if the task did not fail
+		 */
+		public Throwable getFailure(int index) {
+			return failures[index];
+		}
+
+		private boolean runNext() {
+			int index = next.getAndIncrement();
+			if (index >= tasks.length) {
+				return false;
+			}
+			long start = System.nanoTime();
+			try {
+				tasks[index].run();
+			} catch (Throwable t) {
+				failures[index] = t;
+			} finally {
+				durations[index] = System.nanoTime() - start;
+				done.countDown();
+			}
+			return true;
+		}
+	}
+
+	private class Worker implements Runnable {
+		@Override
+		public void run() {
+			while (true) {
+				try {
+					wakeup.acquire();
+				} catch (InterruptedException e) {
+					return;
+				}
+				Phase phase = current;
+				if (phase != null) {
+					while (phase.runNext()) {
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.util.thread.snapshotable;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.spout.api.util.thread.annotation.DelayedWrite;
+import org.spout.api.util.thread.annotation.LiveRead;
+import org.spout.api.util.thread.annotation.SnapshotRead;
+
+/**
+ * A snapshotable class for int keyed HashMaps based on Trove int maps.
+ * <p>
+ * The snapshot values are stored densely in an array, so they can be iterated by index without
+ * walking hash map entries.  The order of the snapshot values is not stable, a removal moves the
+ * last value into the removed slot.
+ * <p>
+ * Removals from the Map occur at the next snapshot update.
+ */
+public class SnapshotableIntHashMap<V> implements Snapshotable {
+	private static final int NO_INDEX = -1;
+	private final TIntObjectHashMap<V> live = new TIntObjectHashMap<V>();
+	private final TIntHashSet dirtySet = new TIntHashSet();
+	private final TIntArrayList dirtyList = new TIntArrayList();
+	private final TIntIntHashMap snapshotIndex = new TIntIntHashMap(16, 0.5F, 0, NO_INDEX);
+	private final TIntArrayList snapshotKeys = new TIntArrayList();
+	private final SnapshotValues snapshotValues = new SnapshotValues();
+	private Object[] snapshot = new Object[16];
+	private final Lock readLock;
+	private final Lock writeLock;
+
+	public SnapshotableIntHashMap(SnapshotManager manager) {
+		ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		readLock = lock.readLock();
+		writeLock = lock.writeLock();
+		manager.add(this);
+	}
+
+	/**
+	 * Adds a key/value pair to the map
+	 * @param key   the key
+	 * @param value the value
+	 * @return the old value
+	 */
+	@DelayedWrite
+	@LiveRead
+	public V put(int key, V value) {
+		writeLock.lock();
+		try {
+			markDirty(key);
+			return live.put(key, value);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes a key/value pair from the map
+	 * @param key the key
+	 * @return the old value
+	 */
+	@DelayedWrite
+	@LiveRead
+	public V remove(int key) {
+		writeLock.lock();
+		try {
+			V oldValue = live.remove(key);
+			if (oldValue != null) {
+				markDirty(key);
+			}
+			return oldValue;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the snapshot value for a key
+	 * @param key the key
+	 * @return the snapshot value, or null if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	@SnapshotRead
+	public V get(int key) {
+		int index = snapshotIndex.get(key);
+		return index == NO_INDEX ? null : (V) snapshot[index];
+	}
+
+	/**
+	 * Gets the live value for a key
+	 * @param key the key
+	 * @return the live value, or null if there is none
+	 */
+	@LiveRead
+	public V getLive(int key) {
+		readLock.lock();
+		try {
+			return live.get(key);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of values in the snapshot
+	 * @return the snapshot size
+	 */
+	@SnapshotRead
+	public int size() {
+		return snapshotKeys.size();
+	}
+
+	/**
+	 * Gets the snapshot value at an index, between 0 and {@link #size()}
+	 * @param index the index
+	 * @return the value
+	 */
+	@SuppressWarnings("unchecked")
+	@SnapshotRead
+	public V getValue(int index) {
+		return (V) snapshot[index];
+	}
+
+	/**
+	 * Gets the snapshot values.  The list is a view of the snapshot and is backed by the snapshot array.
+	 * @return the snapshot values
+	 */
+	@SnapshotRead
+	public List<V> getValues() {
+		return snapshotValues;
+	}
+
+	/**
+	 * Gets a copy of the live values
+	 * @return the live values
+	 */
+	@LiveRead
+	public List<V> getLiveValues() {
+		readLock.lock();
+		try {
+			return new ArrayList<V>(live.valueCollection());
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Copies the next values to the snapshot
+	 */
+	@Override
+	public void copySnapshot() {
+		writeLock.lock();
+		try {
+			int size = dirtyList.size();
+			for (int i = 0; i < size; i++) {
+				int key = dirtyList.getQuick(i);
+				V value = live.get(key);
+				if (value == null) {
+					removeSnapshot(key);
+				} else {
+					putSnapshot(key, value);
+				}
+			}
+			dirtySet.clear();
+			dirtyList.resetQuick();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	private void putSnapshot(int key, V value) {
+		int index = snapshotIndex.get(key);
+		if (index == NO_INDEX) {
+			index = snapshotKeys.size();
+			if (index == snapshot.length) {
+				snapshot = Arrays.copyOf(snapshot, index << 1);
+			}
+			snapshotKeys.add(key);
+			snapshotIndex.put(key, index);
+		}
+		snapshot[index] = value;
+	}
+
+	private void removeSnapshot(int key) {
+		int index = snapshotIndex.remove(key);
+		if (index == NO_INDEX) {
+			return;
+		}
+		int last = snapshotKeys.size() - 1;
+		if (index != last) {
+			int lastKey = snapshotKeys.getQuick(last);
+			snapshot[index] = snapshot[last];
+			snapshotKeys.setQuick(index, lastKey);
+			snapshotIndex.put(lastKey, index);
+		}
+		snapshot[last] = null;
+		snapshotKeys.removeAt(last);
+	}
+
+	/**
+	 * Records a key as dirty, the write lock must be held
+	 */
+	private void markDirty(int key) {
+		if (dirtySet.add(key)) {
+			dirtyList.add(key);
+		}
+	}
+
+	private class SnapshotValues extends AbstractList<V> {
+		@Override
+		public V get(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size());
+			}
+			return getValue(index);
+		}
+
+		@Override
+		public int size() {
+			return SnapshotableIntHashMap.this.size();
+		}
+	}
+}
@@ -26,10 +26,13 @@
  */
 package org.spout.engine.util.thread.snapshotable;
 
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.set.hash.TLongHashSet;
+
 import java.util.Arrays;
 import java.util.LinkedHashSet;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.spout.api.util.map.TInt21TripleObjectHashMap;
 import org.spout.api.util.map.TUnmodifiableInt21TripleObjectHashMap;
@@ -37,30 +40,38 @@ import org.spout.api.util.thread.annotation.DelayedWrite;
 import org.spout.api.util.thread.annotation.LiveRead;
 import org.spout.api.util.thread.annotation.SnapshotRead;
 
-import org.spout.engine.util.TripleInt;
-
 /**
  * A snapshotable class for triple int HashMaps based on Trove long maps.
  * <p>
  * This allows the class to support getLive functionality.
  * <p>
  * Removals from the Map occur at the next snapshot update.
+ * <p>
+ * Dirty keys are recorded as packed longs in a buffer which is reused between snapshots,
+ * so updating the map does not allocate.  Reads of the live map only take a shared lock.
  */
 public class SnapshotableTripleIntHashMap<V> implements Snapshotable {
+	private static final int KEY_BITS = 21;
+	private static final long KEY_MASK = (1L << KEY_BITS) - 1;
 	private final TInt21TripleObjectHashMap<V> live;
-	private final ConcurrentHashMap<TripleInt, Boolean> dirtyMap;
-	private final ConcurrentLinkedQueue<TripleInt> dirtyQueue;
+	private final TLongHashSet dirtySet;
+	private final TLongArrayList dirtyList;
 	private final TInt21TripleObjectHashMap<V> snapshot;
 	private final TUnmodifiableInt21TripleObjectHashMap<V> unmutableSnapshot;
 	private final TUnmodifiableInt21TripleObjectHashMap<V> unmutableLive;
+	private final Lock readLock;
+	private final Lock writeLock;
 
 	public SnapshotableTripleIntHashMap(SnapshotManager manager) {
 		live = new TInt21TripleObjectHashMap<V>();
 		snapshot = new TInt21TripleObjectHashMap<V>();
 		unmutableSnapshot = new TUnmodifiableInt21TripleObjectHashMap<V>(snapshot);
 		unmutableLive = new TUnmodifiableInt21TripleObjectHashMap<V>(live);
-		dirtyQueue = new ConcurrentLinkedQueue<TripleInt>();
-		dirtyMap = new ConcurrentHashMap<TripleInt, Boolean>();
+		dirtySet = new TLongHashSet();
+		dirtyList = new TLongArrayList();
+		ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		readLock = lock.readLock();
+		writeLock = lock.writeLock();
 		manager.add(this);
 	}
 
@@ -75,9 +86,12 @@ public class SnapshotableTripleIntHashMap<V> implements Snapshotable {
 	@DelayedWrite
 	@LiveRead
 	public V put(int x, int y, int z, V value) {
-		markDirty(new TripleInt(x, y, z));
-		synchronized (live) {
+		writeLock.lock();
+		try {
+			markDirty(x, y, z);
 			return live.put(x, y, z, value);
+		} finally {
+			writeLock.unlock();
 		}
 	}
 
@@ -92,14 +106,16 @@ public class SnapshotableTripleIntHashMap<V> implements Snapshotable {
 	@DelayedWrite
 	@LiveRead
 	public V putIfAbsent(int x, int y, int z, V value) {
-		synchronized (live) {
+		writeLock.lock();
+		try {
 			V oldValue = live.get(x, y, z);
 			if (oldValue == null) {
 				live.put(x, y, z, value);
-				TripleInt key = new TripleInt(x, y, z);
-				markDirty(key);
+				markDirty(x, y, z);
 			}
 			return oldValue;
+		} finally {
+			writeLock.unlock();
 		}
 	}
 
@@ -113,15 +129,16 @@ public class SnapshotableTripleIntHashMap<V> implements Snapshotable {
 	@DelayedWrite
 	@LiveRead
 	public V remove(int x, int y, int z) {
-		V oldValue;
-		synchronized (live) {
-			oldValue = live.remove(x, y, z);
+		writeLock.lock();
+		try {
+			V oldValue = live.remove(x, y, z);
 			if (oldValue != null) {
-				TripleInt key = new TripleInt(x, y, z);
-				markDirty(key);
+				markDirty(x, y, z);
 			}
+			return oldValue;
+		} finally {
+			writeLock.unlock();
 		}
-		return oldValue;
 	}
 
 	/**
@@ -138,16 +155,18 @@ public class SnapshotableTripleIntHashMap<V> implements Snapshotable {
 	@DelayedWrite
 	@LiveRead
 	public boolean remove(int x, int y, int z, V value) {
-		synchronized (live) {
+		writeLock.lock();
+		try {
 			V current = live.get(x, y, z);
-			if (!current.equals(value)) {
+			if (current == null || !current.equals(value)) {
 				return false;
 			}
 
 			live.remove(x, y, z);
-			TripleInt key = new TripleInt(x, y, z);
-			markDirty(key);
+			markDirty(x, y, z);
 			return true;
+		} finally {
+			writeLock.unlock();
 		}
 	}
 
@@ -179,13 +198,16 @@ public class SnapshotableTripleIntHashMap<V> implements Snapshotable {
 	@LiveRead
 	@SnapshotRead
 	public V getValue(int x, int y, int z) {
-		synchronized (live) {
+		readLock.lock();
+		try {
 			V liveValue = live.get(x, y, z);
 			if (liveValue != null) {
 				return liveValue;
 			}
 
 			return snapshot.get(x, y, z);
+		} finally {
+			readLock.unlock();
 		}
 	}
 
@@ -210,8 +232,11 @@ public class SnapshotableTripleIntHashMap<V> implements Snapshotable {
 	 */
 	@LiveRead
 	public V getLive(int x, int y, int z) {
-		synchronized (live) {
+		readLock.lock();
+		try {
 			return live.get(x, y, z);
+		} finally {
+			readLock.unlock();
 		}
 	}
 
@@ -223,8 +248,11 @@ public class SnapshotableTripleIntHashMap<V> implements Snapshotable {
 	@SnapshotRead
 	public Iterable<V> getValues() {
 		LinkedHashSet<V> values = new LinkedHashSet<V>(snapshot.size());
-		synchronized (live) {
+		readLock.lock();
+		try {
 			values.addAll(Arrays.asList(live.values()));
+		} finally {
+			readLock.unlock();
 		}
 		values.addAll(Arrays.asList(snapshot.values()));
 		return values;
@@ -235,22 +263,42 @@ public class SnapshotableTripleIntHashMap<V> implements Snapshotable {
 	 */
 	@Override
 	public void copySnapshot() {
-		for (TripleInt k : dirtyQueue) {
-			V value = live.get(k.x, k.y, k.z);
-			if (value == null) {
-				snapshot.remove(k.x, k.y, k.z);
-			} else {
-				snapshot.put(k.x, k.y, k.z, value);
+		writeLock.lock();
+		try {
+			int size = dirtyList.size();
+			for (int i = 0; i < size; i++) {
+				long key = dirtyList.getQuick(i);
+				int x = unpack(key, KEY_BITS << 1);
+				int y = unpack(key, KEY_BITS);
+				int z = unpack(key, 0);
+				V value = live.get(x, y, z);
+				if (value == null) {
+					snapshot.remove(x, y, z);
+				} else {
+					snapshot.put(x, y, z, value);
+				}
 			}
+			dirtySet.clear();
+			dirtyList.resetQuick();
+		} finally {
+			writeLock.unlock();
 		}
-		dirtyMap.clear();
-		dirtyQueue.clear();
 	}
 
-	private void markDirty(TripleInt key) {
-		Boolean old = dirtyMap.putIfAbsent(key, Boolean.TRUE);
-		if (old == null) {
-			dirtyQueue.add(key);
+	/**
+	 * Records a key as dirty, the write lock must be held
+	 */
+	private void markDirty(int x, int y, int z) {
+		long key = ((x & KEY_MASK) << (KEY_BITS << 1)) | ((y & KEY_MASK) << KEY_BITS) | (z & KEY_MASK);
+		if (dirtySet.add(key)) {
+			dirtyList.add(key);
 		}
 	}
+
+	/**
+	 * Unpacks a sign extended 21 bit coordinate from a key
+	 */
+	private static int unpack(long key, int shift) {
+		return ((int) (key >> shift) << (32 - KEY_BITS)) >> (32 - KEY_BITS);
+	}
 }
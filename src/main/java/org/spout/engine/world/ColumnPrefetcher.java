@@ -0,0 +1,143 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.world;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.util.concurrent.Future;
+
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.geo.discrete.Point;
+
+/**
+ * Queues generation for the columns ahead of a moving observer.<br>
+ * <br>
+ * The observer's heading is estimated from its smoothed change in position each tick.  Columns along that heading, 
+ * just beyond the view distance, are passed to {@link RegionGenerator#prefetchColumn(SpoutWorld, int, int)}.  Columns are 
+ * remembered after their task completes, so they are not queued again.  Columns which fall behind the heading, or leave the 
+ * prefetch range, are forgotten and their tasks are cancelled if they have not started.
+ */
+public class ColumnPrefetcher {
+	/**
+	 * The minimum speed, in blocks per tick, before columns are prefetched
+	 */
+	private static final float MIN_SPEED = 0.1F;
+	/**
+	 * The smoothing factor applied to the per tick velocity
+	 */
+	private static final float SMOOTHING = 0.5F;
+	/**
+	 * The cosine of the largest angle between the heading and a queued column before it is cancelled
+	 */
+	private static final float CANCEL_COS = 0.5F;
+	private final TLongObjectHashMap<Future<?>> queued = new TLongObjectHashMap<Future<?>>();
+	private SpoutWorld world = null;
+	private float lastX;
+	private float lastZ;
+	private float velX;
+	private float velZ;
+
+	/**
+	 * Updates the heading estimate and the queued columns
+	 * @param w the observer's world
+	 * @param position the observer's position
+	 * @param viewDistance the observer's view distance, in chunks
+	 * @param distance the number of columns to prefetch beyond the view distance
+	 */
+	public void update(SpoutWorld w, Point position, int viewDistance, int distance) {
+		if (w != world) {
+			cancel();
+			world = w;
+			lastX = position.getX();
+			lastZ = position.getZ();
+			velX = 0;
+			velZ = 0;
+			return;
+		}
+
+		velX = velX * (1 - SMOOTHING) + (position.getX() - lastX) * SMOOTHING;
+		velZ = velZ * (1 - SMOOTHING) + (position.getZ() - lastZ) * SMOOTHING;
+		lastX = position.getX();
+		lastZ = position.getZ();
+
+		float speed = (float) Math.sqrt(velX * velX + velZ * velZ);
+		if (distance <= 0 || speed < MIN_SPEED) {
+			cancel();
+			return;
+		}
+
+		final float headX = velX / speed;
+		final float headZ = velZ / speed;
+		final int chunkX = position.getChunkX();
+		final int chunkZ = position.getChunkZ();
+		final int maxRange = viewDistance + distance;
+
+		TLongObjectIterator<Future<?>> i = queued.iterator();
+		while (i.hasNext()) {
+			i.advance();
+			int dx = (int) (i.key() >> 32) - chunkX;
+			int dz = (int) i.key() - chunkZ;
+			float along = dx * headX + dz * headZ;
+			if (along < CANCEL_COS * (float) Math.sqrt(dx * dx + dz * dz) || along > maxRange + 1) {
+				RegionGenerator.cancelPrefetch(i.value());
+				i.remove();
+			}
+		}
+
+		// Walk the path beyond the view distance, covering one column either side of it
+		for (int step = viewDistance + 1; step <= maxRange; step++) {
+			float px = (position.getX() / Chunk.BLOCKS.SIZE) + headX * step;
+			float pz = (position.getZ() / Chunk.BLOCKS.SIZE) + headZ * step;
+			for (int side = -1; side <= 1; side++) {
+				queue((int) Math.floor(px - headZ * side), (int) Math.floor(pz + headX * side));
+			}
+		}
+	}
+
+	private void queue(int x, int z) {
+		long key = (((long) x) << 32) | (z & 0xFFFFFFFFL);
+		if (!queued.containsKey(key)) {
+			Future<?> future = RegionGenerator.prefetchColumn(world, x, z);
+			if (future != null) {
+				queued.put(key, future);
+			}
+		}
+	}
+
+	/**
+	 * Cancels all queued columns which have not started generating
+	 */
+	public void cancel() {
+		TLongObjectIterator<Future<?>> i = queued.iterator();
+		while (i.hasNext()) {
+			i.advance();
+			RegionGenerator.cancelPrefetch(i.value());
+		}
+		queued.clear();
+	}
+}
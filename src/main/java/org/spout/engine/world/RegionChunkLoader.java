@@ -0,0 +1,258 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.world;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.spout.api.Spout;
+import org.spout.api.geo.LoadOption;
+import org.spout.api.geo.cuboid.Region;
+import org.spout.api.scheduler.TickStage;
+import org.spout.api.util.Named;
+import org.spout.engine.filesystem.ChunkDataForRegion;
+import org.spout.engine.filesystem.versioned.ChunkFiles;
+import org.spout.engine.filesystem.versioned.ChunkFiles.ChunkRecord;
+import org.spout.engine.util.thread.threadfactory.NamedThreadFactory;
+
+/**
+ * Loads chunks for a region without blocking the region thread.<br>
+ * <br>
+ * Chunk data is read and decoded on a shared I/O pool, without holding the
+ * snapshot lock.  Decoded records are queued, and the region thread creates
+ * the chunks and installs them into the region during stage 1.
+ */
+public class RegionChunkLoader implements Named {
+	
+	private final static ExecutorService pool = 
+			Executors.newFixedThreadPool(
+					Math.max(2, Runtime.getRuntime().availableProcessors()), 
+					new NamedThreadFactory("RegionChunkLoader - io pool", 
+					true));
+	
+	private final SpoutRegion region;
+	private final ConcurrentHashMap<Integer, SpoutChunkLoadFuture> pending = new ConcurrentHashMap<Integer, SpoutChunkLoadFuture>();
+	private final Queue<SpoutChunkLoadFuture> loaded = new ConcurrentLinkedQueue<SpoutChunkLoadFuture>();
+	
+	public RegionChunkLoader(SpoutRegion region) {
+		this.region = region;
+	}
+	
+	/**
+	 * Requests that a chunk is loaded asynchronously.<br>
+	 * <br>
+	 * If a request for the chunk is already pending, the pending request is returned.
+	 * 
+	 * @param x the chunk x coordinate
+	 * @param y the chunk y coordinate
+	 * @param z the chunk z coordinate
+	 * @param loadopt the load option
+	 * @return a future which completes once the chunk has been installed into the region
+	 */
+	public SpoutChunkLoadFuture requestChunk(int x, int y, int z, LoadOption loadopt) {
+		x &= Region.CHUNKS.MASK;
+		y &= Region.CHUNKS.MASK;
+		z &= Region.CHUNKS.MASK;
+		
+		final Integer key = SpoutRegion.getChunkKey(x, y, z);
+		
+		SpoutChunkLoadFuture future = pending.get(key);
+		if (future != null) {
+			return future;
+		}
+		
+		future = new SpoutChunkLoadFuture(x, y, z, loadopt);
+		SpoutChunkLoadFuture old = pending.putIfAbsent(key, future);
+		if (old != null) {
+			return old;
+		}
+		
+		final SpoutChunkLoadFuture finalFuture = future;
+		try {
+			pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					load(finalFuture);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			pending.remove(key, future);
+			future.fail(e);
+		}
+		return future;
+	}
+	
+	private void load(SpoutChunkLoadFuture future) {
+		final int x = future.getX();
+		final int y = future.getY();
+		final int z = future.getZ();
+		final LoadOption loadopt = future.getLoadOption();
+		
+		try {
+			if (region.getChunk(x, y, z, LoadOption.NO_LOAD) == null) {
+				boolean fileExists = region.inputStreamExists(x, y, z);
+				
+				if (loadopt.loadIfNeeded() && fileExists) {
+					ChunkRecord record = null;
+					try {
+						record = ChunkFiles.readChunk(region.getChunkInputStream(x, y, z));
+					} catch (IOException e) {
+						Spout.getLogger().log(Level.SEVERE, "Unable to read chunk at (" + x + ", " + y + ", " + z + ") in " + region, e);
+					}
+					
+					if (record == null) {
+						logRegenerating(x, y, z);
+						fileExists = false;
+					} else {
+						future.setRecord(record);
+					}
+				}
+				
+				if (loadopt.generateIfNeeded() && !fileExists) {
+					region.getRegionGenerator().generateColumn(x, z, false, true);
+				}
+			}
+		} catch (Throwable t) {
+			pending.remove(SpoutRegion.getChunkKey(x, y, z), future);
+			future.fail(t);
+			return;
+		}
+		
+		loaded.add(future);
+	}
+	
+	private void generate(SpoutChunkLoadFuture future) {
+		try {
+			region.getRegionGenerator().generateColumn(future.getX(), future.getZ(), false, true);
+		} catch (Throwable t) {
+			pending.remove(SpoutRegion.getChunkKey(future.getX(), future.getY(), future.getZ()), future);
+			future.fail(t);
+			return;
+		}
+		loaded.add(future);
+	}
+	
+	private void logRegenerating(int x, int y, int z) {
+		Spout.getLogger().severe("Unable to load chunk at location " + (region.getChunkX() + x) + ", " + (region.getChunkY() + y) + ", " + (region.getChunkZ() + z) + " in region " + region + ", regenerating chunks");
+	}
+	
+	/**
+	 * Creates the chunks which have finished decoding, installs them into the region and completes their futures.<br>
+	 * <br>
+	 * This must be called by the region thread during stage 1.  If a decoded chunk can't be created, and the load option allows it,
+	 * the column is regenerated on the I/O pool and the future is completed on a later tick.
+	 */
+	public void installLoadedChunks() {
+		TickStage.checkStage(TickStage.STAGE1);
+		SpoutChunkLoadFuture future;
+		while ((future = loaded.poll()) != null) {
+			final int x = future.getX();
+			final int y = future.getY();
+			final int z = future.getZ();
+			try {
+				SpoutChunk newChunk = null;
+				ChunkDataForRegion dataForRegion = null;
+				ChunkRecord record = future.getRecord();
+				if (record != null) {
+					future.setRecord(null);
+					dataForRegion = new ChunkDataForRegion();
+					try {
+						newChunk = ChunkFiles.createChunk(region, x, y, z, dataForRegion, record);
+					} catch (IOException e) {
+						Spout.getLogger().log(Level.SEVERE, "Unable to load chunk at (" + x + ", " + y + ", " + z + ") in " + region, e);
+					}
+					if (newChunk == null && future.getLoadOption().generateIfNeeded()) {
+						logRegenerating(x, y, z);
+						final SpoutChunkLoadFuture finalFuture = future;
+						pool.submit(new Runnable() {
+							@Override
+							public void run() {
+								generate(finalFuture);
+							}
+						});
+						continue;
+					}
+				}
+				pending.remove(SpoutRegion.getChunkKey(x, y, z), future);
+				future.complete(region.installLoadedChunk(newChunk, x, y, z, dataForRegion, future.getLoadOption()));
+			} catch (Throwable t) {
+				pending.remove(SpoutRegion.getChunkKey(x, y, z), future);
+				future.fail(t);
+			}
+		}
+	}
+	
+	/**
+	 * Gets if a load is pending for the given chunk
+	 * @param x the chunk x coordinate
+	 * @param y the chunk y coordinate
+	 * @param z the chunk z coordinate
+	 * @return true if a load request is pending
+	 */
+	public boolean isLoadPending(int x, int y, int z) {
+		return pending.containsKey(SpoutRegion.getChunkKey(x, y, z));
+	}
+	
+	public static void shutdownExecutorService() {
+		pool.shutdown();
+	}
+	
+	public static void awaitExecutorServiceTermination() {
+		boolean interrupted = false;
+		try {
+			boolean done = false;
+			while (!done) {
+				try {
+					if (pool.awaitTermination(10, TimeUnit.SECONDS)) {
+						done = true;
+						break;
+					}
+					Spout.getLogger().info("Waited 10 seconds for region chunk loader pool to shutdown");
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "RegionChunkLoader{" + region + "}";
+	}
+
+}
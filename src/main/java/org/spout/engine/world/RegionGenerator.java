@@ -28,6 +28,10 @@ package org.spout.engine.world;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -61,6 +65,20 @@ public class RegionGenerator implements Named {
 					new NamedThreadFactory("RegionGenerator - async pool", 
 					true));
 	
+	private final static int PREFETCH_QUEUE_LIMIT = 256;
+	
+	/**
+	 * Generation ahead of observers runs on its own small pool with a bounded queue, so it never delays demand generation
+	 */
+	private final static ThreadPoolExecutor prefetchPool = 
+			new ThreadPoolExecutor(
+					Math.max(1, Runtime.getRuntime().availableProcessors() >> 2), 
+					Math.max(1, Runtime.getRuntime().availableProcessors() >> 2), 
+					0L, TimeUnit.MILLISECONDS, 
+					new LinkedBlockingQueue<Runnable>(PREFETCH_QUEUE_LIMIT), 
+					new NamedThreadFactory("RegionGenerator - prefetch pool", 
+					true));
+	
 	private final SpoutRegion region;
 	private final SpoutWorld world;
 	private final Lock[][] columnLocks;
@@ -314,7 +332,61 @@ public class RegionGenerator implements Named {
 		}
 	}
 	
+	/**
+	 * Queues a column for generation ahead of when it is needed.<br>
+	 * <br>
+	 * The task runs on the prefetch pool, which is separate from the pool used for demand generation.  It does nothing if the column 
+	 * is already loaded, saved or being generated.  If the prefetch queue is full the column is not queued.
+	 * 
+	 * @param world the world
+	 * @param chunkX the x chunk coordinate of the column
+	 * @param chunkZ the z chunk coordinate of the column
+	 * @return the future for the queued task, or null if the prefetch queue is full
+	 */
+	public static Future<?> prefetchColumn(final SpoutWorld world, final int chunkX, final int chunkZ) {
+		try {
+			return prefetchPool.submit(new Runnable() {
+				@Override
+				public void run() {
+					if (world.getColumn(chunkX, chunkZ, LoadOption.NO_LOAD) != null || world.columnExists(chunkX, chunkZ)) {
+						return;
+					}
+					int[][] height = world.getGenerator().getSurfaceHeight(world, chunkX, chunkZ);
+					int chunkY = height[7][7] >> Chunk.BLOCKS.BITS;
+					SpoutRegion region;
+					SnapshotLock lock = Spout.getScheduler().getSnapshotLock();
+					lock.readLock(world);
+					try {
+						region = world.getRegionFromChunk(chunkX, chunkY, chunkZ, LoadOption.LOAD_GEN);
+					} finally {
+						lock.readUnlock(world);
+					}
+					if (region == null || region.getChunk(chunkX, chunkY, chunkZ, LoadOption.NO_LOAD) != null || region.inputStreamExists(chunkX, chunkY, chunkZ)) {
+						return;
+					}
+					RegionGenerator generator = region.getRegionGenerator();
+					if (generator != null) {
+						generator.generateColumn(chunkX, chunkZ, false, false);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Cancels a column queued by {@link #prefetchColumn(SpoutWorld, int, int)} and removes it from the prefetch queue, if it has not started
+	 * @param future the future for the queued task
+	 */
+	public static void cancelPrefetch(Future<?> future) {
+		if (future.cancel(false) && future instanceof Runnable) {
+			prefetchPool.remove((Runnable) future);
+		}
+	}
+
 	public static void shutdownExecutorService() {
+		prefetchPool.shutdownNow();
 		pool.shutdown();
 	}
 	
@@ -324,7 +396,7 @@ public class RegionGenerator implements Named {
 			boolean done = false;
 			while (!done) {
 				try {
-					if (pool.awaitTermination(10, TimeUnit.SECONDS)) {
+					if (pool.awaitTermination(10, TimeUnit.SECONDS) && prefetchPool.awaitTermination(10, TimeUnit.SECONDS)) {
 						done = true;
 						break;
 					}
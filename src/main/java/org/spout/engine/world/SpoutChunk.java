@@ -110,6 +110,7 @@ import org.spout.engine.SpoutClient;
 import org.spout.engine.SpoutConfiguration;
 import org.spout.engine.entity.SpoutEntity;
 import org.spout.engine.entity.SpoutPlayer;
+import org.spout.engine.protocol.builtin.CachedChunkData;
 import org.spout.engine.scheduler.SpoutScheduler;
 import org.spout.engine.util.thread.snapshotable.Snapshotable;
 import org.spout.engine.world.physics.PhysicsQueue;
@@ -217,6 +218,7 @@ public class SpoutChunk extends Chunk implements Snapshotable, Modifiable {
 	private final ChunkSetQueueElement<SpoutChunk> populationQueueElement;
 	private final ChunkSetQueueElement<SpoutChunk> populationPriorityQueueElement;
 	private final ChunkSetQueueElement<SpoutChunk> chunkObserversDirtyQueueElement;
+	private final ChunkSetQueueElement<SpoutChunk> expiredObserversQueueElement;
 	private final ChunkSetQueueElement<SpoutChunk> localPhysicsChunkQueueElement;
 	private final ChunkSetQueueElement<SpoutChunk> globalPhysicsChunkQueueElement;
 	private final ChunkSetQueueElement<SpoutChunk> dirtyChunkQueueElement;
@@ -236,6 +238,15 @@ public class SpoutChunk extends Chunk implements Snapshotable, Modifiable {
 	private SpoutChunkSnapshot renderSnapshotCache;
 
 	private int generationIndex = -1;
+
+	/**
+	 * Incremented whenever the chunk is queued as dirty, used to detect stale cached network data
+	 */
+	private final AtomicInteger modificationGeneration = new AtomicInteger(0);
+	/**
+	 * Cached network data for this chunk, managed by the network synchronizer
+	 */
+	private final AtomicReference<CachedChunkData> networkCache = new AtomicReference<CachedChunkData>(null);
 	
 	protected void setIsInViewDistance(boolean value) {
 		if (value && isBlockUniform() && getBlockMaterial(0, 0, 0) == BlockMaterial.AIR) {
@@ -326,6 +337,7 @@ public class SpoutChunk extends Chunk implements Snapshotable, Modifiable {
 		this.populationQueueElement = new ChunkSetQueueElement<SpoutChunk>(getRegion().populationQueue, this);
 		this.populationPriorityQueueElement = new ChunkSetQueueElement<SpoutChunk>(getRegion().populationPriorityQueue, this);
 		this.chunkObserversDirtyQueueElement = new ChunkSetQueueElement<SpoutChunk>(getRegion().chunkObserversDirtyQueue, this, true);
+		this.expiredObserversQueueElement = new ChunkSetQueueElement<SpoutChunk>(getRegion().expiredObserversQueue, this);
 		this.localPhysicsChunkQueueElement = new ChunkSetQueueElement<SpoutChunk>(getRegion().localPhysicsChunkQueue, this);
 		this.globalPhysicsChunkQueueElement = new ChunkSetQueueElement<SpoutChunk>(getRegion().globalPhysicsChunkQueue, this);
 		this.dirtyChunkQueueElement = new ChunkSetQueueElement<SpoutChunk>(getRegion().dirtyChunkQueue, this);
@@ -888,6 +900,7 @@ public class SpoutChunk extends Chunk implements Snapshotable, Modifiable {
 			}
 		}
 		expiredObserversQueue.add((SpoutEntity) entity);
+		expiredObserversQueueElement.add();
 		if (!isObserved()) {
 			addToRegionUnloadQueue();
 		}
@@ -1023,7 +1036,7 @@ public class SpoutChunk extends Chunk implements Snapshotable, Modifiable {
 		return blockStore.getMinDirty();
 	}
 
-	protected Vector3 getDirtyBlock(int i) {
+	public Vector3 getDirtyBlock(int i) {
 		return blockStore.getDirtyBlock(i);
 	}
 
@@ -1609,6 +1622,9 @@ public class SpoutChunk extends Chunk implements Snapshotable, Modifiable {
 						newHolder.add(c);
 					}
 				}
+				if (oldHolder != null || !blockComponents.isEmpty()) {
+					getRegion().setComponentChunk(this, !blockComponents.isEmpty());
+				}
 			}
 			return oldState;
 		}
@@ -1621,6 +1637,7 @@ public class SpoutChunk extends Chunk implements Snapshotable, Modifiable {
 			if (value == null && create) {
 				value = new BlockComponentOwner(NibbleQuadHashed.key1(packed), NibbleQuadHashed.key2(packed), NibbleQuadHashed.key3(packed), getWorld());
 				blockComponents.put(packed, value);
+				getRegion().setComponentChunk(this, true);
 			}
 			return value;
 		}
@@ -1929,8 +1946,27 @@ public class SpoutChunk extends Chunk implements Snapshotable, Modifiable {
 	}
 
 	protected void queueDirty() {
+		modificationGeneration.incrementAndGet();
 		dirtyChunkQueueElement.add();
 	}
+
+	/**
+	 * Gets the modification generation of this chunk.  The generation changes whenever the chunk is queued as dirty, which
+	 * happens when a block in the chunk is changed or touched, or the chunk is marked as render or light dirty.  It also changes whenever
+	 * a light buffer of the chunk is handed out for lighting, since lighting managers write to light buffers without queueing the chunk as dirty.
+	 * @return the modification generation
+	 */
+	public int getModificationGeneration() {
+		return modificationGeneration.get();
+	}
+
+	/**
+	 * Gets the reference used to cache encoded network data for this chunk
+	 * @return the network cache reference
+	 */
+	public AtomicReference<CachedChunkData> getNetworkCache() {
+		return networkCache;
+	}
 	
 	protected void queueNew() {
 		newChunkQueueElement.add();
@@ -2065,6 +2101,9 @@ public class SpoutChunk extends Chunk implements Snapshotable, Modifiable {
 	@Override
 	public CuboidLightBuffer getLightBuffer(short id) {
 		//TickStage.checkStage(TickStage.LIGHTING);
+		// Lighting managers write through the buffers they get here, including the buffers of neighbouring chunks, without queueing the chunk as dirty.
+		// Chunks are not sent during the lighting stage, so changing the generation before the write is enough to invalidate the network cache.
+		modificationGeneration.incrementAndGet();
 		return setIfAbsentLightBuffer(id, null);
 	}
 
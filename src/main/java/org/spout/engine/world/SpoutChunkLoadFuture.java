@@ -0,0 +1,91 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.world;
+
+import org.spout.api.geo.LoadOption;
+import org.spout.api.util.future.SimpleFuture;
+import org.spout.engine.filesystem.versioned.ChunkFiles.ChunkRecord;
+
+/**
+ * A pending chunk load request for a region.<br>
+ * <br>
+ * The chunk is read and decoded on the chunk load pool.  The chunk is created
+ * from the decoded record and the result is set once the chunk has been
+ * installed into its region.
+ */
+public class SpoutChunkLoadFuture extends SimpleFuture<SpoutChunk> {
+	
+	private final int x;
+	private final int y;
+	private final int z;
+	private final LoadOption loadopt;
+	private ChunkRecord record = null;
+	
+	public SpoutChunkLoadFuture(int x, int y, int z, LoadOption loadopt) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.loadopt = loadopt;
+	}
+	
+	public int getX() {
+		return x;
+	}
+	
+	public int getY() {
+		return y;
+	}
+	
+	public int getZ() {
+		return z;
+	}
+	
+	public LoadOption getLoadOption() {
+		return loadopt;
+	}
+	
+	/**
+	 * Gets the chunk record decoded from disk, or null if the chunk was not read from disk
+	 * @return the decoded record
+	 */
+	protected ChunkRecord getRecord() {
+		return record;
+	}
+	
+	protected void setRecord(ChunkRecord record) {
+		this.record = record;
+	}
+	
+	protected void complete(SpoutChunk chunk) {
+		super.setResult(chunk);
+	}
+	
+	protected void fail(Throwable t) {
+		super.setThrowable(t);
+	}
+
+}
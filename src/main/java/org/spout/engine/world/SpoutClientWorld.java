@@ -66,6 +66,10 @@ public class SpoutClientWorld extends SpoutWorld {
 		getRegionFromBlock(chunkX, chunkY, chunkZ, LoadOption.LOAD_GEN).addChunk(chunkX, chunkY, chunkZ, blockIds, blockData).render();
 	}
 	
+	public void addChunk(int chunkX, int chunkY, int chunkZ, int[] palette, int blockArrayWidth, int[] variableWidthBlockArray, short[] lightManagerIds, byte[][] lightData) {
+		getRegionFromBlock(chunkX, chunkY, chunkZ, LoadOption.LOAD_GEN).addChunk(chunkX, chunkY, chunkZ, palette, blockArrayWidth, variableWidthBlockArray, lightManagerIds, lightData).render();
+	}
+	
 	public void removeChunk(int chunkX, int chunkY, int chunkZ) {
 		getRegionFromBlock(chunkX, chunkY, chunkZ, LoadOption.LOAD_GEN).removeChunk(chunkX, chunkY, chunkZ);
 	}
@@ -29,8 +29,11 @@ package org.spout.engine.world;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.spout.api.generator.biome.BiomeGenerator;
@@ -39,6 +42,8 @@ import org.spout.api.geo.LoadOption;
 import org.spout.api.geo.cuboid.Chunk;
 import org.spout.api.geo.cuboid.Region;
 import org.spout.api.material.BlockMaterial;
+import org.spout.api.material.Material;
+import org.spout.api.material.MaterialRegistry;
 import org.spout.api.material.block.BlockFullState;
 import org.spout.api.math.BitSize;
 import org.spout.api.scheduler.TickStage;
@@ -52,21 +57,31 @@ public class SpoutColumn {
 	 * Stores the size of the amount of blocks in this Column
 	 */
 	public static BitSize BLOCKS = Chunk.BLOCKS;
+	/**
+	 * The number of block columns in a Column
+	 */
+	public static final int AREA = BLOCKS.SIZE * BLOCKS.SIZE;
+	/**
+	 * The topmost block state used when the topmost block is unknown
+	 */
+	public static final int NO_MATERIAL = Integer.MIN_VALUE;
 
 	private final SpoutWorld world;
 	private final int x;
 	private final int z;
 	private final AtomicInteger activeChunks = new AtomicInteger(0);
-	private final AtomicInteger[][] heightMap;
-	private final int[][] heightMapSnapshot = new int[BLOCKS.SIZE][BLOCKS.SIZE];
+	private final AtomicIntegerArray heightMap = new AtomicIntegerArray(AREA);
+	private final int[] heightMapSnapshot = new int[AREA];
 	private final AtomicInteger dirtyColumns = new AtomicInteger(0);
 	private final AtomicInteger lowestY = new AtomicInteger();
 	private final AtomicInteger highestY = new AtomicInteger();
 	private final AtomicReference<int[][]> heights = new AtomicReference<int[][]>();
 	private final AtomicBoolean dirty = new AtomicBoolean(false);
-	private final AtomicBoolean dirtyArray[][];
-	private final BlockMaterial[][] topmostBlocks;
+	private final AtomicLongArray dirtyBits = new AtomicLongArray(AREA >> 6);
+	private final int[] topmostBlocks = new int[AREA];
 	private final AtomicReference<BiomeManager> biomes = new AtomicReference<BiomeManager>();
+	private final AtomicInteger heightMapVersion = new AtomicInteger(0);
+	private final AtomicReference<CachedHeightMap> heightMapBuffer = new AtomicReference<CachedHeightMap>();
 	private final SetQueueElement<SpoutColumn> heightDirtyQueue;
 
 	public SpoutColumn(InputStream in, SpoutWorld world, int x, int z) {
@@ -86,18 +101,17 @@ public class SpoutColumn {
 		this.world = world;
 		this.x = x;
 		this.z = z;
-		this.heightMap = new AtomicInteger[BLOCKS.SIZE][BLOCKS.SIZE];
-		this.dirtyArray = new AtomicBoolean[BLOCKS.SIZE][BLOCKS.SIZE];
-		this.topmostBlocks = new BlockMaterial[BLOCKS.SIZE][BLOCKS.SIZE];
 		
 		this.heightDirtyQueue = new ColumnSetQueueElement(world.getColumnDirtyQueue(x >> Region.CHUNKS.BITS, z >> Region.CHUNKS.BITS), this);
 
-		for (int xx = 0; xx < BLOCKS.SIZE; xx++) {
-			for (int zz = 0; zz < BLOCKS.SIZE; zz++) {
-				heightMap[xx][zz] = new AtomicInteger(heights == null ? 0 : heights[xx][zz]);
-				dirtyArray[xx][zz] = new AtomicBoolean(false);
+		if (heights != null) {
+			for (int xx = 0; xx < BLOCKS.SIZE; xx++) {
+				for (int zz = 0; zz < BLOCKS.SIZE; zz++) {
+					heightMap.set(getIndex(xx, zz), heights[xx][zz]);
+				}
 			}
 		}
+		Arrays.fill(topmostBlocks, NO_MATERIAL);
 
 		lowestY.set(Integer.MAX_VALUE);
 
@@ -115,10 +129,8 @@ public class SpoutColumn {
 	}
 	
 	public void copySnapshot() {
-		for (int xx = 0; xx < BLOCKS.SIZE; xx++) {
-			for (int zz = 0; zz < BLOCKS.SIZE; zz++) {
-				heightMapSnapshot[xx][zz] = heightMap[xx][zz].get();
-			}
+		for (int i = 0; i < AREA; i++) {
+			heightMapSnapshot[i] = heightMap.get(i);
 		}
 	}
 
@@ -127,19 +139,20 @@ public class SpoutColumn {
 		if (dirty.compareAndSet(true, false)) {
 			int wx = (this.x << BLOCKS.BITS);
 			int wz = (this.z << BLOCKS.BITS);
-			for (int xx = 0; xx < BLOCKS.SIZE; xx++) {
-				for (int zz = 0; zz < BLOCKS.SIZE; zz++) {
-					if (getDirtyFlag(xx, zz).compareAndSet(true, false)) {
-						int y = getAtomicInteger(xx, zz).get();
-						int wxx = wx + xx;
-						int wzz = wz + zz;
-						Chunk c = world.getChunkFromBlock(wxx, y, wzz, LoadOption.LOAD_ONLY);
-						BlockMaterial bm = null;
-						if (c != null) {
-							 bm = c.getBlockMaterial(wx + xx, y, wz + zz);
-						}
-						topmostBlocks[xx][zz] = bm;
+			for (int w = 0; w < dirtyBits.length(); w++) {
+				long bits = dirtyBits.getAndSet(w, 0L);
+				while (bits != 0) {
+					int index = (w << 6) + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					int y = heightMap.get(index);
+					int wxx = wx + (index >> BLOCKS.BITS);
+					int wzz = wz + (index & BLOCKS.MASK);
+					Chunk c = world.getChunkFromBlock(wxx, y, wzz, LoadOption.LOAD_ONLY);
+					BlockMaterial bm = null;
+					if (c != null) {
+						bm = c.getBlockMaterial(wxx, y, wzz);
 					}
+					topmostBlocks[index] = bm == null ? NO_MATERIAL : BlockFullState.getPacked(bm.getId(), bm.getData());
 				}
 			}
 		}
@@ -196,7 +209,7 @@ public class SpoutColumn {
 	}
 	
 	public int getSurfaceHeight(int x, int z) {
-		final int height = getAtomicInteger(x, z).get();
+		final int height = heightMap.get(getIndex(x, z));
 		if (height != Integer.MIN_VALUE) {
 			// height known
 			return height;
@@ -207,10 +220,12 @@ public class SpoutColumn {
 
 	public BlockMaterial getTopmostBlock(int x, int z) {
 		TickStage.checkStage(TickStage.SNAPSHOT | TickStage.PRESNAPSHOT);
-		int cx = x & BLOCKS.MASK;
-		int cz = z & BLOCKS.MASK;
-		BlockMaterial m = this.topmostBlocks[cx][cz];
-		return m;
+		int state = topmostBlocks[getIndex(x, z)];
+		if (state == NO_MATERIAL) {
+			return null;
+		}
+		Material m = MaterialRegistry.get(state);
+		return m instanceof BlockMaterial ? (BlockMaterial) m : null;
 	}
 
 	private int getGeneratorHeight(int x, int z) {
@@ -230,31 +245,30 @@ public class SpoutColumn {
 	public void notifyChunkAdded(Chunk c, int x, int z) {
 		int y = c.getBlockY();
 		int maxY = y + Chunk.BLOCKS.SIZE - 1;
-		AtomicInteger v = getAtomicInteger(x, z);
+		int index = getIndex(x, z);
 
-		if (maxY < v.get()) {
+		if (maxY < heightMap.get(index)) {
 			return;
 		}
 
 		if (((SpoutChunk) c).isBlockUniform()) {
 			//simplified version
 			if (!isAir(c, x, maxY, z)) {
-				notifyBlockChange(v, x, maxY, z);
+				notifyBlockChange(index, x, maxY, z);
 			}
 			return;
 		}
 
 		for (int yy = maxY; yy >= y; yy--) {
 			if (!isAir(c, x, yy, z)) {
-				notifyBlockChange(v, x, yy, z);
+				notifyBlockChange(index, x, yy, z);
 				return;
 			}
 		}
 	}
 
 	public void notifyBlockChange(int x, int y, int z) {
-		AtomicInteger v = getAtomicInteger(x, z);
-		notifyBlockChange(v, x, y, z);
+		notifyBlockChange(getIndex(x, z), x, y, z);
 	}
 
 	public int getX() {
@@ -269,21 +283,21 @@ public class SpoutColumn {
 		return world;
 	}
 
-	private void notifyBlockChange(AtomicInteger v, int x, int y, int z) {
+	private void notifyBlockChange(int index, int x, int y, int z) {
 		while (true) {
-			int value = v.get();
+			int value = heightMap.get(index);
 			if (y < value) {
 				return;
 			} else if (y == value) {
-				falling(x, v, z);
+				falling(x, index, z);
 				return;
 			} else {
 				if (!isAir(x, y, z)) {
-					if (!v.compareAndSet(value, y)) {
+					if (!heightMap.compareAndSet(index, value, y)) {
 						continue;
 					}
 					setDirty(x, z);
-					falling(x, v, z);
+					falling(x, index, z);
 					return;
 				} else {
 					return;
@@ -292,16 +306,16 @@ public class SpoutColumn {
 		}
 	}
 
-	private void falling(int x, AtomicInteger v, int z) {
+	private void falling(int x, int index, int z) {
 		boolean dirty = false;
 		try {
 			while (true) {
-				int value = v.get();
+				int value = heightMap.get(index);
 				if (!isAir(x, value, z)) {
 					return;
 				}
 
-				if (v.compareAndSet(value, value - 1)) {
+				if (heightMap.compareAndSet(index, value, value - 1)) {
 					dirty = true;
 				}
 			}
@@ -334,12 +348,36 @@ public class SpoutColumn {
 		return !material.isSurface();
 	}
 
-	public AtomicInteger getAtomicInteger(int x, int z) {
-		return heightMap[x & BLOCKS.MASK][z & BLOCKS.MASK];
+	/**
+	 * Gets the index of a block column in the packed height map and topmost block arrays
+	 * @param x the x coordinate
+	 * @param z the z coordinate
+	 * @return the index
+	 */
+	public static int getIndex(int x, int z) {
+		return ((x & BLOCKS.MASK) << BLOCKS.BITS) | (z & BLOCKS.MASK);
 	}
 
-	private AtomicBoolean getDirtyFlag(int x, int z) {
-		return dirtyArray[x & BLOCKS.MASK][z & BLOCKS.MASK];
+	/**
+	 * Gets the live height map, indexed by {@link #getIndex(int, int)}
+	 * @return the height map
+	 */
+	public AtomicIntegerArray getHeightMap() {
+		return heightMap;
+	}
+
+	private boolean setDirtyFlag(int index) {
+		final int w = index >> 6;
+		final long mask = 1L << (index & 63);
+		while (true) {
+			long bits = dirtyBits.get(w);
+			if ((bits & mask) != 0) {
+				return false;
+			}
+			if (dirtyBits.compareAndSet(w, bits, bits | mask)) {
+				return true;
+			}
+		}
 	}
 	
 	public int fillDirty(int pos, int x[], int[] newHeight, int[] oldHeight, int[] z, int minY, int maxY) {
@@ -347,20 +385,24 @@ public class SpoutColumn {
 		int bx = getX() << BLOCKS.BITS;
 		int bz = getZ() << BLOCKS.BITS;
 
-		for (int xx = 0; xx < BLOCKS.SIZE; xx++) {
-			for (int zz = 0; zz < BLOCKS.SIZE; zz++) {
-				if (getDirtyFlag(xx, zz).get() && heightMapSnapshot[xx][zz] != Integer.MIN_VALUE) {
-					x[pos] = bx + xx;
-					z[pos] = bz + zz;
-					int nh = heightMap[xx][zz].get();
-					int oh = heightMapSnapshot[xx][zz];
-					if ((nh >= maxY && oh >= maxY) || (nh < minY && oh < minY)) {
-						continue;
-					}
-					newHeight[pos] = nh;
-					oldHeight[pos] = oh;
-					pos++;
+		for (int w = 0; w < dirtyBits.length(); w++) {
+			long bits = dirtyBits.get(w);
+			while (bits != 0) {
+				int index = (w << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				int oh = heightMapSnapshot[index];
+				if (oh == Integer.MIN_VALUE) {
+					continue;
 				}
+				int nh = heightMap.get(index);
+				if ((nh >= maxY && oh >= maxY) || (nh < minY && oh < minY)) {
+					continue;
+				}
+				x[pos] = bx + (index >> BLOCKS.BITS);
+				z[pos] = bz + (index & BLOCKS.MASK);
+				newHeight[pos] = nh;
+				oldHeight[pos] = oh;
+				pos++;
 			}
 		}
 		return pos;
@@ -368,14 +410,15 @@ public class SpoutColumn {
 	
 	public int getDirtyColumns() {
 		TickStage.checkStage(TickStage.LIGHTING);
-		return Math.min(256, dirtyColumns.get());
+		return Math.min(AREA, dirtyColumns.get());
 	}
 
 	public void setDirty(int x, int z) {
 		TickStage.checkStage(~TickStage.LIGHTING);
 		dirtyColumns.incrementAndGet();
+		heightMapVersion.incrementAndGet();
 		heightDirtyQueue.add();
-		getDirtyFlag(x, z).set(true);
+		setDirtyFlag(getIndex(x, z));
 		setDirty();
 	}
 	
@@ -394,8 +437,28 @@ public class SpoutColumn {
 		return false;
 	}
 	
+	/**
+	 * Gets a buffer of the live height map.<br>
+	 * <br>
+	 * The buffer is shared between callers and is only rebuilt after a height has changed.
+	 * @return the height map buffer
+	 */
 	public ImmutableHeightMapBuffer getHeightMapBuffer() {
-		return new ImmutableHeightMapBuffer(getX() << BLOCKS.BITS, getZ() << BLOCKS.BITS, SpoutColumn.BLOCKS.SIZE, SpoutColumn.BLOCKS.SIZE, heightMap);
+		// The version is read before the heights, so a buffer can never be cached against a newer version
+		int version = heightMapVersion.get();
+		CachedHeightMap cached = heightMapBuffer.get();
+		if (cached != null && cached.version == version) {
+			return cached.buffer;
+		}
+		int[][] heights = new int[BLOCKS.SIZE][BLOCKS.SIZE];
+		for (int xx = 0; xx < BLOCKS.SIZE; xx++) {
+			for (int zz = 0; zz < BLOCKS.SIZE; zz++) {
+				heights[xx][zz] = heightMap.get(getIndex(xx, zz));
+			}
+		}
+		ImmutableHeightMapBuffer buffer = new ImmutableHeightMapBuffer(getX() << BLOCKS.BITS, getZ() << BLOCKS.BITS, SpoutColumn.BLOCKS.SIZE, SpoutColumn.BLOCKS.SIZE, heights);
+		heightMapBuffer.set(new CachedHeightMap(version, buffer));
+		return buffer;
 	}
 	
 	@Override
@@ -403,6 +466,16 @@ public class SpoutColumn {
 		return "SpoutColumn{ " + getX() + ", " + getZ() + "}";
 	}
 	
+	private static class CachedHeightMap {
+		private final int version;
+		private final ImmutableHeightMapBuffer buffer;
+
+		public CachedHeightMap(int version, ImmutableHeightMapBuffer buffer) {
+			this.version = version;
+			this.buffer = buffer;
+		}
+	}
+
 	private class ColumnSetQueueElement extends SetQueueElement<SpoutColumn> {
 		
 		public ColumnSetQueueElement(SetQueue<SpoutColumn> queue, SpoutColumn value) {
@@ -33,12 +33,18 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
@@ -66,6 +72,7 @@ import static org.spout.api.geo.cuboid.Region.CHUNKS;
 import org.spout.api.geo.discrete.Point;
 import org.spout.api.io.bytearrayarray.BAAWrapper;
 import org.spout.api.lighting.LightingManager;
+import org.spout.api.lighting.LightingRegistry;
 import org.spout.api.material.BlockMaterial;
 import org.spout.api.material.DynamicUpdateEntry;
 import org.spout.api.material.block.BlockFace;
@@ -96,12 +103,14 @@ import org.spout.engine.entity.SpoutPlayer;
 import org.spout.engine.component.entity.SpoutSceneComponent;
 import org.spout.engine.filesystem.ChunkDataForRegion;
 import org.spout.engine.filesystem.versioned.ChunkFiles;
+import org.spout.engine.protocol.builtin.SpoutServerNetworkSynchronizer;
 import org.spout.engine.scheduler.SpoutScheduler;
 import org.spout.engine.scheduler.SpoutTaskManager;
 import org.spout.engine.util.thread.AsyncManager;
 import org.spout.engine.util.thread.snapshotable.SnapshotManager;
 import org.spout.engine.world.dynamic.DynamicBlockUpdate;
 import org.spout.engine.world.dynamic.DynamicBlockUpdateTree;
+import org.spout.engine.world.physics.SweepAndPrune;
 
 public class SpoutRegion extends Region implements AsyncManager {
 	private AtomicInteger numberActiveChunks = new AtomicInteger();
@@ -113,6 +122,18 @@ public class SpoutRegion extends Region implements AsyncManager {
 	
 	@SuppressWarnings("unchecked")
 	public AtomicReference<SpoutChunk>[][][] chunks = new AtomicReference[CHUNKS.SIZE][CHUNKS.SIZE][CHUNKS.SIZE];
+	/**
+	 * The chunks currently installed in this region, so tick stages don't need to scan every chunk slot
+	 */
+	private final Set<SpoutChunk> loadedChunks = Collections.newSetFromMap(new ConcurrentHashMap<SpoutChunk, Boolean>());
+	/**
+	 * The chunks which hold block components
+	 */
+	private final Set<SpoutChunk> componentChunks = Collections.newSetFromMap(new ConcurrentHashMap<SpoutChunk, Boolean>());
+	/**
+	 * The chunks which had expired observers during the previous tick, and need their expired observer sets cleared
+	 */
+	private final List<SpoutChunk> expiredObserverChunks = new ArrayList<SpoutChunk>();
 	/**
 	 * The maximum number of chunks that will be processed for population each
 	 * tick.
@@ -147,10 +168,12 @@ public class SpoutRegion extends Region implements AsyncManager {
 	protected final SetQueue<SpoutChunk> populationQueue = new SetQueue<SpoutChunk>(CHUNKS.VOLUME);
 	protected final SetQueue<SpoutChunk> populationPriorityQueue = new SetQueue<SpoutChunk>(CHUNKS.VOLUME);
 	private final RegionGenerator generator;
+	private final RegionChunkLoader chunkLoader;
 	private final SpoutTaskManager taskManager;
 	private final SpoutScheduler scheduler;
 	private final LinkedHashMap<SpoutPlayer, TByteTripleHashSet> observers = new LinkedHashMap<SpoutPlayer, TByteTripleHashSet>();
 	protected final SetQueue<SpoutChunk> chunkObserversDirtyQueue = new SetQueue<SpoutChunk>(CHUNKS.VOLUME);
+	protected final SetQueue<SpoutChunk> expiredObserversQueue = new SetQueue<SpoutChunk>(CHUNKS.VOLUME);
 	protected final SetQueue<SpoutChunk> localPhysicsChunkQueue = new SetQueue<SpoutChunk>(CHUNKS.VOLUME);
 	protected final SetQueue<SpoutChunk> globalPhysicsChunkQueue = new SetQueue<SpoutChunk>(CHUNKS.VOLUME);
 	protected final SetQueue<SpoutChunk> dirtyChunkQueue = new SetQueue<SpoutChunk>(CHUNKS.VOLUME);
@@ -159,8 +182,19 @@ public class SpoutRegion extends Region implements AsyncManager {
 	private final DynamicBlockUpdateTree dynamicBlockTree;
 	private List<DynamicBlockUpdate> multiRegionUpdates = null;
 	private int lightingUpdates = 0;
-	private ImmutableHeightMapBuffer heightMapBuffer = null;
-	private ImmutableCuboidBlockMaterialBuffer blockMaterialBuffer = null;
+	/**
+	 * The fixed time step of dynamics simulation, in milliseconds, and the most steps run in a single tick
+	 */
+	private static final long DYNAMICS_STEP = SpoutScheduler.PULSE_EVERY;
+	private static final int MAX_DYNAMICS_STEPS = 4;
+	// time not yet simulated, in milliseconds
+	private long dynamicsTime = 0;
+	// buffers reused by each dynamics step
+	private final List<SpoutEntity> dynamicEntities = new ArrayList<SpoutEntity>();
+	private final List<BoundingBox> nearbyAABB = new ArrayList<BoundingBox>();
+	private final SweepAndPrune broadPhase = new SweepAndPrune();
+	private ImmutableHeightMapBuffer[] heightMapBuffers = null;
+	private ImmutableCuboidBlockMaterialBuffer[] blockMaterialBuffers = null;
 	private ChunkCuboidLightBufferWrapper<?>[] lightBuffers = null;
 	private final AtomicReference<SpoutRegion>[][][] neighbours;
 
@@ -200,9 +234,11 @@ public class SpoutRegion extends Region implements AsyncManager {
 
 		if (Spout.getPlatform() == Platform.CLIENT) {
 			this.generator = null;
+			this.chunkLoader = null;
 			this.chunkStore = null;
 		} else {
 			this.generator = new RegionGenerator(this, 4);
+			this.chunkLoader = new RegionChunkLoader(this);
 			this.chunkStore = ((SpoutServerWorld) world).getRegionFile(getX(), getY(), getZ());
 		}
 		taskManager = new SpoutTaskManager(world.getEngine().getScheduler(), null, this, world.getAge());
@@ -288,6 +324,61 @@ public class SpoutRegion extends Region implements AsyncManager {
 		return c;
 	}
 
+	/**
+	 * Requests a chunk without blocking the calling thread.<br>
+	 * <br>
+	 * If the chunk is not already loaded, it is read from disk, or generated, on the chunk load pool.  
+	 * The chunk is installed into the region by the region thread during the next stage 1.
+	 * 
+	 * @param x the chunk x coordinate
+	 * @param y the chunk y coordinate
+	 * @param z the chunk z coordinate
+	 * @param loadopt the load option
+	 * @return a future for the chunk, the result is null if the chunk could not be loaded or generated
+	 */
+	public Future<SpoutChunk> getChunkAsync(int x, int y, int z, LoadOption loadopt) {
+		x &= CHUNKS.MASK;
+		y &= CHUNKS.MASK;
+		z &= CHUNKS.MASK;
+
+		final SpoutChunk chunk = chunks[x][y][z].get();
+		if (chunk != null) {
+			checkChunkLoaded(chunk, loadopt);
+		}
+		
+		if (chunk != null || chunkLoader == null || !loadopt.loadIfNeeded()) {
+			SpoutChunkLoadFuture future = new SpoutChunkLoadFuture(x, y, z, loadopt);
+			// Client chunks are never read from disk, so there is nothing to wait for
+			future.complete(chunk == null && chunkLoader == null ? getChunk(x, y, z, loadopt) : chunk);
+			return future;
+		}
+
+		return chunkLoader.requestChunk(x, y, z, loadopt);
+	}
+
+	/**
+	 * Installs a chunk which was loaded by the chunk load pool
+	 * @param newChunk the chunk read from disk, or null if the chunk was not read from disk
+	 * @param x the chunk x coordinate
+	 * @param y the chunk y coordinate
+	 * @param z the chunk z coordinate
+	 * @param dataForRegion the entity and dynamic update data read with the chunk
+	 * @param loadopt the load option of the request
+	 * @return the chunk now in the region, or null if there is none
+	 */
+	protected SpoutChunk installLoadedChunk(SpoutChunk newChunk, int x, int y, int z, ChunkDataForRegion dataForRegion, LoadOption loadopt) {
+		SpoutChunk c;
+		if (newChunk != null) {
+			c = setChunk(newChunk, x, y, z, dataForRegion, false);
+		} else {
+			c = chunks[x][y][z].get();
+		}
+		if (c != null) {
+			checkChunkLoaded(c, loadopt);
+		}
+		return c;
+	}
+
 	@Override
 	public SpoutChunk getChunkFromBlock(Vector3 position) {
 		return this.getChunkFromBlock(position, LoadOption.LOAD_GEN);
@@ -338,6 +429,7 @@ public class SpoutRegion extends Region implements AsyncManager {
 					newChunk.setNeighbourRenderDirty(true);
 				}
 				numberActiveChunks.incrementAndGet();
+				loadedChunks.add(newChunk);
 				if (dataForRegion != null) {
 					for (SpoutEntity entity : dataForRegion.loadedEntities) {
 						entity.setupInitialChunk(entity.getScene().getTransform(), LoadOption.NO_LOAD);
@@ -385,6 +477,8 @@ public class SpoutRegion extends Region implements AsyncManager {
 		boolean success = current.compareAndSet(currentChunk, null);
 		if (success) {
 			int num = numberActiveChunks.decrementAndGet();
+			loadedChunks.remove(currentChunk);
+			componentChunks.remove(currentChunk);
 
 			for (Entity e : currentChunk.getLiveEntities()) {
 				e.remove();
@@ -425,16 +519,7 @@ public class SpoutRegion extends Region implements AsyncManager {
 
 	public boolean isEmpty() {
 		TickStage.checkStage(TickStage.SNAPSHOT);
-		for (int dx = 0; dx < CHUNKS.SIZE; dx++) {
-			for (int dy = 0; dy < CHUNKS.SIZE; dy++) {
-				for (int dz = 0; dz < CHUNKS.SIZE; dz++) {
-					if (chunks[dx][dy][dz].get() != null) {
-						return false;
-					}
-				}
-			}
-		}
-		return true;
+		return loadedChunks.isEmpty();
 	}
 
 	/**
@@ -455,30 +540,16 @@ public class SpoutRegion extends Region implements AsyncManager {
 	@Override
 	@DelayedWrite
 	public void save() {
-		for (int dx = 0; dx < CHUNKS.SIZE; dx++) {
-			for (int dy = 0; dy < CHUNKS.SIZE; dy++) {
-				for (int dz = 0; dz < CHUNKS.SIZE; dz++) {
-					SpoutChunk chunk = chunks[dx][dy][dz].get();
-					if (chunk != null) {
-						chunk.saveNoMark();
-					}
-				}
-			}
+		for (SpoutChunk chunk : loadedChunks) {
+			chunk.saveNoMark();
 		}
 		markForSaveUnload();
 	}
 
 	@Override
 	public void unload(boolean save) {
-		for (int dx = 0; dx < CHUNKS.SIZE; dx++) {
-			for (int dy = 0; dy < CHUNKS.SIZE; dy++) {
-				for (int dz = 0; dz < CHUNKS.SIZE; dz++) {
-					SpoutChunk chunk = chunks[dx][dy][dz].get();
-					if (chunk != null) {
-						chunk.unloadNoMark(save);
-					}
-				}
-			}
+		for (SpoutChunk chunk : loadedChunks) {
+			chunk.unloadNoMark(save);
 		}
 		markForSaveUnload();
 	}
@@ -508,14 +579,9 @@ public class SpoutRegion extends Region implements AsyncManager {
 		while ((cube = saveMarkedQueue.poll()) != null) {
 			if (Spout.getPlatform() == Platform.SERVER) {
 				if (cube == this) {
-					for (int dx = 0; dx < CHUNKS.SIZE; dx++) {
-						for (int dy = 0; dy < CHUNKS.SIZE; dy++) {
-							for (int dz = 0; dz < CHUNKS.SIZE; dz++) {
-								SpoutChunk c = getChunk(dx, dy, dz, LoadOption.NO_LOAD);
-								if (processChunkSaveUnload(c)) {
-									empty = true;
-								}
-							}
+					for (SpoutChunk c : loadedChunks) {
+						if (processChunkSaveUnload(c)) {
+							empty = true;
 						}
 					}
 					// No point in checking any others, since all processed
@@ -568,6 +634,8 @@ public class SpoutRegion extends Region implements AsyncManager {
 		snapshotManager.copyAllSnapshots();
 
 		if (empty) {
+			// The entities removed with the last chunk are never finalized, so they leave the world index here
+			entityManager.unindexAll();
 			source.removeRegion(this);
 		}
 	}
@@ -589,36 +657,46 @@ public class SpoutRegion extends Region implements AsyncManager {
 	}
 
 	private void updateAutosave() {
-		for (int dx = 0; dx < CHUNKS.SIZE; dx++) {
-			for (int dy = 0; dy < CHUNKS.SIZE; dy++) {
-				for (int dz = 0; dz < CHUNKS.SIZE; dz++) {
-					SpoutChunk chunk = chunks[dx][dy][dz].get();
-					if (chunk != null && chunk.isLoaded()) {
-						if (chunk.getAutosaveTicks() > 1) {
-							chunk.setAutosaveTicks(chunk.getAutosaveTicks() - 1);
-						} else if (chunk.getAutosaveTicks() == 1) {
-							chunk.setAutosaveTicks(0);
-							chunk.save();
-						}
-					}
+		// Autosaves are deferred by a tick while the saving thread is backlogged
+		boolean backlogged = WorldSavingThread.isBacklogged();
+		for (SpoutChunk chunk : loadedChunks) {
+			if (chunk.isLoaded()) {
+				if (chunk.getAutosaveTicks() > 1) {
+					chunk.setAutosaveTicks(chunk.getAutosaveTicks() - 1);
+				} else if (chunk.getAutosaveTicks() == 1 && !backlogged) {
+					chunk.setAutosaveTicks(0);
+					chunk.save();
 				}
 			}
 		}
 	}
 
 	private void updateBlockComponents(float dt) {
-		for (int dx = 0; dx < CHUNKS.SIZE; dx++) {
-			for (int dy = 0; dy < CHUNKS.SIZE; dy++) {
-				for (int dz = 0; dz < CHUNKS.SIZE; dz++) {
-					SpoutChunk chunk = chunks[dx][dy][dz].get();
-					if (chunk != null && chunk.isLoaded()) {
-						chunk.tickBlockComponents(dt);
-					}
-				}
+		Iterator<SpoutChunk> itr = componentChunks.iterator();
+		while (itr.hasNext()) {
+			SpoutChunk chunk = itr.next();
+			if (!chunk.isLoaded()) {
+				itr.remove();
+			} else if (chunks[chunk.getX() & CHUNKS.MASK][chunk.getY() & CHUNKS.MASK][chunk.getZ() & CHUNKS.MASK].get() == chunk) {
+				// Chunks which have block components loaded, but are not installed yet, are skipped
+				chunk.tickBlockComponents(dt);
 			}
 		}
 	}
 
+	/**
+	 * Sets if a chunk holds block components, and so needs block component ticks
+	 * @param chunk the chunk
+	 * @param hasComponents true if the chunk holds at least one block component
+	 */
+	protected void setComponentChunk(SpoutChunk chunk, boolean hasComponents) {
+		if (hasComponents) {
+			componentChunks.add(chunk);
+		} else {
+			componentChunks.remove(chunk);
+		}
+	}
+
 	private void updateEntities(float dt) {
 		for (SpoutEntity ent : entityManager.getAll()) {
 			try {
@@ -650,10 +728,16 @@ public class SpoutRegion extends Region implements AsyncManager {
 						int nyy = ny + toPopulate.getY();
 						for (int nz = -1; nz <= 1; nz++) {
 							int nzz = nz + toPopulate.getZ();
-							Chunk c = getWorld().getChunk(nxx, nyy, nzz, LoadOption.LOAD_ONLY);
+							Chunk c = getWorld().getChunk(nxx, nyy, nzz, LoadOption.NO_LOAD);
 							if (c == null) {
 								surrounded = false;
-								getWorld().queueChunkForGeneration(new Vector3(nxx, nyy, nzz));
+								SpoutRegion r = getWorld().getRegionFromChunk(nxx, nyy, nzz, LoadOption.NO_LOAD);
+								if (r != null && r.inputStreamExists(nxx, nyy, nzz)) {
+									// Stored chunks are loaded, only missing chunks are generated
+									getWorld().getChunkAsync(nxx, nyy, nzz, LoadOption.LOAD_ONLY);
+								} else {
+									getWorld().queueChunkForGeneration(new Vector3(nxx, nyy, nzz));
+								}
 							}
 						}
 					}
@@ -694,147 +778,223 @@ public class SpoutRegion extends Region implements AsyncManager {
 
 	/**
 	 * Updates physics in this region
-	 * Steps simulation forward and finally alerts the API in components.
-	 * @param dt
+	 * Steps simulation forward by fixed time steps and finally alerts the API in components.
+	 * @param delta the time since the last tick, in milliseconds
 	 */
-	private void updateDynamics(float dt) {
-		dt = 1F/20F; //for testing
+	private void updateDynamics(long delta) {
+		dynamicsTime = Math.min(dynamicsTime + delta, DYNAMICS_STEP * MAX_DYNAMICS_STEPS);
+		if (dynamicsTime < DYNAMICS_STEP) {
+			return;
+		}
+		dynamicEntities.clear();
 		for (SpoutEntity entity : entityManager.getAllLive()) {
-			if (!entity.isRemoved()) {
+			if (!entity.isRemoved() && ((SpoutSceneComponent) entity.getScene()).isActivated()) {
+				dynamicEntities.add(entity);
+			}
+		}
+		final float dt = DYNAMICS_STEP / 1000F;
+		while (dynamicsTime >= DYNAMICS_STEP) {
+			dynamicsTime -= DYNAMICS_STEP;
+			broadPhase.clear();
+			for (SpoutEntity entity : dynamicEntities) {
 				SpoutSceneComponent scene = (SpoutSceneComponent) entity.getScene();
-				if (scene.isActivated()) {
-					//TODO: This is a poor linear approximation of acceleration merely to prove it works
-					//need to switch to proper numerical approximation of derivatives, e.g Runge–Kutta methods
-					final Vector3 forces = scene.getRawForces().add(scene.getRawImpulses());
-					final Vector3 acceleration = forces.divide(scene.getMass()).add(0, -9.81F, 0);
-					final Vector3 prevVelocity = scene.getRawMovementVelocity();
-
-					/* Calculate the new position*/
-
-					//TODO: need to detect if dt is too large and will result in tunneling, 
-					// and compensate with multiple timesteps to reduce traveled distance per step
-
-					//Eular linear approximation: s = ut + 0.5at^2
-					// s - new position
-					// u - velocity
-					// t - timestep
-					// a - acceleration
-
-					final Vector3 movement = prevVelocity.multiply(dt).add(acceleration.multiply(dt * dt).divide(2));
-					//final Point position = scene.getTransformLive().getPosition();
-					Point newPosition = scene.getTransformLive().getPosition().add(movement);
-					final BoundingBox volume = scene.getVolume();
-					//final BoundingBox oldVolume = volume.clone().offset(position);
-					BoundingBox worldVolume = volume.clone().offset(newPosition);
-					final int bx = newPosition.getBlockX();
-					final int by = newPosition.getBlockY();
-					final int bz = newPosition.getBlockZ();
-					final int rangeX = (int) Math.ceil(volume.getMax().getX() - volume.getMin().getX());
-					final int rangeY = (int) Math.ceil(volume.getMax().getY() - volume.getMin().getY());
-					final int rangeZ = (int) Math.ceil(volume.getMax().getZ() - volume.getMin().getZ());
-					//TODO Use CollisionVolume instead of BoundingBox
-					final LinkedList<BoundingBox> nearbyAABB = new LinkedList<BoundingBox>();
-					for (int dx = -rangeX; dx <= rangeX; dx++) {
-						for (int dy = -rangeY; dy <= rangeY; dy++) {
-							for (int dz = -rangeZ; dz <= rangeZ; dz++) {
-								BlockMaterial material;
-								AreaChunkAccess source;
-								if (this.containsBlock(bx + dx, by + dy, bz + dz)) {
-									source = this;
-								} else {
-									//TODO: handle intra-regional physics separately
-									source = this.getWorld();
-								}
-								if (entity.isObserver() || source.getChunkFromBlock(bx + dx, by + dy, bz + dz, LoadOption.NO_LOAD) != null){
-									material = source.getBlockMaterial(bx + dx, by + dy, bz + dz);
-								} else {
-									//TODO: handle falling into unloaded chunks correctly
-									material = BlockMaterial.AIR;
-								}
-								if (material != BlockMaterial.AIR) {
-									 //TODO give block materials proper volumes - unsafe cast if a material were to have a volume that wasn't a bounding box
-									BoundingBox block = (BoundingBox) material.getVolume().offset(new Vector3(bx + dx, by + dy, bz + dz));
-									//if (worldVolume.intersects(block) || block.containsBoundingBox(worldVolume)) {
-										nearbyAABB.add(block);
-									//}
-								}
-							}
-						}
-					}
-					//TODO: collisions with other entities
-
-					//Check we are currently encased in a block
-					//for (BoundingBox box : nearbyAABB) {
-					//	if (box.containsBoundingBox(oldVolume)) {
-					//		for (BlockFace face : BlockFaces.NESWBT) {
-					//			face.
-					//		}
-					//	}
-					//}
-
-					//Offset in Y direction first
-					Vector3 totalOffset = Vector3.ZERO;
-					for (BoundingBox box : nearbyAABB) {
-						if (worldVolume.intersects(box) || box.containsBoundingBox(worldVolume)) {
-							//Offset the entity with the minimum distance needed to move out of the block
-							Vector3 offset = worldVolume.resolveStatic(box);
-							if (!offset.equals(Vector3.ZERO)) {
-								worldVolume = worldVolume.offset(0, offset.getY(), 0);
-								totalOffset = totalOffset.add(0, offset.getY(), 0);
-								break;
-							}
-						}
-					}
-
-					//Offset in X direction
-					for (BoundingBox box : nearbyAABB) {
-						if (worldVolume.intersects(box) || box.containsBoundingBox(worldVolume)) {
-							//Offset the entity with the minimum distance needed to move out of the block
-							Vector3 offset = worldVolume.resolveStatic(box);
-							if (!offset.equals(Vector3.ZERO)) {
-								worldVolume = worldVolume.offset(offset.getX(), 0, 0);
-								totalOffset = totalOffset.add(offset.getX(), 0, 0);
-								break;
-							}
-						}
-					}
+				stepDynamics(entity, scene, dt);
+				broadPhase.add(scene.getVolume().clone().offset(scene.getTransformLive().getPosition()));
+			}
+			resolveEntityCollisions();
+		}
+	}
 
-					//Offset in Z direction
-					for (BoundingBox box : nearbyAABB) {
-						if (worldVolume.intersects(box) || box.containsBoundingBox(worldVolume)) {
-							//Offset the entity with the minimum distance needed to move out of the block
-							Vector3 offset = worldVolume.resolveStatic(box);
-							if (!offset.equals(Vector3.ZERO)) {
-								worldVolume = worldVolume.offset(0, 0, offset.getZ());
-								totalOffset = totalOffset.add(0, 0, offset.getZ());
-								break;
-							}
-						}
-					}
+	/**
+	 * Moves an entity forward by a single time step and resolves its collisions with blocks
+	 */
+	private void stepDynamics(SpoutEntity entity, SpoutSceneComponent scene, float dt) {
+		//TODO: This is a poor linear approximation of acceleration merely to prove it works
+		//need to switch to proper numerical approximation of derivatives, e.g Runge–Kutta methods
+		final Vector3 forces = scene.getRawForces().add(scene.getRawImpulses());
+		final Vector3 acceleration = forces.divide(scene.getMass()).add(0, -9.81F, 0);
+		final Vector3 prevVelocity = scene.getRawMovementVelocity();
+
+		/* Calculate the new position*/
+
+		//TODO: need to detect if dt is too large and will result in tunneling, 
+		// and compensate with multiple timesteps to reduce traveled distance per step
+
+		//Eular linear approximation: s = ut + 0.5at^2
+		// s - new position
+		// u - velocity
+		// t - timestep
+		// a - acceleration
+
+		final Vector3 movement = prevVelocity.multiply(dt).add(acceleration.multiply(dt * dt).divide(2));
+		//final Point position = scene.getTransformLive().getPosition();
+		Point newPosition = scene.getTransformLive().getPosition().add(movement);
+		final BoundingBox volume = scene.getVolume();
+		//final BoundingBox oldVolume = volume.clone().offset(position);
+		findNearbyBlocks(entity, newPosition, volume);
+
+		//Check we are currently encased in a block
+		//for (BoundingBox box : nearbyAABB) {
+		//	if (box.containsBoundingBox(oldVolume)) {
+		//		for (BlockFace face : BlockFaces.NESWBT) {
+		//			face.
+		//		}
+		//	}
+		//}
+
+		final Vector3 totalOffset = resolveBlockCollisions(volume.clone().offset(newPosition));
+
+		//Was forced to collide, kill accel/velocity
+		if (!totalOffset.equals(Vector3.ZERO)) {
+			scene.setMovementVelocity(Vector3.ZERO).setRawForces(Vector3.ZERO);
+			scene.setPosition(newPosition.add(totalOffset));
+		} else {
+			/* Calculate the new velocity */
+			scene.setPosition(newPosition);
+			Vector3 velocity = prevVelocity.add(acceleration.multiply(dt));
+			scene.setMovementVelocity(velocity);
+		}
+		scene.setRawImpulses(Vector3.ZERO);
+	}
 
-					boolean stillColliding = false;
-					for (BoundingBox other : nearbyAABB) {
-						stillColliding |= worldVolume.intersects(other) || other.containsBoundingBox(worldVolume);
-					}
-					if (stillColliding) {
-						//Unable to resolve collisions!
+	/**
+	 * Collects the volumes of the solid blocks around an entity into {@link #nearbyAABB}
+	 */
+	private void findNearbyBlocks(SpoutEntity entity, Point position, BoundingBox volume) {
+		final int bx = position.getBlockX();
+		final int by = position.getBlockY();
+		final int bz = position.getBlockZ();
+		final int rangeX = (int) Math.ceil(volume.getMax().getX() - volume.getMin().getX());
+		final int rangeY = (int) Math.ceil(volume.getMax().getY() - volume.getMin().getY());
+		final int rangeZ = (int) Math.ceil(volume.getMax().getZ() - volume.getMin().getZ());
+		//TODO Use CollisionVolume instead of BoundingBox
+		final List<BoundingBox> nearbyAABB = this.nearbyAABB;
+		nearbyAABB.clear();
+		for (int dx = -rangeX; dx <= rangeX; dx++) {
+			for (int dy = -rangeY; dy <= rangeY; dy++) {
+				for (int dz = -rangeZ; dz <= rangeZ; dz++) {
+					BlockMaterial material;
+					AreaChunkAccess source;
+					if (this.containsBlock(bx + dx, by + dy, bz + dz)) {
+						source = this;
+					} else {
+						//TODO: handle intra-regional physics separately
+						source = this.getWorld();
 					}
-					//Was forced to collide, kill accel/velocity
-					if (!totalOffset.equals(Vector3.ZERO)) {
-						scene.setMovementVelocity(Vector3.ZERO).setRawForces(Vector3.ZERO);
-						scene.setPosition(newPosition.add(totalOffset));
-						//Spout.info("Moving entity [" + entity.getId() + "] to " + newPosition.add(totalOffset)) ;
+					if (entity.isObserver() || source.getChunkFromBlock(bx + dx, by + dy, bz + dz, LoadOption.NO_LOAD) != null){
+						material = source.getBlockMaterial(bx + dx, by + dy, bz + dz);
 					} else {
-						/* Calculate the new velocity */
-						scene.setPosition(newPosition);
-						Vector3 velocity = prevVelocity.add(acceleration.multiply(dt));
-						scene.setMovementVelocity(velocity);
+						//TODO: handle falling into unloaded chunks correctly
+						material = BlockMaterial.AIR;
 					}
-					scene.setRawImpulses(Vector3.ZERO);
+					if (material != BlockMaterial.AIR) {
+						 //TODO give block materials proper volumes - unsafe cast if a material were to have a volume that wasn't a bounding box
+						BoundingBox block = (BoundingBox) material.getVolume().offset(new Vector3(bx + dx, by + dy, bz + dz));
+						nearbyAABB.add(block);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the offset which moves a volume out of the blocks in {@link #nearbyAABB}, resolving the Y axis first
+	 * @param worldVolume the volume in world coordinates, which is moved by the offset
+	 * @return the offset
+	 */
+	private Vector3 resolveBlockCollisions(BoundingBox worldVolume) {
+		//Offset in Y direction first
+		Vector3 totalOffset = Vector3.ZERO;
+		for (int i = 0; i < nearbyAABB.size(); i++) {
+			BoundingBox box = nearbyAABB.get(i);
+			if (worldVolume.intersects(box) || box.containsBoundingBox(worldVolume)) {
+				//Offset the entity with the minimum distance needed to move out of the block
+				Vector3 offset = worldVolume.resolveStatic(box);
+				if (!offset.equals(Vector3.ZERO)) {
+					worldVolume = worldVolume.offset(0, offset.getY(), 0);
+					totalOffset = totalOffset.add(0, offset.getY(), 0);
+					break;
+				}
+			}
+		}
+
+		//Offset in X direction
+		for (int i = 0; i < nearbyAABB.size(); i++) {
+			BoundingBox box = nearbyAABB.get(i);
+			if (worldVolume.intersects(box) || box.containsBoundingBox(worldVolume)) {
+				//Offset the entity with the minimum distance needed to move out of the block
+				Vector3 offset = worldVolume.resolveStatic(box);
+				if (!offset.equals(Vector3.ZERO)) {
+					worldVolume = worldVolume.offset(offset.getX(), 0, 0);
+					totalOffset = totalOffset.add(offset.getX(), 0, 0);
+					break;
+				}
+			}
+		}
 
+		//Offset in Z direction
+		for (int i = 0; i < nearbyAABB.size(); i++) {
+			BoundingBox box = nearbyAABB.get(i);
+			if (worldVolume.intersects(box) || box.containsBoundingBox(worldVolume)) {
+				//Offset the entity with the minimum distance needed to move out of the block
+				Vector3 offset = worldVolume.resolveStatic(box);
+				if (!offset.equals(Vector3.ZERO)) {
+					worldVolume = worldVolume.offset(0, 0, offset.getZ());
+					totalOffset = totalOffset.add(0, 0, offset.getZ());
+					break;
 				}
 			}
 		}
+		return totalOffset;
+	}
+
+	/**
+	 * Pushes apart the entities whose volumes were found to overlap by the broad phase, each entity moves half of the
+	 * distance and loses its velocity along the axis of the collision.  Entities are never pushed into blocks
+	 */
+	private void resolveEntityCollisions() {
+		//TODO: collisions with entities in other regions
+		int pairs = broadPhase.sweep();
+		for (int i = 0; i < pairs; i++) {
+			SpoutEntity entityA = dynamicEntities.get(broadPhase.getFirst(i));
+			SpoutEntity entityB = dynamicEntities.get(broadPhase.getSecond(i));
+			SpoutSceneComponent a = (SpoutSceneComponent) entityA.getScene();
+			SpoutSceneComponent b = (SpoutSceneComponent) entityB.getScene();
+			Point positionA = a.getTransformLive().getPosition();
+			Point positionB = b.getTransformLive().getPosition();
+			BoundingBox volumeA = a.getVolume().clone().offset(positionA);
+			BoundingBox volumeB = b.getVolume().clone().offset(positionB);
+			if (!volumeA.intersects(volumeB)) {
+				// an earlier pair has already moved one of the entities
+				continue;
+			}
+			Vector3 offset = volumeA.resolveStatic(volumeB).multiply(0.5F);
+			if (offset.equals(Vector3.ZERO)) {
+				continue;
+			}
+			pushEntity(entityA, a, positionA, offset);
+			pushEntity(entityB, b, positionB, offset.multiply(-1F));
+		}
+	}
+
+	/**
+	 * Moves an entity by a push from another entity, then moves it back out of any blocks the push moved it into.
+	 * The velocity of the entity is removed along the axes of both moves
+	 */
+	private void pushEntity(SpoutEntity entity, SpoutSceneComponent scene, Point position, Vector3 push) {
+		final Point pushed = position.add(push);
+		final BoundingBox volume = scene.getVolume();
+		findNearbyBlocks(entity, pushed, volume);
+		final Vector3 correction = resolveBlockCollisions(volume.clone().offset(pushed));
+		scene.setPosition(pushed.add(correction));
+		scene.setMovementVelocity(removeAxes(removeAxes(scene.getRawMovementVelocity(), push), correction));
+	}
+
+	/**
+	 * Zeroes the components of a velocity along the non-zero axes of an offset
+	 */
+	private static Vector3 removeAxes(Vector3 velocity, Vector3 offset) {
+		return new Vector3(offset.getX() == 0 ? velocity.getX() : 0, offset.getY() == 0 ? velocity.getY() : 0, offset.getZ() == 0 ? velocity.getZ() : 0);
 	}
 
 	@Override
@@ -843,6 +1003,9 @@ public class SpoutRegion extends Region implements AsyncManager {
 		switch (stage) {
 			case 0: {
 				taskManager.heartbeat(delta);
+				if (chunkLoader != null) {
+					chunkLoader.installLoadedChunks();
+				}
 				updateBlockComponents(dt);
 				updateEntities(dt);
 				if (Spout.getPlatform() == Platform.SERVER) {
@@ -854,7 +1017,7 @@ public class SpoutRegion extends Region implements AsyncManager {
 			}
 			case 1: {
 				if (SpoutConfiguration.SIMULATE_DYNAMICS.getBoolean(true)) {
-					updateDynamics(dt);
+					updateDynamics(delta);
 				}
 				break;
 			}
@@ -916,6 +1079,11 @@ public class SpoutRegion extends Region implements AsyncManager {
 		if (player.isOnline()) {
 			ServerNetworkSynchronizer synchronizer = (ServerNetworkSynchronizer) player.getNetworkSynchronizer();
 			if (!chunk.isDirtyOverflow() && !chunk.isLightDirty()) {
+				if (synchronizer instanceof SpoutServerNetworkSynchronizer) {
+					// All the dirty blocks in the chunk are sent as one message
+					((SpoutServerNetworkSynchronizer) synchronizer).updateBlocks(chunk);
+					return;
+				}
 				for (int i = 0; true; i++) {
 					Vector3 block = chunk.getDirtyBlock(i);
 					if (block == null) {
@@ -985,13 +1153,17 @@ public class SpoutRegion extends Region implements AsyncManager {
 			snapshotFuture.run();
 		}
 
-		for (int dx = 0; dx < CHUNKS.SIZE; dx++) {
-			for (int dy = 0; dy < CHUNKS.SIZE; dy++) {
-				for (int dz = 0; dz < CHUNKS.SIZE; dz++) {
-					SpoutChunk chunk = chunks[dx][dy][dz].get();
-					if (chunk != null) {
-						chunk.updateExpiredObservers();
-					}
+		// Only chunks which lost observers this tick, or which still list expired observers from the previous tick, are updated
+		Set<SpoutChunk> expiredUpdate = new LinkedHashSet<SpoutChunk>(expiredObserverChunks);
+		while ((spoutChunk = expiredObserversQueue.poll()) != null) {
+			expiredUpdate.add(spoutChunk);
+		}
+		expiredObserverChunks.clear();
+		for (SpoutChunk chunk : expiredUpdate) {
+			if (chunk.isLoaded()) {
+				chunk.updateExpiredObservers();
+				if (!chunk.getExpiredObservers().isEmpty()) {
+					expiredObserverChunks.add(chunk);
 				}
 			}
 		}
@@ -1078,25 +1250,26 @@ public class SpoutRegion extends Region implements AsyncManager {
 			return;
 		}
 		
-		LightingManager<?>[] managers = getWorld().getLightingManagers();
-		
-		if (blockMaterialBuffer == null) {
-			blockMaterialBuffer = new LocalRegionChunkCuboidBlockMaterialBufferWrapper(this, LoadOption.LOAD_ONLY, BlockMaterial.UNGENERATED);
-		}
+		final LightingManager<?>[] managers = getWorld().getLightingManagers();
 		
 		if (lightBuffers == null || lightBuffers.length != managers.length) {
 			lightBuffers = new ChunkCuboidLightBufferWrapper[managers.length];
+			blockMaterialBuffers = new ImmutableCuboidBlockMaterialBuffer[managers.length];
+			heightMapBuffers = new ImmutableHeightMapBuffer[managers.length];
 		}
 		
-		if (heightMapBuffer == null) {
-			heightMapBuffer = new LocalRegionChunkHeightMapBufferWrapper(this, LoadOption.LOAD_ONLY);
-		}
-		
+		// Each manager gets its own buffer wrappers, since the wrappers cache chunk lookups and are not thread safe
 		for (int i = 0; i < lightBuffers.length; i++) {
 			short managerId = managers[i].getId();
 			if (lightBuffers[i] == null || lightBuffers[i].getManagerId() != managerId) {
 				lightBuffers[i] = new LocalRegionChunkCuboidLightBufferWrapper(this, managerId, LoadOption.LOAD_ONLY);
 			}
+			if (blockMaterialBuffers[i] == null) {
+				blockMaterialBuffers[i] = new LocalRegionChunkCuboidBlockMaterialBufferWrapper(this, LoadOption.LOAD_ONLY, BlockMaterial.UNGENERATED);
+			}
+			if (heightMapBuffers[i] == null) {
+				heightMapBuffers[i] = new LocalRegionChunkHeightMapBufferWrapper(this, LoadOption.LOAD_ONLY);
+			}
 		}
 		
 		List<SpoutChunk> newChunksList = new LinkedList<SpoutChunk>();
@@ -1116,23 +1289,23 @@ public class SpoutRegion extends Region implements AsyncManager {
 			columns += col.getDirtyColumns();
 		}
 		
+		int[] colX = null;
+		int[] colZ = null;
+		int[] oldH = null;
+		int[] newH = null;
+		int changedColumns = 0;
+		
 		if (columns > 0) {
-			int[] colX = new int[columns];
-			int[] colZ = new int[columns];
-			int[] oldH = new int[columns];
-			int[] newH = new int[columns];
-
-			int pos = 0;
+			colX = new int[columns];
+			colZ = new int[columns];
+			oldH = new int[columns];
+			newH = new int[columns];
 
 			int minY = getBlockY();
 			int maxY = minY + BLOCKS.SIZE;
 			
 			for (SpoutColumn col : this.dirtyColumnQueue) {
-				pos = col.fillDirty(pos, colX, newH, oldH, colZ, minY, maxY);
-			}
-
-			if (pos > 0) {
-				resolveColumns(colX, colZ, oldH, newH, managers, pos);
+				changedColumns = col.fillDirty(changedColumns, colX, newH, oldH, colZ, minY, maxY);
 			}
 		}
 		for (SpoutChunk c : this.dirtyChunkQueue) {
@@ -1172,83 +1345,149 @@ public class SpoutRegion extends Region implements AsyncManager {
 			newChunksArray[i++] = c;
 		}
 		
-		if (newChunksArray.length > 0) {
-			resolveCuboids(newChunksArray, managers, true);
-		}
-		
-		if (dirtyChunks.length > 0) {
-			resolveCuboids(dirtyChunks, managers, false);
-		}
-		if (x.length > 0) {
-			resolveBlocks(x, y, z, managers);
+		if (changedColumns > 0 || newChunksArray.length > 0 || dirtyChunks.length > 0 || x.length > 0) {
+			LightingResolver[] resolvers = new LightingResolver[managers.length];
+			for (i = 0; i < managers.length; i++) {
+				resolvers[i] = new LightingResolver(i, managers[i], colX, colZ, oldH, newH, changedColumns, newChunksArray, dirtyChunks, x, y, z);
+			}
+			resolveLighting(resolvers);
 		}
 
 		scheduler.addUpdates(lightingUpdates);
 		lightingUpdates = 0;
 		
-		if (blockMaterialBuffer != null) {
-			((LocalRegionChunkCuboidBlockMaterialBufferWrapper) blockMaterialBuffer).clear();
+		for (i = 0; i < lightBuffers.length; i++) {
+			if (lightBuffers[i] != null) {
+				lightBuffers[i].clear();
+			}
+			if (blockMaterialBuffers[i] != null) {
+				((LocalRegionChunkCuboidBlockMaterialBufferWrapper) blockMaterialBuffers[i]).clear();
+			}
+			if (heightMapBuffers[i] != null) {
+				((LocalRegionChunkHeightMapBufferWrapper) heightMapBuffers[i]).clear();
+			}
 		}
-		
-		if (lightBuffers != null) {
-			for (i = 0; i < lightBuffers.length; i++) {
-				if (lightBuffers[i] != null) {
-					lightBuffers[i].clear();
+	}
+	
+	/**
+	 * Resolves the lighting of each manager.  Managers only share read only block and height data, so all but the first are
+	 * handed to the scheduler's lighting executor and resolved while the region thread resolves the first.
+	 */
+	private void resolveLighting(LightingResolver[] resolvers) {
+		if (resolvers.length == 0) {
+			return;
+		}
+		List<Future<?>> futures = null;
+		if (resolvers.length > 1) {
+			ExecutorService executor = scheduler.getLightingExecutor();
+			futures = new ArrayList<Future<?>>(resolvers.length - 1);
+			for (int i = 1; i < resolvers.length; i++) {
+				try {
+					futures.add(executor.submit(resolvers[i]));
+				} catch (RejectedExecutionException e) {
+					resolvers[i].run();
 				}
 			}
 		}
-		
-		if (heightMapBuffer != null) {
-			((LocalRegionChunkHeightMapBufferWrapper) heightMapBuffer).clear();
+		resolvers[0].run();
+		if (futures == null) {
+			return;
+		}
+		boolean interrupted = false;
+		for (Future<?> future : futures) {
+			while (true) {
+				try {
+					future.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					Spout.getLogger().log(Level.SEVERE, "Exception thrown when resolving lighting in region " + this, e.getCause());
+					break;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
 		}
 	}
 	
-	private void resolveCuboids(SpoutChunk[] chunks, LightingManager<?>[] managers, boolean init) {
-		int cuboids = chunks.length;
-		int[] bx = new int[cuboids];
-		int[] by = new int[cuboids];
-		int[] bz = new int[cuboids];
-		if (init) {
-			for (int i = 0; i < cuboids; i++) {
-				SpoutChunk chunk = chunks[i];
-				bx[i] = chunk.getBlockX();
-				by[i] = chunk.getBlockY();
-				bz[i] = chunk.getBlockZ();
+	/**
+	 * Resolves the columns, new chunks, dirty cuboids and dirty blocks of the region for a single lighting manager
+	 */
+	private class LightingResolver implements Runnable {
+		private final int index;
+		private final LightingManager<?> manager;
+		private final int[] colX;
+		private final int[] colZ;
+		private final int[] oldH;
+		private final int[] newH;
+		private final int changedColumns;
+		private final SpoutChunk[] newChunks;
+		private final SpoutChunk[] dirtyChunks;
+		private final int[] x;
+		private final int[] y;
+		private final int[] z;
+
+		public LightingResolver(int index, LightingManager<?> manager, int[] colX, int[] colZ, int[] oldH, int[] newH, int changedColumns, SpoutChunk[] newChunks, SpoutChunk[] dirtyChunks, int[] x, int[] y, int[] z) {
+			this.index = index;
+			this.manager = manager;
+			this.colX = colX;
+			this.colZ = colZ;
+			this.oldH = oldH;
+			this.newH = newH;
+			this.changedColumns = changedColumns;
+			this.newChunks = newChunks;
+			this.dirtyChunks = dirtyChunks;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+		}
+
+		@Override
+		public void run() {
+			ChunkCuboidLightBufferWrapper<?> light = lightBuffers[index];
+			ImmutableCuboidBlockMaterialBuffer material = blockMaterialBuffers[index];
+			ImmutableHeightMapBuffer height = heightMapBuffers[index];
+			if (changedColumns > 0) {
+				manager.resolveColumnsUnchecked(light, material, height, colX, colZ, oldH, newH, changedColumns);
 			}
-			for (int i = 0; i < managers.length; i++) {
-				managers[i].initChunksUnchecked(lightBuffers[i], blockMaterialBuffer, heightMapBuffer, chunks);
+			if (newChunks.length > 0) {
+				resolveCuboids(newChunks, manager, light, material, height, true);
 			}
-		} else {
-			int[] tx = new int[cuboids];
-			int[] ty = new int[cuboids];
-			int[] tz = new int[cuboids];
-			for (int i = 0; i < cuboids; i++) {
-				SpoutChunk chunk = chunks[i];
-				IntVector3 min = chunk.getMinDirty();
-				IntVector3 max = chunk.getMaxDirty();
-				bx[i] = chunk.getBlockX() + min.getX();
-				by[i] = chunk.getBlockY() + min.getY();
-				bz[i] = chunk.getBlockZ() + min.getZ();
-				tx[i] = chunk.getBlockX() + max.getX() + 1;
-				ty[i] = chunk.getBlockY() + max.getY() + 1;
-				tz[i] = chunk.getBlockZ() + max.getZ() + 1;
+			if (dirtyChunks.length > 0) {
+				resolveCuboids(dirtyChunks, manager, light, material, height, false);
 			}
-			for (int i = 0; i < managers.length; i++) {
-				managers[i].resolveChunksUnchecked(lightBuffers[i], blockMaterialBuffer, heightMapBuffer, bx, by, bz, tx, ty, tz, cuboids);
+			if (x.length > 0) {
+				manager.resolveUnchecked(light, material, height, x, y, z, x.length);
 			}
 		}
 	}
 	
-	private void resolveBlocks(int[] x, int[] y, int[] z, LightingManager<?>[] managers) {
-		for (int i = 0; i < managers.length; i++) {
-			managers[i].resolveUnchecked(lightBuffers[i], blockMaterialBuffer, heightMapBuffer, x, y, z, x.length);
-		}
-	}
-
-	private void resolveColumns(int[] hx, int[] hz, int[] oldHy, int[] newHy, LightingManager<?>[] managers, int changedColumns) {
-		for (int i = 0; i < managers.length; i++) {
-			managers[i].resolveColumnsUnchecked(lightBuffers[i], blockMaterialBuffer, heightMapBuffer, hx, hz, oldHy, newHy, changedColumns);
+	private static void resolveCuboids(SpoutChunk[] chunks, LightingManager<?> manager, ChunkCuboidLightBufferWrapper<?> light, ImmutableCuboidBlockMaterialBuffer material, ImmutableHeightMapBuffer height, boolean init) {
+		if (init) {
+			manager.initChunksUnchecked(light, material, height, chunks);
+			return;
 		}
+		int cuboids = chunks.length;
+		int[] bx = new int[cuboids];
+		int[] by = new int[cuboids];
+		int[] bz = new int[cuboids];
+		int[] tx = new int[cuboids];
+		int[] ty = new int[cuboids];
+		int[] tz = new int[cuboids];
+		for (int i = 0; i < cuboids; i++) {
+			SpoutChunk chunk = chunks[i];
+			IntVector3 min = chunk.getMinDirty();
+			IntVector3 max = chunk.getMaxDirty();
+			bx[i] = chunk.getBlockX() + min.getX();
+			by[i] = chunk.getBlockY() + min.getY();
+			bz[i] = chunk.getBlockZ() + min.getZ();
+			tx[i] = chunk.getBlockX() + max.getX() + 1;
+			ty[i] = chunk.getBlockY() + max.getY() + 1;
+			tz[i] = chunk.getBlockZ() + max.getZ() + 1;
+		}
+		manager.resolveChunksUnchecked(light, material, height, bx, by, bz, tx, ty, tz, cuboids);
 	}
 	
 	@Override
@@ -1516,13 +1755,7 @@ public class SpoutRegion extends Region implements AsyncManager {
 	}
 
 	public List<DynamicBlockUpdate> getDynamicBlockUpdates(Chunk c) {
-		Set<DynamicBlockUpdate> updates = dynamicBlockTree.getDynamicBlockUpdates(c);
-		int size = updates == null ? 0 : updates.size();
-		List<DynamicBlockUpdate> list = new ArrayList<DynamicBlockUpdate>(size);
-		if (updates != null) {
-			list.addAll(updates);
-		}
-		return list;
+		return dynamicBlockTree.getDynamicBlockUpdates(c);
 	}
 
 	public boolean removeDynamicBlockUpdates(Chunk c) {
@@ -1632,6 +1865,34 @@ public class SpoutRegion extends Region implements AsyncManager {
 		return newChunk;
 	}
 	
+	/**
+	 * Adds a chunk received from the server, along with its light buffers so it doesn't need to be relit
+	 */
+	public SpoutChunk addChunk(int chunkX, int chunkY, int chunkZ, int[] palette, int blockArrayWidth, int[] variableWidthBlockArray, short[] lightManagerIds, byte[][] lightData) {
+		final int regionChunkX = chunkX & CHUNKS.MASK;
+		final int regionChunkY = chunkY & CHUNKS.MASK;
+		final int regionChunkZ = chunkZ & CHUNKS.MASK;
+		SpoutChunk chunk = chunks[regionChunkX][regionChunkY][regionChunkZ].get();
+		if (chunk != null) {
+			chunk.unload(false);
+			chunks[regionChunkX][regionChunkY][regionChunkZ].set(null);
+		}
+		SpoutChunk newChunk = new SpoutChunk(getWorld(), this, chunkX, chunkY, chunkZ, SpoutChunk.PopulationState.POPULATED, palette, blockArrayWidth, variableWidthBlockArray, new ManagedHashMap(), true);
+		List<LightingManager<?>> managers = new ArrayList<LightingManager<?>>(lightManagerIds.length);
+		List<byte[]> data = new ArrayList<byte[]>(lightManagerIds.length);
+		for (int i = 0; i < lightManagerIds.length; i++) {
+			LightingManager<?> manager = LightingRegistry.get(lightManagerIds[i]);
+			if (manager != null) {
+				managers.add(manager);
+				data.add(lightData[i]);
+			}
+		}
+		newChunk.addLightingBufferData(managers, data);
+		setChunk(newChunk, regionChunkX, regionChunkY, regionChunkZ, null, false);
+		checkChunkLoaded(newChunk, LoadOption.LOAD_GEN);
+		return newChunk;
+	}
+	
 	public void removeChunk(int chunkX, int chunkY, int chunkZ) {
 		final int regionChunkX = chunkX & CHUNKS.MASK;
 		final int regionChunkY = chunkY & CHUNKS.MASK;
@@ -1776,6 +2037,10 @@ public class SpoutRegion extends Region implements AsyncManager {
 		return generator;
 	}
 
+	public RegionChunkLoader getChunkLoader() {
+		return chunkLoader;
+	}
+
 	@Override
 	public void queueChunksForGeneration(List<Vector3> chunks) {
 		for (Vector3 v : chunks) {
@@ -34,6 +34,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.spout.api.Server;
 import org.spout.api.component.Component;
@@ -79,6 +80,11 @@ public class SpoutServerWorld extends SpoutWorld implements AsyncManager {
 	 * String lighting map, used to covert local id's to the server id
 	 */
 	private final StringToUniqueIntegerMap lightingMap;
+	/**
+	 * Set when encoded chunks may refer to item or lighting ids which have not been saved
+	 */
+	private final AtomicBoolean mapsDirty = new AtomicBoolean(false);
+	private final Object mapsLock = new Object();
 	/**
 	 * A set of all players currently connected to this world
 	 */
@@ -268,6 +274,30 @@ public class SpoutServerWorld extends SpoutWorld implements AsyncManager {
 	public StringToUniqueIntegerMap getLightingMap() {
 		return lightingMap;
 	}
+
+	/**
+	 * Marks the item and lighting maps as requiring a save before the next chunk write.<br>
+	 * <br>
+	 * This is called after a chunk has been encoded, since encoding may register new ids.
+	 */
+	public void markMapsDirty() {
+		mapsDirty.set(true);
+	}
+
+	/**
+	 * Saves the item and lighting maps, if they have been marked dirty since the last flush.<br>
+	 * <br>
+	 * Chunk writers call this before writing a batch of chunks, so that the maps are on disk
+	 * before any chunk which refers to them.  Concurrent callers block until an in-progress flush completes.
+	 */
+	public void flushMaps() {
+		synchronized (mapsLock) {
+			if (mapsDirty.compareAndSet(true, false)) {
+				itemMap.save();
+				lightingMap.save();
+			}
+		}
+	}
 	
 	@Override
 	public TaskManager getTaskManager() {
@@ -37,6 +37,9 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -130,6 +133,11 @@ public abstract class SpoutWorld extends BaseComponentOwner implements World {
 	 */
 	private final TSyncLongObjectHashMap<SpoutColumn> columns = new TSyncLongObjectHashMap<SpoutColumn>();
 	protected final Set<SpoutColumn> columnSet = new LinkedHashSet<SpoutColumn>();
+	/**
+	 * Index of the entities in this world, by id and by UUID
+	 */
+	private final ConcurrentMap<Integer, SpoutEntity> entitiesById = new ConcurrentHashMap<Integer, SpoutEntity>();
+	private final ConcurrentMap<UUID, SpoutEntity> entitiesByUid = new ConcurrentHashMap<UUID, SpoutEntity>();
 	private final ReentrantLock[] columnLockMap = new ReentrantLock[16];
 	/**
 	 * A map of column height map files
@@ -232,6 +240,24 @@ public abstract class SpoutWorld extends BaseComponentOwner implements World {
 		return null;
 	}
 
+	/**
+	 * Requests a chunk without blocking the calling thread, see {@link SpoutRegion#getChunkAsync(int, int, int, LoadOption)}
+	 * @param x the chunk x coordinate
+	 * @param y the chunk y coordinate
+	 * @param z the chunk z coordinate
+	 * @param loadopt the load option
+	 * @return a future for the chunk
+	 */
+	public Future<SpoutChunk> getChunkAsync(int x, int y, int z, LoadOption loadopt) {
+		SpoutRegion region = getRegionFromChunk(x, y, z, loadopt);
+		if (region != null) {
+			return region.getChunkAsync(x, y, z, loadopt);
+		}
+		SpoutChunkLoadFuture future = new SpoutChunkLoadFuture(x, y, z, loadopt);
+		future.complete(null);
+		return future;
+	}
+
 	@Override
 	public Biome getBiome(int x, int y, int z) {
 		if (!(generator instanceof BiomeGenerator)) {
@@ -643,25 +669,34 @@ public abstract class SpoutWorld extends BaseComponentOwner implements World {
 
 	@Override
 	public Entity getEntity(int id) {
-		for (Region region : regions) {
-			Entity entity = region.getEntity(id);
-			if (entity != null) {
-				return entity;
-			}
-		}
-		return null;
+		return entitiesById.get(id);
 	}
 
 	@Override
 	public Entity getEntity(UUID uid) {
-		for (Region region : regions) {
-			for (Entity e : region.getAll()) {
-				if (e.getUID().equals(uid)) {
-					return e;
-				}
-			}
-		}
-		return null;
+		return entitiesByUid.get(uid);
+	}
+
+	/**
+	 * Adds an entity to the id and UUID index of this world.<br>
+	 * <br>
+	 * This is called by the entity manager of the region which now holds the entity.
+	 * @param entity the entity
+	 */
+	public void indexEntity(SpoutEntity entity) {
+		entitiesById.put(entity.getId(), entity);
+		entitiesByUid.put(entity.getUID(), entity);
+	}
+
+	/**
+	 * Removes an entity from the id and UUID index of this world.<br>
+	 * <br>
+	 * The mapping is only removed if it still refers to the given entity.
+	 * @param entity the entity
+	 */
+	public void unindexEntity(SpoutEntity entity) {
+		entitiesById.remove(entity.getId(), entity);
+		entitiesByUid.remove(entity.getUID(), entity);
 	}
 
 	@Override
@@ -669,7 +704,7 @@ public abstract class SpoutWorld extends BaseComponentOwner implements World {
 		ArrayList<Entity> foundEntities = new ArrayList<Entity>();
 		final int RANGE_SQUARED = range * range;
 
-		for (Entity entity : getEntitiesNearRegion(position, range)) {
+		for (Entity entity : getEntitiesNear(position, range)) {
 			if (entity != null && entity != ignore) {
 				double distance = position.distanceSquared(entity.getScene().getPosition());
 				if (distance < RANGE_SQUARED) {
@@ -696,7 +731,7 @@ public abstract class SpoutWorld extends BaseComponentOwner implements World {
 		Entity best = null;
 		double bestDistance = range * range;
 
-		for (Entity entity : getEntitiesNearRegion(position, range)) {
+		for (Entity entity : getEntitiesNear(position, range)) {
 			if (entity != null && entity != ignore) {
 				double distance = position.distanceSquared(entity.getScene().getPosition());
 				if (distance < bestDistance) {
@@ -779,7 +814,7 @@ public abstract class SpoutWorld extends BaseComponentOwner implements World {
 		Entity best = null;
 		double bestDistance = range * range;
 
-		for (Entity entity : getEntitiesNearRegion(position, range)) {
+		for (Entity entity : getEntitiesNear(position, range)) {
 			if (entity != null && entity instanceof Player && entity != ignore) {
 				double distance = position.distanceSquared(entity.getScene().getPosition());
 				if (distance < bestDistance) {
@@ -817,24 +852,27 @@ public abstract class SpoutWorld extends BaseComponentOwner implements World {
 	}
 
 	/**
-	 * Finds all the players inside of the regions inside the range area
+	 * Finds all the entities in the chunks which overlap the range area
 	 * @param position to search from
-	 * @param range to search for regions
-	 * @return nearby region's players
+	 * @param range to search
+	 * @return the entities in the nearby chunks
 	 */
-	private List<Entity> getEntitiesNearRegion(Point position, int range) {
-		Region center = this.getRegionFromBlock(position, LoadOption.NO_LOAD);
-
+	private List<Entity> getEntitiesNear(Point position, int range) {
 		ArrayList<Entity> entities = new ArrayList<Entity>();
-		if (center != null) {
-			final int regions = (range + Region.BLOCKS.SIZE - 1) / Region.BLOCKS.SIZE; //round up 1 region size
-			for (int dx = -regions; dx < regions; dx++) {
-				for (int dy = -regions; dy < regions; dy++) {
-					for (int dz = -regions; dz < regions; dz++) {
-						Region region = this.getRegion(center.getX() + dx, center.getY() + dy, center.getZ() + dz, LoadOption.NO_LOAD);
-						if (region != null) {
-							entities.addAll(region.getAll());
-						}
+
+		final int minX = GenericMath.floor(position.getX() - range) >> Chunk.BLOCKS.BITS;
+		final int minY = GenericMath.floor(position.getY() - range) >> Chunk.BLOCKS.BITS;
+		final int minZ = GenericMath.floor(position.getZ() - range) >> Chunk.BLOCKS.BITS;
+		final int maxX = GenericMath.floor(position.getX() + range) >> Chunk.BLOCKS.BITS;
+		final int maxY = GenericMath.floor(position.getY() + range) >> Chunk.BLOCKS.BITS;
+		final int maxZ = GenericMath.floor(position.getZ() + range) >> Chunk.BLOCKS.BITS;
+
+		for (int rx = minX >> Region.CHUNKS.BITS; rx <= maxX >> Region.CHUNKS.BITS; rx++) {
+			for (int ry = minY >> Region.CHUNKS.BITS; ry <= maxY >> Region.CHUNKS.BITS; ry++) {
+				for (int rz = minZ >> Region.CHUNKS.BITS; rz <= maxZ >> Region.CHUNKS.BITS; rz++) {
+					SpoutRegion region = this.getRegion(rx, ry, rz, LoadOption.NO_LOAD);
+					if (region != null) {
+						region.getEntityManager().getGrid().getEntities(minX, minY, minZ, maxX, maxY, maxZ, entities);
 					}
 				}
 			}
@@ -971,6 +1009,17 @@ public abstract class SpoutWorld extends BaseComponentOwner implements World {
 		return baa;
 	}
 
+	/**
+	 * Gets if a column has been saved to disk
+	 * @param x the x coordinate
+	 * @param z the z coordinate
+	 * @return true if a height map is stored for the column
+	 */
+	public boolean columnExists(int x, int z) {
+		BAAWrapper baa = getColumnHeightMapBAA(x, z);
+		return baa != null && baa.inputStreamExists(NibblePairHashed.key(x, z) & 0xFF);
+	}
+
 	public InputStream getHeightMapInputStream(int x, int z) {
 
 		BAAWrapper baa = getColumnHeightMapBAA(x, z);
@@ -26,13 +26,23 @@
  */
 package org.spout.engine.world;
 
+import gnu.trove.map.hash.TIntLongHashMap;
+
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 
 import org.spout.api.Client;
 import org.spout.api.Spout;
@@ -40,16 +50,41 @@ import org.spout.api.geo.World;
 import org.spout.api.geo.cuboid.ChunkSnapshot.EntityType;
 import org.spout.api.geo.cuboid.ChunkSnapshot.ExtraData;
 import org.spout.api.geo.cuboid.ChunkSnapshot.SnapshotType;
+import org.spout.api.geo.cuboid.Region;
+import org.spout.api.io.bytearrayarray.BAAWrapper;
+import org.spout.engine.SpoutConfiguration;
 import org.spout.engine.filesystem.versioned.ChunkFiles;
+import org.spout.engine.util.thread.threadfactory.NamedThreadFactory;
 import org.spout.engine.world.dynamic.DynamicBlockUpdate;
 
 /**
- * Dedicated thread to IO write operations for world chunks
+ * Dedicated thread to IO write operations for world chunks.<br>
+ * <br>
+ * Chunks are encoded in parallel on an encode pool.  Encoded chunks are then
+ * grouped by region file, and each region file is written by at most one
+ * writer at a time.  The world item and lighting maps are saved once per
+ * write batch, rather than once per chunk.  Each save is given a sequence number when it is queued, so a
+ * snapshot which finishes encoding after a newer save of the same chunk is dropped rather than written
+ * over it.  This thread waits for all pending saves to complete and
+ * closes the region files when the server shuts down.
  */
 public class WorldSavingThread extends Thread{
 	private static final WorldSavingThread instance = new WorldSavingThread();
 	private final AtomicBoolean queueRunning = new AtomicBoolean(true);
-	private final LinkedBlockingQueue<Callable<SpoutServerWorld>> queue = new LinkedBlockingQueue<Callable<SpoutServerWorld>>();
+	private final ExecutorService encodePool = 
+			Executors.newFixedThreadPool(
+					Math.max(1, Runtime.getRuntime().availableProcessors() - 1), 
+					new NamedThreadFactory("World Saving Thread - encode pool", 
+					true));
+	private final ExecutorService writePool = 
+			Executors.newFixedThreadPool(
+					Math.max(2, Runtime.getRuntime().availableProcessors() >> 1), 
+					new NamedThreadFactory("World Saving Thread - write pool", 
+					true));
+	private final ConcurrentHashMap<BAAWrapper, RegionWriter> writers = new ConcurrentHashMap<BAAWrapper, RegionWriter>();
+	private final AtomicInteger pending = new AtomicInteger(0);
+	private final AtomicLong saveSequence = new AtomicLong(0);
+	private final Object pendingLock = new Object();
 	public WorldSavingThread() {
 		super("World Saving Thread");
 	}
@@ -67,13 +102,34 @@ public class WorldSavingThread extends Thread{
 		}
 		instance.addChunk(chunk);
 	}
+
+	/**
+	 * Gets if the number of chunks waiting to be saved exceeds the save queue limit.<br>
+	 * <br>
+	 * Autosaves should be deferred while this is true.
+	 * 
+	 * @return true if the saving thread is backlogged
+	 */
+	public static boolean isBacklogged() {
+		return instance.pending.get() >= SpoutConfiguration.SAVE_QUEUE_LIMIT.getInt(4096);
+	}
+
+	/**
+	 * Gets the number of chunks which have been submitted but not yet written.
+	 * 
+	 * @return the number of pending chunk saves
+	 */
+	public static int getPendingSaves() {
+		return instance.pending.get();
+	}
 	
 	public void addChunk(SpoutChunk chunk) {
 		if (Spout.getEngine() instanceof Client) {
 			throw new IllegalStateException("Client mode is not allowed to add chunks for saving");
 		}
 		ChunkSaveTask task = new ChunkSaveTask(chunk);
-		instance.queue.add(task);
+		instance.pending.incrementAndGet();
+		instance.encodePool.execute(task);
 		pingBackup();
 	}
 	
@@ -102,35 +158,38 @@ public class WorldSavingThread extends Thread{
 	@Override
 	public void run() {
 		while (!Thread.interrupted()) {
-			Callable<SpoutServerWorld> task;
 			try {
-				task = queue.take();
-				task.call();
+				synchronized (pendingLock) {
+					pendingLock.wait();
+				}
 			} catch (InterruptedException ignore) {
 				break;
-			} catch (Exception e) {
-				e.printStackTrace();
 			}
 		}
 		processRemaining("main");	
 	}
 
 	private void processRemaining(String threadType) {
-		int toSave = queue.size();
-		int saved = 0;
+		int toSave = pending.get();
 		int lastTenth = 0;
-		Callable<SpoutServerWorld> task;
-		while ((task = queue.poll()) != null) {
-			try {
-				task.call();
-			} catch (Exception e) {
-				e.printStackTrace();
+		int remaining;
+		while ((remaining = pending.get()) > 0) {
+			if (remaining > toSave) {
+				toSave = remaining;
 			}
-			int tenth = ((++saved) * 10) / toSave;
+			int tenth = ((toSave - remaining) * 10) / toSave;
 			if (tenth != lastTenth) {
 				lastTenth = tenth;
 				Spout.getLogger().info("Saved " + tenth + "0% of queued chunks");
 			}
+			try {
+				synchronized (pendingLock) {
+					if (pending.get() > 0) {
+						pendingLock.wait(100);
+					}
+				}
+			} catch (InterruptedException ignore) {
+			}
 		}
 		Collection<? extends World> worlds = Spout.getEngine().getWorlds();
 		for (World w : worlds) {
@@ -150,42 +209,161 @@ public class WorldSavingThread extends Thread{
 			Spout.getLogger().severe("queueRunning was already false when " + threadType + " world saving thread finished");
 		}
 		
-		if (!queue.isEmpty()) {
+		if (pending.get() > 0) {
 			pingBackup();
 		}
 		
 	}
 
-	private static class ChunkSaveTask implements Callable<SpoutServerWorld> {
+	private void saveComplete() {
+		if (pending.decrementAndGet() <= 0) {
+			synchronized (pendingLock) {
+				pendingLock.notifyAll();
+			}
+		}
+	}
+
+	private RegionWriter getWriter(BAAWrapper regionFile) {
+		RegionWriter writer = writers.get(regionFile);
+		if (writer != null) {
+			return writer;
+		}
+		writer = new RegionWriter(regionFile);
+		RegionWriter oldWriter = writers.putIfAbsent(regionFile, writer);
+		if (oldWriter != null) {
+			return oldWriter;
+		}
+		return writer;
+	}
+
+	/**
+	 * Encodes a chunk on the encode pool and passes the encoded data to the writer for its region file
+	 */
+	private static class ChunkSaveTask implements Runnable {
 		final SpoutChunkSnapshot snapshot;
 		final List<DynamicBlockUpdate> blockUpdates;
 		final SpoutChunk chunk;
+		final long sequence;
 		ChunkSaveTask(SpoutChunk chunk) {
+			this.sequence = instance.saveSequence.incrementAndGet();
 			this.snapshot = chunk.getSnapshot(SnapshotType.LIGHT_ONLY, EntityType.BOTH, ExtraData.DATATABLE, true);
 			this.blockUpdates = chunk.getRegion().getDynamicBlockUpdates(chunk);
 			this.chunk = chunk;
 		}
 
 		@Override
-		public SpoutServerWorld call() {
-			SpoutServerWorld world = (SpoutServerWorld) chunk.getWorld();
-			OutputStream out = world.getChunkOutputStream(snapshot);
-			if (out != null) {
+		public void run() {
+			try {
+				SpoutServerWorld world = (SpoutServerWorld) chunk.getWorld();
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				ChunkFiles.saveChunk(world, snapshot, blockUpdates, out);
+				int rx = snapshot.getX() >> Region.CHUNKS.BITS;
+				int ry = snapshot.getY() >> Region.CHUNKS.BITS;
+				int rz = snapshot.getZ() >> Region.CHUNKS.BITS;
+				BAAWrapper regionFile = world.getRegionFileManager().getBAAWrapper(rx, ry, rz);
+				int key = SpoutRegion.getChunkKey(snapshot.getX(), snapshot.getY(), snapshot.getZ());
+				instance.getWriter(regionFile).add(new EncodedChunk(chunk, key, sequence, out.toByteArray()));
+			} catch (Throwable t) {
+				Spout.getLogger().log(Level.SEVERE, "Unable to encode chunk " + chunk + " for saving", t);
+				instance.saveComplete();
+			}
+		}
+	}
+
+	private static class EncodedChunk {
+		final SpoutChunk chunk;
+		final int key;
+		final long sequence;
+		final byte[] data;
+		EncodedChunk(SpoutChunk chunk, int key, long sequence, byte[] data) {
+			this.chunk = chunk;
+			this.key = key;
+			this.sequence = sequence;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Writes encoded chunks to a single region file.<br>
+	 * <br>
+	 * A writer is scheduled on the write pool at most once at a time, so each region file has a single writer
+	 * and all the chunks queued for a file are written in one pass.  The writer records the sequence number of the
+	 * last save written for each chunk, and drops any older save which arrives after it.
+	 */
+	private class RegionWriter implements Runnable {
+		private final BAAWrapper regionFile;
+		private final Queue<EncodedChunk> queue = new ConcurrentLinkedQueue<EncodedChunk>();
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+		private final TIntLongHashMap lastWritten = new TIntLongHashMap();
+
+		RegionWriter(BAAWrapper regionFile) {
+			this.regionFile = regionFile;
+		}
+
+		public void add(EncodedChunk encoded) {
+			queue.add(encoded);
+			schedule();
+		}
+
+		private void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				writePool.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			List<EncodedChunk> batch = new ArrayList<EncodedChunk>();
+			EncodedChunk encoded;
+			while ((encoded = queue.poll()) != null) {
+				batch.add(encoded);
+			}
+			if (!batch.isEmpty()) {
+				// All chunks in a region file belong to the same world
 				try {
-					ChunkFiles.saveChunk((SpoutServerWorld) chunk.getWorld(), snapshot, blockUpdates, out);
+					((SpoutServerWorld) batch.get(0).chunk.getWorld()).flushMaps();
+				} catch (Throwable t) {
+					Spout.getLogger().log(Level.SEVERE, "Unable to save item and lighting maps for region file " + regionFile.getFilename(), t);
+				}
+			}
+			for (EncodedChunk e : batch) {
+				try {
+					write(e);
 				} finally {
-					try {
-						out.close();
-					} catch (IOException ioe) {
-						Spout.getLogger().info("Failed to commit chunk " + chunk);
-						ioe.printStackTrace();
-					}
+					saveComplete();
+				}
+			}
+			scheduled.set(false);
+			if (!queue.isEmpty()) {
+				schedule();
+			}
+		}
+
+		private void write(EncodedChunk encoded) {
+			if (encoded.sequence < lastWritten.get(encoded.key)) {
+				// A newer save of this chunk has already been written
+				encoded.chunk.saveComplete();
+				return;
+			}
+			lastWritten.put(encoded.key, encoded.sequence);
+			OutputStream out = regionFile.getBlockOutputStream(encoded.key);
+			if (out == null) {
+				Spout.getLogger().severe("World saving thread unable to open file for chunk " + encoded.chunk);
+				return;
+			}
+			try {
+				out.write(encoded.data);
+			} catch (IOException ioe) {
+				Spout.getLogger().log(Level.SEVERE, "Error writing chunk " + encoded.chunk, ioe);
+			} finally {
+				try {
+					out.close();
+				} catch (IOException ioe) {
+					Spout.getLogger().info("Failed to commit chunk " + encoded.chunk);
+					ioe.printStackTrace();
 				}
-				chunk.saveComplete();
-			} else {
-				Spout.getLogger().severe("World saving thread unable to open file for chunk " + chunk);
 			}
-			return world;
+			encoded.chunk.saveComplete();
 		}
 	}
 	
@@ -48,6 +48,20 @@ public class DynamicBlockUpdate implements Comparable<DynamicBlockUpdate>, Dynam
 
 	private DynamicBlockUpdate next;
 
+	/**
+	 * Queue links, managed by the {@link DynamicBlockUpdateWheel} of the region
+	 */
+	int heapIndex = -1;
+	int wheelLevel = -1;
+	DynamicBlockUpdate wheelPrev;
+	DynamicBlockUpdate wheelNext;
+
+	/**
+	 * Chunk list links, managed by the {@link DynamicBlockUpdateTree} of the region
+	 */
+	DynamicBlockUpdate chunkPrev;
+	DynamicBlockUpdate chunkNext;
+
 	public DynamicBlockUpdate(int packed, long nextUpdate, int data) {
 		this(unpackX(packed), unpackY(packed), unpackZ(packed), nextUpdate, data);
 	}
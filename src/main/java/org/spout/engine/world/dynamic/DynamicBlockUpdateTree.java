@@ -28,10 +28,7 @@ package org.spout.engine.world.dynamic;
 
 import gnu.trove.map.hash.TIntObjectHashMap;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import org.spout.api.Spout;
@@ -54,17 +51,17 @@ import org.spout.engine.world.SpoutWorld;
  * This class contains the dynamic block updates.  There are 3 data structures that are kept in sync.<br>
  * <br>
  * blockToUpdateMap - This maps the packed (x, y, z) block coords to the DynamicBlockUpdates for that block (stored as a linked list)
- * chunkToUpdateMap - this maps the packed (x, y, z) chunk coords to the DynamicBlockUpdates for that chunk (stored as a hashset)
- * queuedUpdates - the actual queue of dynamic updates, stored in a TreeMap
+ * chunkToUpdateMap - this maps the packed (x, y, z) chunk coords to the DynamicBlockUpdates for that chunk (stored as a doubly linked list)
+ * queuedUpdates - the actual queue of dynamic updates, stored in a timing wheel
  */
 public class DynamicBlockUpdateTree {
 	
 	private final SpoutRegion region;
 	private final SpoutWorld world;
 	
-	private final TreeSet<DynamicBlockUpdate> queuedUpdates = new TreeSet<DynamicBlockUpdate>();
+	private final DynamicBlockUpdateWheel queuedUpdates = new DynamicBlockUpdateWheel();
 	private final TIntObjectHashMap<DynamicBlockUpdate> blockToUpdateMap = new TIntObjectHashMap<DynamicBlockUpdate>();
-	private final TIntObjectHashMap<HashSet<DynamicBlockUpdate>> chunkToUpdateMap = new TIntObjectHashMap<HashSet<DynamicBlockUpdate>>();
+	private final TIntObjectHashMap<DynamicBlockUpdate> chunkToUpdateMap = new TIntObjectHashMap<DynamicBlockUpdate>();
 
 	/**
 	 * Keeps a queue of a lists of DynamicBlockUpdates. Lists are only added when previously saved chunks are loaded, and added to the queue
@@ -228,30 +225,31 @@ public class DynamicBlockUpdateTree {
 	}
 
 	/**
-	 * NOTE: Do NOT modify the returned set
+	 * Gets a list of the dynamic block updates queued for a chunk
 	 */
-	public Set<DynamicBlockUpdate> getDynamicBlockUpdates(Chunk c) {
+	public List<DynamicBlockUpdate> getDynamicBlockUpdates(Chunk c) {
 		TickStage.checkStage(TickStage.SNAPSHOT);
 		int packed = DynamicBlockUpdate.getChunkPacked(c);
-		return chunkToUpdateMap.get(packed);
+		List<DynamicBlockUpdate> list = new ArrayList<DynamicBlockUpdate>();
+		for (DynamicBlockUpdate u = chunkToUpdateMap.get(packed); u != null; u = u.chunkNext) {
+			list.add(u);
+		}
+		return list;
 	}
 
 	public boolean removeDynamicBlockUpdates(Chunk c) {
 		TickStage.checkStage(TickStage.SNAPSHOT, regionThread);
-		Set<DynamicBlockUpdate> toRemove = getDynamicBlockUpdates(c);
-		if (toRemove == null) {
-			return true;
-		}
-
-		if (toRemove.size() <= 0) {
+		DynamicBlockUpdate current = chunkToUpdateMap.get(DynamicBlockUpdate.getChunkPacked(c));
+		if (current == null) {
 			return true;
 		}
 
-		List<DynamicBlockUpdate> list = new ArrayList<DynamicBlockUpdate>(toRemove);
-		for (DynamicBlockUpdate dm : list) {
-			if (remove(dm) == null) {
+		while (current != null) {
+			DynamicBlockUpdate next = current.chunkNext;
+			if (remove(current) == null) {
 				throw new IllegalStateException("Expected update not present when removing all updates for chunk " + c);
 			}
+			current = next;
 		}
 		return false;
 	}
@@ -373,10 +371,7 @@ public class DynamicBlockUpdateTree {
 	 */
 	public long getFirstDynamicUpdateTime() {
 		checkStages();
-		if (queuedUpdates.isEmpty()) {
-			return SpoutScheduler.END_OF_THE_WORLD;
-		}
-		return queuedUpdates.first().getNextUpdate();
+		return queuedUpdates.getFirstUpdateTime();
 	}
 
 	/**
@@ -387,20 +382,12 @@ public class DynamicBlockUpdateTree {
 	 */
 	public DynamicBlockUpdate getNextUpdate(long thresholdTime) {
 		checkStages();
-		if (queuedUpdates.isEmpty()) {
-			return null;
-		}
-
-		DynamicBlockUpdate first = queuedUpdates.first();
+		DynamicBlockUpdate first = queuedUpdates.poll(thresholdTime);
 		if (first == null) {
 			return null;
 		}
 
-		if (first.getNextUpdate() > thresholdTime) {
-			return null;
-		}
-
-		if (remove(first) != first) {
+		if (removeFromBlock(first) != first) {
 			throw new IllegalStateException("queued updates for dynamic block updates violated threading rules");
 		}
 
@@ -444,12 +431,13 @@ public class DynamicBlockUpdateTree {
 		}
 
 		queuedUpdates.add(update);
-		HashSet<DynamicBlockUpdate> chunkSet = chunkToUpdateMap.get(update.getChunkPacked());
-		if (chunkSet == null) {
-			chunkSet = new HashSet<DynamicBlockUpdate>();
-			chunkToUpdateMap.put(update.getChunkPacked(), chunkSet);
+		int chunkPacked = update.getChunkPacked();
+		DynamicBlockUpdate chunkHead = chunkToUpdateMap.put(chunkPacked, update);
+		update.chunkPrev = null;
+		update.chunkNext = chunkHead;
+		if (chunkHead != null) {
+			chunkHead.chunkPrev = update;
 		}
-		chunkSet.add(update);
 
 		return previous;
 	}
@@ -461,6 +449,19 @@ public class DynamicBlockUpdateTree {
 	 * @return the update, if removed
 	 */
 	private DynamicBlockUpdate remove(DynamicBlockUpdate update) {
+		if (!queuedUpdates.remove(update)) {
+			throw new IllegalStateException("Dynamic block update missing from queue when removed");
+		}
+		return removeFromBlock(update);
+	}
+
+	/**
+	 * Removes a specific update, which has already been removed from the queue, from the block and chunk lists
+	 * 
+	 * @param update the update to remove
+	 * @return the update, if removed
+	 */
+	private DynamicBlockUpdate removeFromBlock(DynamicBlockUpdate update) {
 		boolean removed = false;
 		int packedKey = update.getPacked();
 		DynamicBlockUpdate root = blockToUpdateMap.get(packedKey);
@@ -477,20 +478,7 @@ public class DynamicBlockUpdateTree {
 				throw new IllegalStateException("Dynamic update appeared twice in the linked list");
 			}
 			removed = true;
-			if (!queuedUpdates.remove(current)) {
-				throw new IllegalStateException("Dynamic block update missing from queue when removed");
-			}
-			int currentPacked = current.getChunkPacked();
-			HashSet<DynamicBlockUpdate> chunkSet = chunkToUpdateMap.get(currentPacked);
-			if (chunkSet == null || !chunkSet.remove(current)) {
-				throw new IllegalStateException("Dynamic block update missing from chunk when removed");
-			}
-	
-			if (chunkSet.isEmpty()) {
-				if (chunkToUpdateMap.remove(currentPacked) == null) {
-					throw new IllegalStateException("Removing updates for dynamic block updates violated threading rules");
-				}
-			}
+			unlinkFromChunk(current);
 			if (current == root) {
 				root = current.getNext();
 				current = root;
@@ -529,20 +517,36 @@ public class DynamicBlockUpdateTree {
 			if (!queuedUpdates.remove(current)) {
 				throw new IllegalStateException("Dynamic block update missing from queue when removed");
 			}
-			int previousPacked = current.getChunkPacked();
-			HashSet<DynamicBlockUpdate> chunkSet = chunkToUpdateMap.get(previousPacked);
-			if (chunkSet == null || !chunkSet.remove(current)) {
+			unlinkFromChunk(current);
+			current = current.getNext();
+		}
+		return oldRoot;
+	}
+
+	/**
+	 * Removes an update from the list of updates for its chunk
+	 * 
+	 * @param update the update to remove
+	 */
+	private void unlinkFromChunk(DynamicBlockUpdate update) {
+		if (update.chunkPrev != null) {
+			update.chunkPrev.chunkNext = update.chunkNext;
+		} else {
+			int chunkPacked = update.getChunkPacked();
+			if (chunkToUpdateMap.get(chunkPacked) != update) {
 				throw new IllegalStateException("Dynamic block update missing from chunk when removed");
 			}
-
-			if (chunkSet.isEmpty()) {
-				if (chunkToUpdateMap.remove(previousPacked) == null) {
-					throw new IllegalStateException("Removing updates for dynamic block updates violated threading rules");
-				}
+			if (update.chunkNext != null) {
+				chunkToUpdateMap.put(chunkPacked, update.chunkNext);
+			} else {
+				chunkToUpdateMap.remove(chunkPacked);
 			}
-			current = current.getNext();
 		}
-		return oldRoot;
+		if (update.chunkNext != null) {
+			update.chunkNext.chunkPrev = update.chunkPrev;
+		}
+		update.chunkPrev = null;
+		update.chunkNext = null;
 	}
 
 	public static enum UpdateResult {
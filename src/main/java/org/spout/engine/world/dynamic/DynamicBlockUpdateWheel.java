@@ -0,0 +1,310 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.world.dynamic;
+
+import java.util.Arrays;
+
+import org.spout.engine.scheduler.SpoutScheduler;
+
+/**
+ * A hierarchical timing wheel which orders the queued dynamic block updates of a region.<br>
+ * <br>
+ * Updates are bucketed by tick.  The near wheel holds one bucket per tick for the current page of 256 ticks,
+ * the far wheel holds one bucket per page for the current group of 256 pages, and later updates are kept in an
+ * overflow list.  Buckets are cascaded into the lower level as the cursor enters them.<br>
+ * <br>
+ * Updates at or before the cursor tick are moved to a binary heap, so that they are returned in the same order as
+ * {@link DynamicBlockUpdate#compareTo(DynamicBlockUpdate)}.  Buckets and the heap are intrusive, so adding and
+ * removing updates does not allocate.
+ */
+class DynamicBlockUpdateWheel {
+	private static final long RESOLUTION = SpoutScheduler.PULSE_EVERY;
+	private static final int BITS = 8;
+	private static final int SIZE = 1 << BITS;
+	private static final int MASK = SIZE - 1;
+	private static final int NEAR = 0;
+	private static final int FAR = 1;
+	private static final int OVERFLOW = 2;
+
+	private final DynamicBlockUpdate[][] buckets = new DynamicBlockUpdate[][] {new DynamicBlockUpdate[SIZE], new DynamicBlockUpdate[SIZE], new DynamicBlockUpdate[1]};
+	private final int[] counts = new int[3];
+	private DynamicBlockUpdate[] heap = new DynamicBlockUpdate[64];
+	private int heapSize = 0;
+	private long cursor = 0;
+	private int size = 0;
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Adds an update to the wheel
+	 * @param update the update
+	 */
+	public void add(DynamicBlockUpdate update) {
+		if (update.heapIndex != -1 || update.wheelLevel != -1) {
+			throw new IllegalStateException("Dynamic block update is already queued");
+		}
+		insert(update);
+		size++;
+	}
+
+	/**
+	 * Removes an update from the wheel
+	 * @param update the update
+	 * @return true if the update was queued
+	 */
+	public boolean remove(DynamicBlockUpdate update) {
+		if (update.heapIndex != -1) {
+			heapRemove(update.heapIndex);
+		} else if (update.wheelLevel != -1) {
+			unlink(update);
+		} else {
+			return false;
+		}
+		size--;
+		return true;
+	}
+
+	/**
+	 * Removes and returns the first update, if it is due at the threshold time
+	 * @param thresholdTime the threshold time
+	 * @return the first update, or null if no update is due
+	 */
+	public DynamicBlockUpdate poll(long thresholdTime) {
+		advanceTo(getSlot(thresholdTime));
+		if (heapSize == 0) {
+			return null;
+		}
+		DynamicBlockUpdate first = heap[0];
+		if (first.getNextUpdate() > thresholdTime) {
+			return null;
+		}
+		heapRemove(0);
+		size--;
+		return first;
+	}
+
+	/**
+	 * Gets the update time of the first update
+	 * @return the update time, or {@link SpoutScheduler#END_OF_THE_WORLD} if the wheel is empty
+	 */
+	public long getFirstUpdateTime() {
+		if (heapSize > 0) {
+			return heap[0].getNextUpdate();
+		}
+		if (size == 0) {
+			return SpoutScheduler.END_OF_THE_WORLD;
+		}
+		if (counts[NEAR] > 0) {
+			for (int i = (int) (cursor & MASK) + 1; i < SIZE; i++) {
+				if (buckets[NEAR][i] != null) {
+					return getFirstUpdateTime(buckets[NEAR][i]);
+				}
+			}
+		}
+		if (counts[FAR] > 0) {
+			for (int i = (int) ((cursor >> BITS) & MASK) + 1; i < SIZE; i++) {
+				if (buckets[FAR][i] != null) {
+					return getFirstUpdateTime(buckets[FAR][i]);
+				}
+			}
+		}
+		return getFirstUpdateTime(buckets[OVERFLOW][0]);
+	}
+
+	private static long getFirstUpdateTime(DynamicBlockUpdate head) {
+		long first = SpoutScheduler.END_OF_THE_WORLD;
+		for (DynamicBlockUpdate u = head; u != null; u = u.wheelNext) {
+			first = Math.min(first, u.getNextUpdate());
+		}
+		return first;
+	}
+
+	private static long getSlot(long time) {
+		return time <= 0 ? 0 : time / RESOLUTION;
+	}
+
+	private void insert(DynamicBlockUpdate update) {
+		long slot = getSlot(update.getNextUpdate());
+		if (slot <= cursor) {
+			heapAdd(update);
+		} else if ((slot >> BITS) == (cursor >> BITS)) {
+			link(update, NEAR, (int) (slot & MASK));
+		} else if ((slot >> (BITS << 1)) == (cursor >> (BITS << 1))) {
+			link(update, FAR, (int) ((slot >> BITS) & MASK));
+		} else {
+			link(update, OVERFLOW, 0);
+		}
+	}
+
+	/**
+	 * Moves the cursor forward to the given slot, moving all updates up to and including the slot to the heap
+	 */
+	private void advanceTo(long target) {
+		while (cursor < target) {
+			if (counts[NEAR] == 0 && counts[FAR] == 0) {
+				long oldCursor = cursor;
+				cursor = target;
+				if ((oldCursor >> (BITS << 1)) != (cursor >> (BITS << 1))) {
+					cascade(OVERFLOW, 0);
+				}
+				return;
+			}
+			if (counts[NEAR] == 0) {
+				long pageEnd = cursor | MASK;
+				if (target <= pageEnd) {
+					cursor = target;
+					return;
+				}
+				cursor = pageEnd;
+			}
+			cursor++;
+			if ((cursor & MASK) == 0) {
+				long page = cursor >> BITS;
+				if ((page & MASK) == 0) {
+					cascade(OVERFLOW, 0);
+				}
+				cascade(FAR, (int) (page & MASK));
+			}
+			cascade(NEAR, (int) (cursor & MASK));
+		}
+	}
+
+	/**
+	 * Removes all updates in a bucket and inserts them again relative to the current cursor
+	 */
+	private void cascade(int level, int index) {
+		DynamicBlockUpdate u = buckets[level][index];
+		if (u == null) {
+			return;
+		}
+		buckets[level][index] = null;
+		while (u != null) {
+			DynamicBlockUpdate next = u.wheelNext;
+			u.wheelNext = null;
+			u.wheelPrev = null;
+			u.wheelLevel = -1;
+			counts[level]--;
+			insert(u);
+			u = next;
+		}
+	}
+
+	private void link(DynamicBlockUpdate update, int level, int index) {
+		DynamicBlockUpdate head = buckets[level][index];
+		update.wheelLevel = level;
+		update.wheelPrev = null;
+		update.wheelNext = head;
+		if (head != null) {
+			head.wheelPrev = update;
+		}
+		buckets[level][index] = update;
+		counts[level]++;
+	}
+
+	private void unlink(DynamicBlockUpdate update) {
+		int level = update.wheelLevel;
+		if (update.wheelPrev != null) {
+			update.wheelPrev.wheelNext = update.wheelNext;
+		} else {
+			long slot = getSlot(update.getNextUpdate());
+			int index = level == NEAR ? (int) (slot & MASK) : level == FAR ? (int) ((slot >> BITS) & MASK) : 0;
+			buckets[level][index] = update.wheelNext;
+		}
+		if (update.wheelNext != null) {
+			update.wheelNext.wheelPrev = update.wheelPrev;
+		}
+		update.wheelNext = null;
+		update.wheelPrev = null;
+		update.wheelLevel = -1;
+		counts[level]--;
+	}
+
+	private void heapAdd(DynamicBlockUpdate update) {
+		if (heapSize == heap.length) {
+			heap = Arrays.copyOf(heap, heapSize << 1);
+		}
+		heap[heapSize] = update;
+		update.heapIndex = heapSize;
+		siftUp(heapSize++);
+	}
+
+	private void heapRemove(int index) {
+		DynamicBlockUpdate removed = heap[index];
+		removed.heapIndex = -1;
+		int last = --heapSize;
+		if (index != last) {
+			heap[index] = heap[last];
+			heap[index].heapIndex = index;
+			heap[last] = null;
+			siftDown(index);
+			siftUp(index);
+		} else {
+			heap[last] = null;
+		}
+	}
+
+	private void siftUp(int index) {
+		DynamicBlockUpdate update = heap[index];
+		while (index > 0) {
+			int parent = (index - 1) >> 1;
+			if (heap[parent].compareTo(update) <= 0) {
+				break;
+			}
+			heap[index] = heap[parent];
+			heap[index].heapIndex = index;
+			index = parent;
+		}
+		heap[index] = update;
+		update.heapIndex = index;
+	}
+
+	private void siftDown(int index) {
+		DynamicBlockUpdate update = heap[index];
+		int half = heapSize >> 1;
+		while (index < half) {
+			int child = (index << 1) + 1;
+			int right = child + 1;
+			if (right < heapSize && heap[right].compareTo(heap[child]) < 0) {
+				child = right;
+			}
+			if (update.compareTo(heap[child]) <= 0) {
+				break;
+			}
+			heap[index] = heap[child];
+			heap[index].heapIndex = index;
+			index = child;
+		}
+		heap[index] = update;
+		update.heapIndex = index;
+	}
+}
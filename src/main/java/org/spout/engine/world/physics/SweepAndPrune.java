@@ -0,0 +1,139 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.world.physics;
+
+import java.util.Arrays;
+
+import org.spout.api.collision.BoundingBox;
+
+/**
+ * A sweep and prune broad phase for axis aligned boxes.<br>
+ * <br>
+ * Boxes are added for a single pass and identified by the order they were added in.  {@link #sweep()} sorts the boxes
+ * by their minimum x coordinate and sweeps along the x axis, so only boxes which overlap on x are compared on y and
+ * z.  All the buffers are kept between passes, so a pass does not allocate once the buffers have grown to size.
+ */
+public class SweepAndPrune {
+	private int size = 0;
+	// min x, min y, min z, max x, max y, max z per box
+	private float[] bounds = new float[6 * 16];
+	private long[] order = new long[16];
+	private int pairCount = 0;
+	private int[] pairs = new int[32];
+
+	/**
+	 * Removes all boxes and pairs
+	 */
+	public void clear() {
+		size = 0;
+		pairCount = 0;
+	}
+
+	/**
+	 * Adds a box
+	 * @param box the box, in world coordinates
+	 * @return the index of the box
+	 */
+	public int add(BoundingBox box) {
+		if (size * 6 == bounds.length) {
+			bounds = Arrays.copyOf(bounds, bounds.length << 1);
+			order = new long[order.length << 1];
+		}
+		int i = size * 6;
+		bounds[i] = box.getMin().getX();
+		bounds[i + 1] = box.getMin().getY();
+		bounds[i + 2] = box.getMin().getZ();
+		bounds[i + 3] = box.getMax().getX();
+		bounds[i + 4] = box.getMax().getY();
+		bounds[i + 5] = box.getMax().getZ();
+		return size++;
+	}
+
+	/**
+	 * Finds all pairs of overlapping boxes, replacing the pairs of the previous sweep
+	 * @return the number of pairs found
+	 */
+	public int sweep() {
+		pairCount = 0;
+		for (int i = 0; i < size; i++) {
+			order[i] = ((long) sortable(bounds[i * 6]) << 32) | i;
+		}
+		Arrays.sort(order, 0, size);
+		for (int i = 0; i < size; i++) {
+			int a = (int) order[i];
+			int ai = a * 6;
+			float maxX = bounds[ai + 3];
+			for (int j = i + 1; j < size; j++) {
+				int b = (int) order[j];
+				int bi = b * 6;
+				if (bounds[bi] > maxX) {
+					break;
+				}
+				if (bounds[bi + 1] <= bounds[ai + 4] && bounds[ai + 1] <= bounds[bi + 4] && bounds[bi + 2] <= bounds[ai + 5] && bounds[ai + 2] <= bounds[bi + 5]) {
+					addPair(a, b);
+				}
+			}
+		}
+		return pairCount;
+	}
+
+	/**
+	 * Gets the first box of a pair found by the last sweep
+	 * @param pair the index of the pair
+	 * @return the index of the box
+	 */
+	public int getFirst(int pair) {
+		return pairs[pair << 1];
+	}
+
+	/**
+	 * Gets the second box of a pair found by the last sweep
+	 * @param pair the index of the pair
+	 * @return the index of the box
+	 */
+	public int getSecond(int pair) {
+		return pairs[(pair << 1) + 1];
+	}
+
+	private void addPair(int a, int b) {
+		int i = pairCount << 1;
+		if (i == pairs.length) {
+			pairs = Arrays.copyOf(pairs, pairs.length << 1);
+		}
+		pairs[i] = a;
+		pairs[i + 1] = b;
+		pairCount++;
+	}
+
+	/**
+	 * Maps a float to an int with the same signed ordering
+	 */
+	private static int sortable(float f) {
+		int bits = Float.floatToIntBits(f);
+		return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+	}
+}
@@ -26,64 +26,49 @@
  */
 package org.spout.engine.world.physics;
 
-import gnu.trove.iterator.TIntIterator;
-import gnu.trove.list.TIntList;
-import gnu.trove.list.array.TIntArrayList;
-import gnu.trove.list.array.TByteArrayList;
-
-import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.spout.api.material.BlockMaterial;
-import org.spout.api.util.map.TByteShortByteKeyedObjectHashMap;
 
+/**
+ * A queue of physics updates for a chunk.<br>
+ * <br>
+ * Each update is packed into a single long key holding the block coordinates and the id and data of the old material.  
+ * The queue is a ring buffer which is drained in insertion order, and queued keys are tracked in an open addressed
+ * hash set, so that duplicate updates are dropped in constant time.  The buffers are kept between ticks.
+ */
 public class UpdateQueue {
+	private static final long EMPTY = Long.MIN_VALUE;
+	private static final long NULL_MATERIAL = 1L << 62;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private long[] queue = new long[INITIAL_CAPACITY];
+	private BlockMaterial[] materials = new BlockMaterial[INITIAL_CAPACITY];
+	private int head = 0;
+	private int size = 0;
+
+	private long[] set = newSet(INITIAL_CAPACITY << 1);
 
-	private final TByteShortByteKeyedObjectHashMap<TIntList> map = new TByteShortByteKeyedObjectHashMap<TIntList>();
-	private final TByteArrayList xArray = new TByteArrayList();
-	private final TByteArrayList yArray = new TByteArrayList();
-	private final TByteArrayList zArray = new TByteArrayList();
-	private final ArrayList<BlockMaterial> materials = new ArrayList<BlockMaterial>();
 	private int y;
 	private int z;
 	private BlockMaterial oldMaterial;
-	private int maxSize = 0;
-	private int maxMapSize = 0;
 
 	public void add(int x, int y, int z, BlockMaterial oldMaterial) {
-		TIntList list = map.get(x, y & 0xFF, z);
-		if (list != null) {
-			TIntIterator i = list.iterator();
-			while (i.hasNext()) {
-				int index = i.next();
-				if (
-						(xArray.get(index) & 0xFF) == (x & 0xFF) && 
-						(yArray.get(index) & 0xFF) == (y & 0xFF) && 
-						(zArray.get(index) & 0xFF) == (z & 0xFF) &&
-						materials.get(index) == oldMaterial
-						) {
-					return;
-				}
-			}
-		} else {
-			list = new TIntArrayList();
-			map.put(x, y & 0xFF, z, list);
-			if (map.size() > maxMapSize) {
-				maxMapSize = map.size();
-			}
+		long key = pack(x, y, z, oldMaterial);
+		if (!addKey(key)) {
+			return;
+		}
+		if (size == queue.length) {
+			grow();
 		}
-		int size = xArray.size();
-		if (size > maxSize) {
-			maxSize = size;
-		} 
-		list.add(size);
-		xArray.add((byte) x);
-		yArray.add((byte) y);
-		zArray.add((byte) z);
-		materials.add(oldMaterial);
+		int tail = (head + size) & (queue.length - 1);
+		queue[tail] = key;
+		materials[tail] = oldMaterial;
+		size++;
 	}
 
 	public boolean hasNext() {
-		return !xArray.isEmpty();
+		return size > 0;
 	}
 
 	/**
@@ -92,35 +77,17 @@ public class UpdateQueue {
 	 * @return the next x coordinate
 	 */
 	public int getX() {
-		int x;
-		int index = xArray.size() - 1;
-		x = xArray.removeAt(index) & 0xFF;
-		y = yArray.removeAt(index) & 0xFF;
-		z = zArray.removeAt(index) & 0xFF;
-		oldMaterial = materials.remove(index);
-		
-		if (maxSize > 10 && index < (maxSize >> 1)) {
-			xArray.trimToSize();
-			yArray.trimToSize();
-			zArray.trimToSize();
-			materials.trimToSize();
-			maxSize = xArray.size();
-		}
-		
-		TIntList list = map.get(x, y & 0xFF, z);
-		if (list == null || !list.remove(index)) {
-			throw new IllegalStateException("Index was not in list, or list was null");
+		long key = queue[head];
+		oldMaterial = materials[head];
+		materials[head] = null;
+		head = (head + 1) & (queue.length - 1);
+		size--;
+		if (!removeKey(key)) {
+			throw new IllegalStateException("Removed update location was not in the queued set");
 		}
-		if (list.isEmpty()) {
-			if (map.remove(x, y & 0xFF, z) == null) {
-				throw new IllegalStateException("Removed update location was not in HashSet");
-			}
-			if (maxMapSize > 5 && map.size() < (maxMapSize >> 1)) {
-				map.compact();
-				maxMapSize = map.size();
-			}
-		}
-		return x;
+		y = (int) (key >> 40) & 0xFF;
+		z = (int) (key >> 32) & 0xFF;
+		return (int) (key >> 48) & 0xFF;
 	}
 	
 	/**
@@ -150,4 +117,86 @@ public class UpdateQueue {
 		return oldMaterial;
 	}
 
+	private static long pack(int x, int y, int z, BlockMaterial material) {
+		long key = ((long) (x & 0xFF) << 48) | ((long) (y & 0xFF) << 40) | ((long) (z & 0xFF) << 32);
+		if (material == null) {
+			return key | NULL_MATERIAL;
+		}
+		return key | ((material.getId() & 0xFFFFL) << 16) | (material.getData() & 0xFFFFL);
+	}
+
+	private void grow() {
+		int capacity = queue.length;
+		long[] newQueue = new long[capacity << 1];
+		BlockMaterial[] newMaterials = new BlockMaterial[capacity << 1];
+		for (int i = 0; i < size; i++) {
+			int index = (head + i) & (capacity - 1);
+			newQueue[i] = queue[index];
+			newMaterials[i] = materials[index];
+		}
+		queue = newQueue;
+		materials = newMaterials;
+		head = 0;
+		long[] oldSet = set;
+		set = newSet(newQueue.length << 1);
+		for (long key : oldSet) {
+			if (key != EMPTY) {
+				set[find(set, key)] = key;
+			}
+		}
+	}
+
+	private static long[] newSet(int capacity) {
+		long[] set = new long[capacity];
+		Arrays.fill(set, EMPTY);
+		return set;
+	}
+
+	/**
+	 * Finds the slot of a key, or the empty slot where it would be inserted, using linear probing
+	 */
+	private static int find(long[] set, long key) {
+		int mask = set.length - 1;
+		int index = hash(key) & mask;
+		while (set[index] != EMPTY && set[index] != key) {
+			index = (index + 1) & mask;
+		}
+		return index;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private boolean addKey(long key) {
+		int index = find(set, key);
+		if (set[index] == key) {
+			return false;
+		}
+		set[index] = key;
+		return true;
+	}
+
+	/**
+	 * Removes a key, shifting back the following entries of the probe sequence so no tombstones are needed
+	 */
+	private boolean removeKey(long key) {
+		int mask = set.length - 1;
+		int index = find(set, key);
+		if (set[index] != key) {
+			return false;
+		}
+		int next = (index + 1) & mask;
+		while (set[next] != EMPTY) {
+			int ideal = hash(set[next]) & mask;
+			if (((next - ideal) & mask) >= ((next - index) & mask)) {
+				set[index] = set[next];
+				index = next;
+			}
+			next = (next + 1) & mask;
+		}
+		set[index] = EMPTY;
+		return true;
+	}
 }
@@ -0,0 +1,70 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.entity;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import org.spout.engine.EngineFaker;
+import org.spout.engine.world.SpoutRegion;
+import org.spout.engine.world.SpoutWorld;
+
+public class EntityManagerTest {
+	static {
+		EngineFaker.setupEngine();
+	}
+
+	@Test
+	public void testUnindexOnRegionUnload() {
+		SpoutWorld world = Mockito.mock(SpoutWorld.class);
+		SpoutRegion region = Mockito.mock(SpoutRegion.class);
+		Mockito.when(region.getWorld()).thenReturn(world);
+		EntityManager manager = new EntityManager(region);
+
+		SpoutEntity finalized = getEntity(1);
+		SpoutEntity unloaded = getEntity(2);
+		manager.addEntity(finalized);
+		manager.addEntity(unloaded);
+		Mockito.verify(world).indexEntity(finalized);
+		Mockito.verify(world).indexEntity(unloaded);
+
+		// An entity removed by the finalize run leaves the index straight away
+		manager.removeEntity(finalized);
+		Mockito.verify(world).unindexEntity(finalized);
+
+		// The last chunk of the region was unloaded, so the manager is never finalized again
+		manager.unindexAll();
+		Mockito.verify(world).unindexEntity(unloaded);
+		Mockito.verify(world, Mockito.times(1)).unindexEntity(finalized);
+	}
+
+	private static SpoutEntity getEntity(int id) {
+		SpoutEntity entity = Mockito.mock(SpoutEntity.class);
+		Mockito.when(entity.getId()).thenReturn(id);
+		return entity;
+	}
+}
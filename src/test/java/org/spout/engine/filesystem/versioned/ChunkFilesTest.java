@@ -0,0 +1,198 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.filesystem.versioned;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.spout.engine.filesystem.versioned.ChunkFiles.ChunkRecord;
+import org.spout.nbt.ByteArrayTag;
+import org.spout.nbt.ByteTag;
+import org.spout.nbt.CompoundMap;
+import org.spout.nbt.CompoundTag;
+import org.spout.nbt.IntArrayTag;
+import org.spout.nbt.IntTag;
+import org.spout.nbt.ListTag;
+import org.spout.nbt.LongTag;
+import org.spout.nbt.ShortTag;
+import org.spout.nbt.stream.NBTOutputStream;
+
+public class ChunkFilesTest {
+
+	@Test
+	public void testConvertToBinary() throws IOException {
+		byte[] nbt = getNBTChunk();
+		byte[] binary = ChunkFiles.convertToBinary(new ByteArrayInputStream(nbt));
+
+		ChunkRecord fromNBT = ChunkFiles.readChunk(new ByteArrayInputStream(nbt));
+		ChunkRecord fromBinary = ChunkFiles.readChunk(new ByteArrayInputStream(binary));
+		assertRecordsEqual(fromNBT, fromBinary);
+
+		assertNull("Binary chunk was converted again", ChunkFiles.convertToBinary(new ByteArrayInputStream(binary)));
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws IOException {
+		ChunkRecord record = ChunkFiles.readChunk(new ByteArrayInputStream(getNBTChunk()));
+		byte[] first = writeBinary(record);
+		ChunkRecord read = ChunkFiles.readChunk(new ByteArrayInputStream(first));
+		assertRecordsEqual(record, read);
+		assertArrayEquals("Binary chunk changed after a round trip", first, writeBinary(read));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedBinary() throws IOException {
+		byte[] binary = writeBinary(ChunkFiles.readChunk(new ByteArrayInputStream(getNBTChunk())));
+		ChunkFiles.readChunk(new ByteArrayInputStream(Arrays.copyOf(binary, binary.length / 2)));
+	}
+
+	@Test
+	public void testManyDynamicUpdates() throws IOException {
+		ChunkRecord record = ChunkFiles.readChunk(new ByteArrayInputStream(getNBTChunk()));
+		int count = 3 * 4096 + 5;
+		record.updateCount = count;
+		record.updatePacked = new int[count];
+		record.updateNext = new long[count];
+		record.updateData = new int[count];
+		for (int i = 0; i < count; i++) {
+			record.updatePacked[i] = i % 4096;
+			record.updateNext[i] = 100L + i;
+			record.updateData[i] = i;
+		}
+		assertRecordsEqual(record, ChunkFiles.readChunk(new ByteArrayInputStream(writeBinary(record))));
+	}
+
+	@Test
+	public void testBinaryBounds() throws IOException {
+		ChunkRecord record = ChunkFiles.readChunk(new ByteArrayInputStream(getNBTChunk()));
+		record.extraData = new byte[(1 << 24) + 1];
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertFalse(ChunkFiles.writeBinary(record, new DataOutputStream(out)));
+		assertEquals("A chunk which can't be read back was partly written", 0, out.size());
+	}
+
+	private static byte[] writeBinary(ChunkRecord record) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(out);
+		assertTrue(ChunkFiles.writeBinary(record, dos));
+		dos.flush();
+		return out.toByteArray();
+	}
+
+	private static byte[] getNBTChunk() throws IOException {
+		CompoundMap map = new CompoundMap();
+		map.put(new ByteTag("version", ChunkFiles.CHUNK_VERSION));
+		map.put(new ByteTag("format", (byte) 0));
+		map.put(new IntTag("x", 3));
+		map.put(new IntTag("y", -2));
+		map.put(new IntTag("z", 17));
+		map.put(new ByteTag("populationState", (byte) 1));
+		map.put(new IntArrayTag("palette", new int[] {0, 65536, 131073}));
+		map.put(new IntTag("packedWidth", 2));
+		int[] packed = new int[128];
+		for (int i = 0; i < packed.length; i++) {
+			packed[i] = i * 0x01010101;
+		}
+		map.put(new IntArrayTag("packedBlockArray", packed));
+		map.put(new ByteArrayTag("extraData", new byte[] {1, 2, 3, 4}));
+
+		List<CompoundTag> updates = new ArrayList<CompoundTag>();
+		for (int i = 0; i < 3; i++) {
+			CompoundMap update = new CompoundMap();
+			update.put(new IntTag("packedPosition", i * 1000));
+			update.put(new LongTag("nextUpdate", 5000L + i));
+			update.put(new IntTag("data", -i));
+			updates.add(new CompoundTag("update", update));
+		}
+		map.put(new ListTag<CompoundTag>("dynamic_updates", CompoundTag.class, updates));
+
+		List<CompoundTag> components = new ArrayList<CompoundTag>();
+		CompoundMap component = new CompoundMap();
+		component.put(new ShortTag("packed", (short) 291));
+		component.put(new ByteArrayTag("data", new byte[] {9, 8, 7}));
+		components.add(new CompoundTag("component", component));
+		map.put(new ListTag<CompoundTag>("block_components", CompoundTag.class, components));
+
+		CompoundMap lighting = new CompoundMap();
+		for (int id = 1; id <= 2; id++) {
+			CompoundMap buffer = new CompoundMap();
+			buffer.put(new IntTag("manager_id", id));
+			buffer.put(new ByteArrayTag("light_data", new byte[] {(byte) id, 0, (byte) -id}));
+			lighting.put(new CompoundTag("lighting_" + id, buffer));
+		}
+		map.put(new CompoundTag("light_buffers", lighting));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		NBTOutputStream nbt = new NBTOutputStream(out, false);
+		nbt.writeTag(new CompoundTag("chunk", map));
+		nbt.close();
+		return out.toByteArray();
+	}
+
+	private static void assertRecordsEqual(ChunkRecord expected, ChunkRecord actual) {
+		assertEquals(expected.x, actual.x);
+		assertEquals(expected.y, actual.y);
+		assertEquals(expected.z, actual.z);
+		assertEquals(expected.populationState, actual.populationState);
+		assertEquals(expected.lightStable, actual.lightStable);
+		assertArrayEquals(expected.palette, actual.palette);
+		assertEquals(expected.packedWidth, actual.packedWidth);
+		assertArrayEquals(expected.packedBlockArray, actual.packedBlockArray);
+		assertArrayEquals(expected.extraData, actual.extraData);
+
+		assertEquals(expected.updateCount, actual.updateCount);
+		for (int i = 0; i < expected.updateCount; i++) {
+			assertEquals(expected.updatePacked[i], actual.updatePacked[i]);
+			assertEquals(expected.updateNext[i], actual.updateNext[i]);
+			assertEquals(expected.updateData[i], actual.updateData[i]);
+		}
+
+		assertEquals(expected.componentCount, actual.componentCount);
+		for (int i = 0; i < expected.componentCount; i++) {
+			assertEquals(expected.componentPacked[i], actual.componentPacked[i]);
+			assertArrayEquals(expected.componentData[i], actual.componentData[i]);
+		}
+
+		assertEquals(expected.lightCount, actual.lightCount);
+		for (int i = 0; i < expected.lightCount; i++) {
+			assertEquals(expected.lightManagerIds[i], actual.lightManagerIds[i]);
+			assertArrayEquals(expected.lightData[i], actual.lightData[i]);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.protocol;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.junit.Test;
+
+import org.spout.engine.EngineFaker;
+import org.spout.engine.protocol.builtin.SpoutProtocol;
+
+import static org.junit.Assert.assertEquals;
+
+public class FramedProtocolTest {
+	static {
+		EngineFaker.setupEngine();
+	}
+
+	@Test
+	public void testFrameLength() throws Exception {
+		FramedProtocol protocol = SpoutProtocol.INSTANCE;
+		int header = protocol.getHeaderLength();
+		assertEquals(header + 10, protocol.getFrameLength(header(0, 10), 0));
+		assertEquals(header, protocol.getFrameLength(header(0, 0), 0));
+		ChannelBuffer partial = header(0, 10);
+		partial.writerIndex(header - 1);
+		assertEquals(-1, protocol.getFrameLength(partial, 0));
+	}
+
+	@Test(expected = CorruptedFrameException.class)
+	public void testNegativeLength() throws Exception {
+		SpoutProtocol.INSTANCE.getFrameLength(header(0, -6), 0);
+	}
+
+	@Test(expected = CorruptedFrameException.class)
+	public void testNegativeLengthInsideHeader() throws Exception {
+		SpoutProtocol.INSTANCE.getFrameLength(header(0, -1), 0);
+	}
+
+	@Test(expected = CorruptedFrameException.class)
+	public void testOversizedLength() throws Exception {
+		SpoutProtocol.INSTANCE.getFrameLength(header(0, Integer.MAX_VALUE), 0);
+	}
+
+	private static ChannelBuffer header(int opcode, int length) {
+		ChannelBuffer buf = ChannelBuffers.buffer(6);
+		buf.writeShort(opcode);
+		buf.writeInt(length);
+		return buf;
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.protocol;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import org.spout.api.protocol.Message;
+import org.spout.api.protocol.MessageCodec;
+import org.spout.api.protocol.Protocol;
+
+import org.spout.engine.EngineFaker;
+import org.spout.engine.protocol.builtin.SpoutProtocol;
+import org.spout.engine.protocol.builtin.message.BlockUpdateMessage;
+import org.spout.engine.protocol.builtin.message.ClickRequestMessage;
+import org.spout.engine.protocol.builtin.message.CommandMessage;
+import org.spout.engine.protocol.builtin.message.LoginMessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+public class NetworkSendThreadTest {
+	static {
+		EngineFaker.setupEngine();
+	}
+	private static final Message[] TEST_MESSAGES = new Message[]{
+		new BlockUpdateMessage(1, 2, 3, (short) 4, (short) 5),
+		new ClickRequestMessage((byte) 0, (byte) 0, ClickRequestMessage.Action.LEFT),
+		new CommandMessage("test", "hi"),
+		new LoginMessage("Spouty", 0)
+	};
+
+	@Test
+	public void testEncodeMatchesPipeline() throws Exception {
+		testEncodeMatchesPipeline(false);
+		testEncodeMatchesPipeline(true);
+	}
+
+	@Test
+	public void testCoalescedFrames() throws Exception {
+		testCoalescedFrames(false);
+		testCoalescedFrames(true);
+	}
+
+	/**
+	 * The pipeline encoder writes the protocol header followed by the codec's encoding for the direction
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private void testEncodeMatchesPipeline(boolean upstream) throws Exception {
+		Protocol protocol = SpoutProtocol.INSTANCE;
+		for (Message message : TEST_MESSAGES) {
+			MessageCodec codec = protocol.getCodecLookupService().find(message.getClass());
+			ChannelBuffer data = upstream ? codec.encodeToServer(message) : codec.encodeToClient(message);
+			ChannelBuffer expected = ChannelBuffers.wrappedBuffer(protocol.writeHeader(codec, data), data);
+			ChannelBuffer encoded = NetworkSendThread.encode(protocol, message, upstream);
+			assertNotNull(encoded);
+			assertEquals("Failed for: " + message.getClass().getName(), expected, encoded);
+		}
+	}
+
+	/**
+	 * Messages coalesced into one buffer must still be split and decoded in order on the other end
+	 */
+	@SuppressWarnings("rawtypes")
+	private void testCoalescedFrames(boolean upstream) throws Exception {
+		SpoutProtocol protocol = SpoutProtocol.INSTANCE;
+		ChannelBuffer[] buffers = new ChannelBuffer[TEST_MESSAGES.length];
+		for (int i = 0; i < TEST_MESSAGES.length; i++) {
+			buffers[i] = NetworkSendThread.encode(protocol, TEST_MESSAGES[i], upstream);
+		}
+		ChannelBuffer coalesced = ChannelBuffers.wrappedBuffer(buffers);
+
+		int index = 0;
+		for (int i = 0; i < TEST_MESSAGES.length; i++) {
+			Message message = TEST_MESSAGES[i];
+			MessageCodec<?> codec = protocol.getCodecLookupService().find(message.getClass());
+			int length = protocol.getFrameLength(coalesced, index);
+			assertEquals(buffers[i].readableBytes(), length);
+			assertEquals(codec.getOpcode(), protocol.getOpcode(coalesced, index));
+
+			ChannelBuffer frame = coalesced.slice(index, length);
+			MessageCodec read = protocol.readHeader(frame);
+			assertSame(codec, read);
+			Message decoded = upstream ? read.decodeFromClient(frame) : read.decodeFromServer(frame);
+			assertEquals("Failed for: " + message.getClass().getName(), message, decoded);
+			assertEquals(0, frame.readableBytes());
+			index += length;
+		}
+		assertEquals(coalesced.writerIndex(), index);
+	}
+}
@@ -32,6 +32,7 @@ import java.util.Random;
 import org.apache.commons.lang3.tuple.Pair;
 import org.spout.api.component.DatatableComponent;
 import org.spout.api.geo.World;
+import org.spout.api.geo.cuboid.Chunk;
 import org.spout.api.geo.discrete.Point;
 import org.spout.api.geo.discrete.Transform;
 
@@ -51,6 +52,7 @@ import org.spout.engine.protocol.builtin.message.CommandMessage;
 import org.spout.engine.protocol.builtin.message.CuboidBlockUpdateMessage;
 import org.spout.engine.protocol.builtin.message.EntityDatatableMessage;
 import org.spout.engine.protocol.builtin.message.LoginMessage;
+import org.spout.engine.protocol.builtin.message.MultiBlockUpdateMessage;
 import org.spout.engine.protocol.builtin.message.SyncedMapMessage;
 import org.spout.engine.protocol.builtin.message.UpdateEntityMessage;
 import org.spout.engine.protocol.builtin.message.WorldChangeMessage;
@@ -74,16 +76,19 @@ public class SpoutProtocolTest extends BaseProtocolTest {
 	static final byte[] TEST_SERIALIZED_DATA = new DatatableComponent().serialize();
 	private static final Message[] TEST_MESSAGES = new Message[]{
 		new BlockUpdateMessage(0, 0, 0, (short) 0, (short) 0),
-		new ChunkDataMessage(0, 0, 0, chunkData, chunkData, null, null),
+		new ChunkDataMessage(0, 0, 0, new int[] {0, 1}, 1, new int[Chunk.BLOCKS.VOLUME >> 5], new short[] {(short) 1}, new byte[][] {new byte[Chunk.BLOCKS.HALF_VOLUME]}, null, null),
+		new ChunkDataMessage(0, 0, 0, new int[0], 16, new int[Chunk.BLOCKS.VOLUME], new short[0], new byte[0][], biomeData1, "TestBiomeManager"),
 		new ClickRequestMessage((byte) 0, (byte) 0, ClickRequestMessage.Action.LEFT),
 		new ClickResponseMessage((byte) 0, (byte) 0, ClickResponseMessage.Response.ALLOW),
 		new CommandMessage("test", "hi"),
 		new CuboidBlockUpdateMessage(Vector3.ZERO, Vector3.UP, new short[0], new short[0], new byte[0], new byte[0]),
 		new EntityDatatableMessage(0, TEST_SERIALIZED_DATA),
 		new LoginMessage("Spouty", 0),
+		new MultiBlockUpdateMessage(0, 0, 0, new short[] {MultiBlockUpdateMessage.packCoords(1, 2, 3)}, new short[] {(short) 1}, new short[] {(short) 0}),
 		new SyncedMapMessage(0, SyncedMapEvent.Action.ADD, new ArrayList<Pair<Integer, String>>()),
 		new WorldChangeMessage("world", EngineFaker.TEST_UUID, TEST_TRANSFORM, TEST_SERIALIZED_DATA),
-		new UpdateEntityMessage(0, TEST_TRANSFORM, UpdateEntityMessage.UpdateAction.TRANSFORM, new NullRepositionManager())
+		new UpdateEntityMessage(0, TEST_TRANSFORM, UpdateEntityMessage.UpdateAction.TRANSFORM, new NullRepositionManager()),
+		new UpdateEntityMessage(0, new short[] {(short) 1, (short) -2, (short) 3}, null)
 	};
 
 	static {
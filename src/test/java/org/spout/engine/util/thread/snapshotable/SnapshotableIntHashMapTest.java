@@ -0,0 +1,111 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.util.thread.snapshotable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SnapshotableIntHashMapTest {
+	@Test
+	public void testSwapRemove() {
+		SnapshotManager manager = new SnapshotManager();
+		SnapshotableIntHashMap<String> map = new SnapshotableIntHashMap<String>(manager);
+		map.put(1, "a");
+		map.put(2, "b");
+		map.put(3, "c");
+		manager.copyAllSnapshots();
+		assertEquals(3, map.size());
+
+		map.remove(1);
+		assertEquals("a", map.get(1));
+		manager.copyAllSnapshots();
+
+		// The last value moves into the removed slot
+		assertEquals(2, map.size());
+		assertNull(map.get(1));
+		assertEquals("c", map.getValue(0));
+		assertEquals("b", map.getValue(1));
+		assertEquals("b", map.get(2));
+		assertEquals("c", map.get(3));
+
+		map.remove(3);
+		manager.copyAllSnapshots();
+		assertEquals(1, map.size());
+		assertEquals("b", map.getValue(0));
+		assertEquals("b", map.get(2));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testValuesBounds() {
+		SnapshotManager manager = new SnapshotManager();
+		SnapshotableIntHashMap<String> map = new SnapshotableIntHashMap<String>(manager);
+		map.put(1, "a");
+		manager.copyAllSnapshots();
+		map.getValues().get(1);
+	}
+
+	@Test
+	public void testAgainstModel() {
+		Random r = new Random(14);
+		SnapshotManager manager = new SnapshotManager();
+		SnapshotableIntHashMap<Integer> map = new SnapshotableIntHashMap<Integer>(manager);
+		Map<Integer, Integer> live = new HashMap<Integer, Integer>();
+		for (int tick = 0; tick < 100; tick++) {
+			// Alternate growing and shrinking so the snapshot array is resized and compacted
+			int bias = (tick / 10) % 2 == 0 ? 3 : 1;
+			for (int i = 0; i < 100; i++) {
+				int key = r.nextInt(200) - 100;
+				if (r.nextInt(4) < bias) {
+					map.put(key, i);
+					live.put(key, i);
+				} else {
+					assertEquals(live.remove(key), map.remove(key));
+				}
+			}
+			manager.copyAllSnapshots();
+
+			assertEquals(live.size(), map.size());
+			for (Map.Entry<Integer, Integer> e : live.entrySet()) {
+				assertEquals(e.getValue(), map.get(e.getKey()));
+			}
+			List<Integer> values = map.getValues();
+			assertEquals(live.size(), values.size());
+			assertEquals(new HashSet<Integer>(live.values()), new HashSet<Integer>(values));
+			for (int i = 0; i < values.size(); i++) {
+				assertEquals(values.get(i), map.getValue(i));
+			}
+		}
+	}
+}
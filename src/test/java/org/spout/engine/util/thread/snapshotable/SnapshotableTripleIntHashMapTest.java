@@ -0,0 +1,133 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.util.thread.snapshotable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SnapshotableTripleIntHashMapTest {
+	private static final int MIN = -(1 << 20);
+	private static final int MAX = (1 << 20) - 1;
+
+	@Test
+	public void testExtremeCoordinates() {
+		SnapshotManager manager = new SnapshotManager();
+		SnapshotableTripleIntHashMap<String> map = new SnapshotableTripleIntHashMap<String>(manager);
+		map.put(MIN, MAX, -1, "a");
+		map.put(MAX, MIN, 0, "b");
+		map.put(-1, -1, MIN, "c");
+
+		assertNull(map.get(MIN, MAX, -1));
+		assertEquals("a", map.getLive(MIN, MAX, -1));
+		manager.copyAllSnapshots();
+
+		assertEquals("a", map.get(MIN, MAX, -1));
+		assertEquals("b", map.get(MAX, MIN, 0));
+		assertEquals("c", map.get(-1, -1, MIN));
+		assertEquals(3, map.get().size());
+	}
+
+	@Test
+	public void testRemovalDelayed() {
+		SnapshotManager manager = new SnapshotManager();
+		SnapshotableTripleIntHashMap<String> map = new SnapshotableTripleIntHashMap<String>(manager);
+		map.put(1, -2, 3, "a");
+		manager.copyAllSnapshots();
+
+		assertEquals("a", map.remove(1, -2, 3));
+		assertNull(map.getLive(1, -2, 3));
+		assertEquals("a", map.get(1, -2, 3));
+		assertEquals("a", map.getValue(1, -2, 3));
+		manager.copyAllSnapshots();
+		assertNull(map.get(1, -2, 3));
+
+		// Removing and re-adding within a tick leaves the snapshot unchanged
+		map.put(4, 5, -6, "b");
+		manager.copyAllSnapshots();
+		map.remove(4, 5, -6);
+		map.put(4, 5, -6, "b");
+		manager.copyAllSnapshots();
+		assertEquals("b", map.get(4, 5, -6));
+		assertEquals(1, map.get().size());
+	}
+
+	@Test
+	public void testConditionalUpdates() {
+		SnapshotManager manager = new SnapshotManager();
+		SnapshotableTripleIntHashMap<String> map = new SnapshotableTripleIntHashMap<String>(manager);
+		assertNull(map.putIfAbsent(0, 0, 0, "a"));
+		assertEquals("a", map.putIfAbsent(0, 0, 0, "b"));
+		manager.copyAllSnapshots();
+		assertEquals("a", map.get(0, 0, 0));
+
+		assertFalse(map.remove(0, 0, 0, "b"));
+		assertTrue(map.remove(0, 0, 0, "a"));
+		manager.copyAllSnapshots();
+		assertNull(map.get(0, 0, 0));
+	}
+
+	@Test
+	public void testAgainstModel() {
+		Random r = new Random(13);
+		SnapshotManager manager = new SnapshotManager();
+		SnapshotableTripleIntHashMap<Integer> map = new SnapshotableTripleIntHashMap<Integer>(manager);
+		Map<List<Integer>, Integer> live = new HashMap<List<Integer>, Integer>();
+		Map<List<Integer>, Integer> snapshot = new HashMap<List<Integer>, Integer>();
+		for (int tick = 0; tick < 100; tick++) {
+			for (int i = 0; i < 200; i++) {
+				int x = r.nextInt(8) - 4;
+				int y = r.nextBoolean() ? MIN + r.nextInt(4) : MAX - r.nextInt(4);
+				int z = r.nextInt(8) - 4;
+				List<Integer> key = Arrays.asList(x, y, z);
+				if (r.nextBoolean()) {
+					map.put(x, y, z, i);
+					live.put(key, i);
+				} else {
+					assertEquals(live.remove(key), map.remove(x, y, z));
+				}
+				assertEquals(snapshot.get(key), map.get(x, y, z));
+			}
+			manager.copyAllSnapshots();
+			snapshot = new HashMap<List<Integer>, Integer>(live);
+			assertEquals(snapshot.size(), map.get().size());
+			for (Map.Entry<List<Integer>, Integer> e : snapshot.entrySet()) {
+				List<Integer> key = e.getKey();
+				assertEquals(e.getValue(), map.get(key.get(0), key.get(1), key.get(2)));
+			}
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.world;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import org.spout.api.geo.LoadOption;
+import org.spout.api.geo.cuboid.Chunk;
+import org.spout.engine.EngineFaker;
+import org.spout.engine.protocol.builtin.CachedChunkData;
+import org.spout.engine.scheduler.SpoutScheduler;
+
+public class SpoutChunkTest {
+	static {
+		EngineFaker.setupEngine();
+		Mockito.when(EngineFaker.setupEngine().getScheduler()).thenReturn(Mockito.mock(SpoutScheduler.class));
+	}
+
+	@Test
+	public void testRelightInvalidatesNetworkCache() {
+		SpoutChunk chunk = getChunk();
+		AtomicReference<CachedChunkData> cache = chunk.getNetworkCache();
+		cache.set(new CachedChunkData(chunk.getModificationGeneration(), null));
+		assertEquals(cache.get().getGeneration(), chunk.getModificationGeneration());
+
+		// Lighting managers get the light buffers of the chunks they write to, without queueing the chunks as dirty
+		chunk.getLightBuffer((short) 0);
+		assertFalse(cache.get().getGeneration() == chunk.getModificationGeneration());
+
+		int generation = chunk.getModificationGeneration();
+		chunk.getLightBuffer((short) 0);
+		assertFalse(generation == chunk.getModificationGeneration());
+	}
+
+	private static SpoutChunk getChunk() {
+		SpoutWorld world = Mockito.mock(SpoutWorld.class);
+		SpoutColumn column = Mockito.mock(SpoutColumn.class);
+		Mockito.when(world.getColumn(Mockito.anyInt(), Mockito.anyInt(), Mockito.any(LoadOption.class))).thenReturn(column);
+		SpoutRegion region = Mockito.mock(SpoutRegion.class);
+		return new SpoutChunk(world, region, 0, 0, 0, new short[Chunk.BLOCKS.VOLUME], new short[Chunk.BLOCKS.VOLUME], null);
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.world;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import org.spout.api.scheduler.TickStage;
+import org.spout.api.util.cuboid.ImmutableHeightMapBuffer;
+import org.spout.api.util.list.concurrent.setqueue.SetQueue;
+import org.spout.engine.EngineFaker;
+
+public class SpoutColumnTest {
+	private static final int SIZE = SpoutColumn.BLOCKS.SIZE;
+	private static final int BITS = SpoutColumn.BLOCKS.BITS;
+
+	static {
+		EngineFaker.setupEngine();
+	}
+
+	@Test
+	public void testGetIndex() {
+		boolean[] used = new boolean[SpoutColumn.AREA];
+		for (int x = 0; x < SIZE; x++) {
+			for (int z = 0; z < SIZE; z++) {
+				int index = SpoutColumn.getIndex(x, z);
+				assertTrue(index >= 0 && index < SpoutColumn.AREA);
+				assertFalse(used[index]);
+				used[index] = true;
+				assertEquals(x, index >> BITS);
+				assertEquals(z, index & SpoutColumn.BLOCKS.MASK);
+				// World coordinates map to the same block column
+				assertEquals(index, SpoutColumn.getIndex(x + SIZE * 3, z - SIZE * 5));
+			}
+		}
+		assertEquals(SpoutColumn.AREA - 1, SpoutColumn.getIndex(-1, -1));
+	}
+
+	@Test
+	public void testFillDirty() {
+		int[][] heights = new int[SIZE][SIZE];
+		for (int[] row : heights) {
+			Arrays.fill(row, 10);
+		}
+		heights[2][2] = Integer.MIN_VALUE;
+		SpoutColumn column = new SpoutColumn(heights, getWorld(), 1, -1);
+
+		TickStage.setStage(TickStage.STAGE1);
+		column.getHeightMap().set(SpoutColumn.getIndex(3, 5), 20);
+		column.setDirty(3, 5);
+		column.setDirty(3, 5);
+		column.getHeightMap().set(SpoutColumn.getIndex(15, 0), 5);
+		column.setDirty(15, 0);
+		column.setDirty(0, 1);
+		// The previous height is unknown, so the column is skipped
+		column.getHeightMap().set(SpoutColumn.getIndex(2, 2), 30);
+		column.setDirty(2, 2);
+
+		TickStage.setStage(TickStage.LIGHTING);
+		int[] x = new int[SpoutColumn.AREA];
+		int[] z = new int[SpoutColumn.AREA];
+		int[] newHeight = new int[SpoutColumn.AREA];
+		int[] oldHeight = new int[SpoutColumn.AREA];
+		assertEquals(3, column.fillDirty(0, x, newHeight, oldHeight, z, 0, 256));
+
+		// Dirty columns are reported in index order
+		int bx = 1 << BITS;
+		int bz = -1 << BITS;
+		assertEquals(bx, x[0]);
+		assertEquals(bz + 1, z[0]);
+		assertEquals(10, newHeight[0]);
+		assertEquals(10, oldHeight[0]);
+		assertEquals(bx + 3, x[1]);
+		assertEquals(bz + 5, z[1]);
+		assertEquals(20, newHeight[1]);
+		assertEquals(10, oldHeight[1]);
+		assertEquals(bx + 15, x[2]);
+		assertEquals(bz, z[2]);
+		assertEquals(5, newHeight[2]);
+		assertEquals(10, oldHeight[2]);
+
+		// Only changes crossing the height range are reported
+		assertEquals(1, column.fillDirty(0, x, newHeight, oldHeight, z, 15, 256));
+		assertEquals(bx + 3, x[0]);
+		assertEquals(bz + 5, z[0]);
+		assertEquals(2, column.fillDirty(2, x, newHeight, oldHeight, z, 256, 512));
+
+		TickStage.setStage(TickStage.FINALIZE);
+		column.onFinalize();
+		TickStage.setStage(TickStage.LIGHTING);
+		assertEquals(0, column.fillDirty(0, x, newHeight, oldHeight, z, 0, 256));
+	}
+
+	@Test
+	public void testHeightMapBuffer() {
+		SpoutColumn column = new SpoutColumn(new int[SIZE][SIZE], getWorld(), 0, 0);
+		ImmutableHeightMapBuffer buffer = column.getHeightMapBuffer();
+		assertSame(buffer, column.getHeightMapBuffer());
+
+		TickStage.setStage(TickStage.STAGE1);
+		column.getHeightMap().set(SpoutColumn.getIndex(4, 4), 1);
+		column.setDirty(4, 4);
+		ImmutableHeightMapBuffer changed = column.getHeightMapBuffer();
+		assertNotSame(buffer, changed);
+		assertSame(changed, column.getHeightMapBuffer());
+	}
+
+	private static SpoutWorld getWorld() {
+		SpoutWorld world = Mockito.mock(SpoutWorld.class);
+		Mockito.when(world.getColumnDirtyQueue(Mockito.anyInt(), Mockito.anyInt())).thenReturn(new SetQueue<SpoutColumn>(SpoutColumn.AREA));
+		return world;
+	}
+}
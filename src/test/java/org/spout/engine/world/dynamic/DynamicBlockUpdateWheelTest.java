@@ -0,0 +1,184 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.world.dynamic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.spout.engine.scheduler.SpoutScheduler;
+
+public class DynamicBlockUpdateWheelTest {
+	private static final long TICK = SpoutScheduler.PULSE_EVERY;
+	private static final long PAGE = TICK << 8;
+	private static final long GROUP = PAGE << 8;
+
+	@Test
+	public void testOrdering() {
+		Random r = new Random(1);
+		DynamicBlockUpdateWheel wheel = new DynamicBlockUpdateWheel();
+		List<DynamicBlockUpdate> expected = new ArrayList<DynamicBlockUpdate>();
+		for (int i = 0; i < 5000; i++) {
+			// Spread the updates over the near wheel, the far wheel and the overflow list
+			long time = (long) (r.nextDouble() * 3 * GROUP);
+			DynamicBlockUpdate update = new DynamicBlockUpdate(r.nextInt(256), r.nextInt(256), r.nextInt(256), time, i);
+			wheel.add(update);
+			expected.add(update);
+		}
+		Collections.sort(expected);
+
+		List<DynamicBlockUpdate> polled = new ArrayList<DynamicBlockUpdate>();
+		long threshold = 0;
+		while (!wheel.isEmpty()) {
+			threshold += (long) (r.nextDouble() * PAGE);
+			DynamicBlockUpdate update;
+			while ((update = wheel.poll(threshold)) != null) {
+				assertTrue("Update polled before it was due", update.getNextUpdate() <= threshold);
+				polled.add(update);
+			}
+			assertTrue("Due update was not polled", wheel.getFirstUpdateTime() > threshold);
+		}
+		assertEquals(expected, polled);
+	}
+
+	@Test
+	public void testPageAndGroupBoundaries() {
+		long[] times = new long[] {
+				PAGE - TICK, PAGE, PAGE + TICK,
+				GROUP - TICK, GROUP, GROUP + TICK,
+				2 * GROUP - 1, 2 * GROUP, 2 * GROUP + PAGE};
+		DynamicBlockUpdateWheel wheel = new DynamicBlockUpdateWheel();
+		for (int i = times.length - 1; i >= 0; i--) {
+			wheel.add(new DynamicBlockUpdate(0, 0, 0, times[i], i));
+		}
+		for (int i = 0; i < times.length; i++) {
+			assertEquals(times[i], wheel.getFirstUpdateTime());
+			assertNull("Update polled before it was due", wheel.poll(times[i] - 1));
+			DynamicBlockUpdate update = wheel.poll(times[i]);
+			assertEquals(times[i], update.getNextUpdate());
+			assertEquals(i, update.getData());
+		}
+		assertTrue(wheel.isEmpty());
+		assertEquals(SpoutScheduler.END_OF_THE_WORLD, wheel.getFirstUpdateTime());
+	}
+
+	@Test
+	public void testSameTimeOrder() {
+		DynamicBlockUpdateWheel wheel = new DynamicBlockUpdateWheel();
+		List<DynamicBlockUpdate> expected = new ArrayList<DynamicBlockUpdate>();
+		for (int i = 0; i < 100; i++) {
+			DynamicBlockUpdate update = new DynamicBlockUpdate(i, 0, 0, PAGE + 7, i);
+			expected.add(update);
+			wheel.add(update);
+		}
+		for (DynamicBlockUpdate update : expected) {
+			assertSame(update, wheel.poll(PAGE + 7));
+		}
+	}
+
+	@Test
+	public void testRemove() {
+		Random r = new Random(2);
+		DynamicBlockUpdateWheel wheel = new DynamicBlockUpdateWheel();
+		List<DynamicBlockUpdate> kept = new ArrayList<DynamicBlockUpdate>();
+		List<DynamicBlockUpdate> removed = new ArrayList<DynamicBlockUpdate>();
+		for (int i = 0; i < 2000; i++) {
+			long time = (long) (r.nextDouble() * 3 * GROUP);
+			DynamicBlockUpdate update = new DynamicBlockUpdate(0, 0, 0, time, i);
+			wheel.add(update);
+			(r.nextBoolean() ? kept : removed).add(update);
+		}
+		// Move some updates into the heap before removing
+		List<DynamicBlockUpdate> polled = new ArrayList<DynamicBlockUpdate>();
+		drain(wheel, PAGE, polled);
+		for (DynamicBlockUpdate update : removed) {
+			if (!polled.contains(update)) {
+				assertTrue("Queued update was not removed", wheel.remove(update));
+			}
+			assertFalse("Update was removed twice", wheel.remove(update));
+		}
+		drain(wheel, SpoutScheduler.END_OF_THE_WORLD, polled);
+		assertTrue(wheel.isEmpty());
+		for (DynamicBlockUpdate update : polled) {
+			if (removed.contains(update)) {
+				assertTrue("Removed update was polled", update.getNextUpdate() <= PAGE);
+			}
+		}
+		for (DynamicBlockUpdate update : kept) {
+			assertTrue("Kept update was not polled", polled.contains(update));
+		}
+	}
+
+	@Test
+	public void testRemoveAfterCascade() {
+		DynamicBlockUpdateWheel wheel = new DynamicBlockUpdateWheel();
+		// Starts in the far wheel, then moves to the near wheel when the cursor enters its page
+		DynamicBlockUpdate far = new DynamicBlockUpdate(0, 0, 0, 3 * PAGE + 10 * TICK, 0);
+		DynamicBlockUpdate farNeighbour = new DynamicBlockUpdate(0, 0, 0, 3 * PAGE + 10 * TICK, 1);
+		// Starts in the overflow list, then moves to the far wheel when the cursor enters its group
+		DynamicBlockUpdate overflow = new DynamicBlockUpdate(0, 0, 0, GROUP + 5 * PAGE, 2);
+		DynamicBlockUpdate last = new DynamicBlockUpdate(0, 0, 0, GROUP + 6 * PAGE, 3);
+		wheel.add(far);
+		wheel.add(farNeighbour);
+		wheel.add(overflow);
+		wheel.add(last);
+
+		assertNull(wheel.poll(3 * PAGE + TICK));
+		assertTrue(wheel.remove(farNeighbour));
+		assertTrue(wheel.remove(far));
+		assertEquals(overflow.getNextUpdate(), wheel.getFirstUpdateTime());
+
+		assertNull(wheel.poll(GROUP + TICK));
+		assertTrue(wheel.remove(overflow));
+		assertEquals(1, wheel.size());
+		assertSame(last, wheel.poll(SpoutScheduler.END_OF_THE_WORLD));
+		assertTrue(wheel.isEmpty());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testAddTwice() {
+		DynamicBlockUpdateWheel wheel = new DynamicBlockUpdateWheel();
+		DynamicBlockUpdate update = new DynamicBlockUpdate(0, 0, 0, PAGE, 0);
+		wheel.add(update);
+		wheel.add(update);
+	}
+
+	private static void drain(DynamicBlockUpdateWheel wheel, long threshold, List<DynamicBlockUpdate> polled) {
+		DynamicBlockUpdate update;
+		while ((update = wheel.poll(threshold)) != null) {
+			polled.add(update);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.world.physics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import org.spout.api.collision.BoundingBox;
+import org.spout.api.math.Vector3;
+
+public class SweepAndPruneTest {
+	@Test
+	public void testTouchingAndSeparate() {
+		SweepAndPrune sap = new SweepAndPrune();
+		assertEquals(0, sap.add(box(0, 0, 0, 1, 1, 1)));
+		assertEquals(1, sap.add(box(1, 0.5F, 0.5F, 2, 2, 2)));
+		assertEquals(2, sap.add(box(0, 2.5F, 0, 1, 3, 1)));
+		assertEquals(3, sap.add(box(-3, -3, -3, -2, -2, -2)));
+
+		assertEquals(1, sap.sweep());
+		assertEquals(pair(0, 1), pair(sap.getFirst(0), sap.getSecond(0)));
+
+		sap.clear();
+		assertEquals(0, sap.sweep());
+	}
+
+	@Test
+	public void testNegativeCoordinates() {
+		SweepAndPrune sap = new SweepAndPrune();
+		sap.add(box(-1, 0, 0, 0.5F, 1, 1));
+		sap.add(box(-10, 0, 0, -0.5F, 1, 1));
+		sap.add(box(-20, 0, 0, -11, 1, 1));
+
+		assertEquals(1, sap.sweep());
+		assertEquals(pair(0, 1), pair(sap.getFirst(0), sap.getSecond(0)));
+	}
+
+	@Test
+	public void testAgainstBruteForce() {
+		Random r = new Random(20);
+		SweepAndPrune sap = new SweepAndPrune();
+		for (int pass = 0; pass < 20; pass++) {
+			// Passes of different sizes reuse and grow the buffers
+			int count = 1 + r.nextInt(pass * 10 + 10);
+			float[][] boxes = new float[count][];
+			sap.clear();
+			for (int i = 0; i < count; i++) {
+				float x = r.nextFloat() * 40 - 20;
+				float y = r.nextFloat() * 40 - 20;
+				float z = r.nextFloat() * 40 - 20;
+				boxes[i] = new float[] {x, y, z, x + r.nextFloat() * 4, y + r.nextFloat() * 4, z + r.nextFloat() * 4};
+				assertEquals(i, sap.add(box(boxes[i][0], boxes[i][1], boxes[i][2], boxes[i][3], boxes[i][4], boxes[i][5])));
+			}
+
+			Set<Long> expected = new HashSet<Long>();
+			for (int a = 0; a < count; a++) {
+				for (int b = a + 1; b < count; b++) {
+					if (overlaps(boxes[a], boxes[b])) {
+						expected.add(pair(a, b));
+					}
+				}
+			}
+
+			int pairs = sap.sweep();
+			Set<Long> found = new HashSet<Long>();
+			for (int i = 0; i < pairs; i++) {
+				assertTrue(found.add(pair(sap.getFirst(i), sap.getSecond(i))));
+			}
+			assertEquals(expected, found);
+		}
+	}
+
+	private static boolean overlaps(float[] a, float[] b) {
+		for (int i = 0; i < 3; i++) {
+			if (a[i] > b[i + 3] || b[i] > a[i + 3]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long pair(int a, int b) {
+		return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+	}
+
+	private static BoundingBox box(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		return new BoundingBox(new Vector3(minX, minY, minZ), new Vector3(maxX, maxY, maxZ));
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * This file is part of Spout.
+ *
+ * Copyright (c) 2011-2012, Spout LLC <http://www.spout.org/>
+ * Spout is licensed under the Spout License Version 1.
+ *
+ * Spout is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the Spout License Version 1.
+ *
+ * Spout is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the Spout License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://spout.in/licensev1> for the full license, including
+ * the MIT license.
+ */
+package org.spout.engine.world.physics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.powermock.api.mockito.PowerMockito;
+
+import org.spout.api.material.BlockMaterial;
+
+public class UpdateQueueTest {
+
+	@Test
+	public void testDuplicatesDropped() {
+		UpdateQueue queue = new UpdateQueue();
+		queue.add(1, 2, 3, null);
+		queue.add(1, 2, 3, null);
+		queue.add(3, 2, 1, null);
+		queue.add(1, 2, 3, null);
+
+		assertTrue(queue.hasNext());
+		assertEquals(1, queue.getX());
+		assertEquals(2, queue.getY());
+		assertEquals(3, queue.getZ());
+		assertEquals(3, queue.getX());
+		assertEquals(2, queue.getY());
+		assertEquals(1, queue.getZ());
+		assertFalse(queue.hasNext());
+
+		// Drained updates can be queued again
+		queue.add(1, 2, 3, null);
+		assertTrue(queue.hasNext());
+		assertEquals(1, queue.getX());
+		assertFalse(queue.hasNext());
+	}
+
+	@Test
+	public void testOldMaterial() {
+		BlockMaterial material = PowerMockito.mock(BlockMaterial.class);
+		UpdateQueue queue = new UpdateQueue();
+		queue.add(255, 0, 255, null);
+		queue.add(255, 0, 255, material);
+
+		assertEquals(255, queue.getX());
+		assertSame(null, queue.getOldMaterial());
+		assertEquals(255, queue.getX());
+		assertEquals(0, queue.getY());
+		assertEquals(255, queue.getZ());
+		assertSame(material, queue.getOldMaterial());
+		assertFalse(queue.hasNext());
+	}
+
+	@Test
+	public void testAgainstModel() {
+		Random r = new Random(3);
+		UpdateQueue queue = new UpdateQueue();
+		ArrayDeque<Integer> expected = new ArrayDeque<Integer>();
+		Set<Integer> queued = new HashSet<Integer>();
+		for (int i = 0; i < 200000; i++) {
+			// Bursts of adds and drains grow the buffers and exercise removal from long probe sequences
+			boolean add = (i / 5000) % 2 == 0 ? r.nextInt(4) != 0 : r.nextInt(4) == 0;
+			if (add) {
+				int x = r.nextInt(16);
+				int y = r.nextInt(256);
+				int z = r.nextInt(16);
+				Integer packed = (x << 16) | (y << 8) | z;
+				queue.add(x, y, z, null);
+				if (queued.add(packed)) {
+					expected.add(packed);
+				}
+			} else if (!expected.isEmpty()) {
+				assertTrue(queue.hasNext());
+				int packed = expected.poll();
+				queued.remove(packed);
+				assertEquals(packed >> 16, queue.getX());
+				assertEquals((packed >> 8) & 0xFF, queue.getY());
+				assertEquals(packed & 0xFF, queue.getZ());
+			} else {
+				assertFalse(queue.hasNext());
+			}
+		}
+	}
+}